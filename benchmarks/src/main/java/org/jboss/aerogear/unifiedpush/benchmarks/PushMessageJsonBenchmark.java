@@ -0,0 +1,83 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.message.Criteria;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON rendering of the submitted message, done for every push request to store the message information.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PushMessageJsonBenchmark {
+
+    @Param({ "0", "1000" })
+    private int aliases;
+
+    private UnifiedPushMessage message;
+
+    @Setup
+    public void setUp() {
+        message = new UnifiedPushMessage();
+        message.getMessage().setAlert("Hello from the benchmark!");
+        message.getMessage().setBadge(3);
+        message.getMessage().setSound("default");
+        message.getConfig().setTimeToLive(3600);
+
+        final List<String> aliasList = new ArrayList<>(aliases);
+        for (int i = 0; i < aliases; i++) {
+            aliasList.add("user-" + i + "@example.com");
+        }
+
+        final Criteria criteria = message.getCriteria();
+        criteria.setAliases(aliasList);
+        criteria.setCategories(Arrays.asList("sports", "news"));
+        criteria.setVariants(Arrays.asList("variant-1", "variant-2"));
+        criteria.setDeviceTypes(Arrays.asList("iPhone", "AndroidTablet"));
+    }
+
+    @Benchmark
+    public String strippedJson() {
+        return message.toStrippedJsonString();
+    }
+
+    @Benchmark
+    public String minimizedJson() {
+        return message.toMinimizedJsonString();
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collection of a token batch as done by the <tt>TokenLoader</tt>: tokens arrive sorted from the database and are
+ * gathered in a {@link TreeSet}. The {@link ArrayList} variant is the baseline for the cost of ordering and
+ * de-duplication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBatchBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int batchSize;
+
+    private String[] tokens;
+
+    @Setup
+    public void setUp() {
+        // same shape and order as the tokens returned by the token query
+        final TreeSet<String> sorted = new TreeSet<>();
+        for (int i = 0; i < batchSize; i++) {
+            sorted.add(String.format("%064x", (long) i * 0x9E3779B97F4A7C15L));
+        }
+        tokens = sorted.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Set<String> treeSet() {
+        final Set<String> batch = new TreeSet<>();
+        for (String token : tokens) {
+            batch.add(token);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public List<String> arrayList() {
+        final List<String> batch = new ArrayList<>(batchSize);
+        for (String token : tokens) {
+            batch.add(token);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.message.Criteria;
+import org.jboss.aerogear.unifiedpush.message.token.TokenLoaderUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Criteria evaluation done by the token loader for every variant of a push message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenLoaderUtilsBenchmark {
+
+    public enum CriteriaKind {
+        EMPTY, CATEGORIES, ALIASES
+    }
+
+    @Param
+    private CriteriaKind kind;
+
+    private Criteria criteria;
+
+    @Setup
+    public void setUp() {
+        criteria = new Criteria();
+        switch (kind) {
+            case CATEGORIES:
+                criteria.setCategories(Arrays.asList("sports", "news", "weather"));
+                break;
+            case ALIASES:
+                criteria.setAliases(Collections.singletonList("user@example.com"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Benchmark
+    public boolean isGCMTopicRequest() {
+        return TokenLoaderUtils.isGCMTopicRequest(criteria);
+    }
+
+    @Benchmark
+    public Set<String> extractGCMTopics() {
+        return TokenLoaderUtils.extractGCMTopics(criteria, "variant-1");
+    }
+}
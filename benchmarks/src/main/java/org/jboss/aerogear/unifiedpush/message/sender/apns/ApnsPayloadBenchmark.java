@@ -0,0 +1,67 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.apns;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.message.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * APNs payload built by {@link PushyApnsSender} once per batch of iOS tokens.
+ *
+ * Lives in the package of the sender to reach its package-private payload builder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApnsPayloadBenchmark {
+
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        message = new Message();
+        message.setAlert("Hello from the benchmark!");
+        message.setBadge(3);
+        message.setSound("default");
+        message.getApns().setTitle("Benchmark");
+        message.getApns().setAction("Open");
+        message.getApns().setActionCategory("category");
+        message.getApns().setUrlArgs(new String[] { "a", "b" });
+        message.getApns().setContentAvailable(true);
+        message.getUserData().put("key", "value");
+        message.getUserData().put("number", 42);
+    }
+
+    @Benchmark
+    public String payload() {
+        return PushyApnsSender.createPushPayload(message, "d4b7ba5e-0d19-4e7c-bd5d-1d0a6bd2a6e1");
+    }
+}
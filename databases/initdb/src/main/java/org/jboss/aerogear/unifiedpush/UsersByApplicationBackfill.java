@@ -0,0 +1,32 @@
+package org.jboss.aerogear.unifiedpush;
+
+import org.jboss.aerogear.unifiedpush.cassandra.CassandraConfig;
+import org.jboss.aerogear.unifiedpush.cassandra.dao.AliasDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Fill the users_by_application_bucket index with the users created before the
+ * index replaced the users_by_application materialized view.
+ */
+public class UsersByApplicationBackfill {
+	private static final Logger logger = LoggerFactory.getLogger(UsersByApplicationBackfill.class);
+
+	public static void main(final String[] args) {
+		try (AnnotationConfigApplicationContext applicationContext = createApplicationContext()) {
+			long count = applicationContext.getBean(AliasDao.class).rebuildApplicationIndex();
+			logger.info("Backfill completed, {} users indexed by application", count);
+		}
+
+		System.exit(0);
+	}
+
+	public static AnnotationConfigApplicationContext createApplicationContext() {
+		final AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+		ctx.register(CassandraConfig.class);
+		ctx.refresh();
+
+		return ctx;
+	}
+}
@@ -1,6 +1,9 @@
 package org.jboss.aerogear.unifiedpush.rest.documents;
 
-import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.inject.Inject;
@@ -20,7 +23,6 @@ import javax.ws.rs.core.Response.Status;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
-import org.jboss.aerogear.unifiedpush.api.document.DocumentMetadata;
 import org.jboss.aerogear.unifiedpush.api.document.QueryOptions;
 import org.jboss.aerogear.unifiedpush.cassandra.dao.model.parser.JsonDocumentContent;
 import org.jboss.aerogear.unifiedpush.rest.AbstractEndpoint;
@@ -111,11 +113,22 @@ public class DatabaseApplicationEndpoint extends AbstractEndpoint {
 		final DocumentList docs = new DocumentList();
 		UUID pushApplicationId = UUID.fromString(pushApplication.getPushApplicationID());
 
-		Arrays.asList(uuids).forEach(userId -> {
-			// Validate userId exists with application scope
-			collect(request, docs, new QueryOptions(fromDate, toDate, id, limit), pushApplicationId, database, userId);
+		final Set<UUID> userIds = parse(docs, pushApplicationId, database, uuids);
+
+		// Validate userIds exists with application scope
+		final List<UUID> existing = aliasService.findExisting(pushApplicationId, userIds);
+		final Set<UUID> found = new HashSet<>(existing);
+		userIds.stream().filter(userId -> !found.contains(userId)).forEach(userId -> {
+			logger.debug("UserId {} was not found in application {} scope", userId, pushApplicationId);
+			docs.ignore(userId.toString());
 		});
 
+		documentService.find(pushApplicationId, database, existing, new QueryOptions(fromDate, toDate, id, limit))
+				.forEach(doc -> {
+					docs.getDocuments()
+							.add(new JsonDocumentContent(doc.getKey(), doc.getContent(), doc.getDocumentId()));
+				});
+
 		if (docs.getDocuments().size() > 0)
 			return appendAllowOriginHeader(
 				DatabaseEndpoint.appendCountHeader(Response.ok(docs), docs.getDocuments().size()), request);
@@ -123,33 +136,26 @@ public class DatabaseApplicationEndpoint extends AbstractEndpoint {
 			return appendAllowOriginHeader(Response.noContent(), request);
 	}
 
-	private void collect(HttpServletRequest request, DocumentList docs, //
-			QueryOptions options, //
+	private Set<UUID> parse(DocumentList docs, //
 			UUID pushApplicationId, //
 			String database, //
-			String userId) { //
-
-		if (StringUtils.isEmpty(userId)){
-			logger.warn("UserId (UUID) is null or empty for ApplicationId {}, and database {} ", pushApplicationId, database);
-			return;
-		}
+			String[] userIds) { //
+		final Set<UUID> uuids = new LinkedHashSet<>();
 
-		try {
-			UUID uuid = UUID.fromString(userId);
+		for (String userId : userIds) {
+			if (StringUtils.isEmpty(userId)) {
+				logger.warn("UserId (UUID) is null or empty for ApplicationId {}, and database {} ", pushApplicationId, database);
+				continue;
+			}
 
-			if (aliasService.find(pushApplicationId, uuid) != null) {
-				DocumentMetadata metadata = new DocumentMetadata(pushApplicationId, database, uuid);
-				documentService.find(metadata, options).forEach(doc -> {
-					docs.getDocuments()
-							.add(new JsonDocumentContent(doc.getKey(), doc.getContent(), doc.getDocumentId()));
-				});
-			} else {
-				logger.debug("UserId {} was not found in application {} scope", userId, pushApplicationId);
-				docs.ignore(uuid.toString());
+			try {
+				uuids.add(UUID.fromString(userId));
+			} catch (IllegalArgumentException e) {
+				logger.debug("Unable to parse UUID {}", userId);
+				docs.ignore(userId);
 			}
-		} catch (IllegalArgumentException e) {
-			logger.debug("Unable to parse UUID {}", userId);
-			docs.ignore(userId);
 		}
+
+		return uuids;
 	}
 }
@@ -16,6 +16,10 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.applications;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -57,12 +61,16 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
      * @param page      page number
      * @param pageSize  number of items per page
      * @param search    search query
+     * @param cursor    opaque position from the "next" link of the previous page, an empty value selects the first
+     *                  page. Replaces <code>page</code>, pages are then found in constant time regardless of their position
+     * @param count     when paging with a cursor, whether the total count of items is computed
      * @param uri       uri
      * @return          list of {@link Installation}s
      *
-     * @responseheader Link     Links to "prev", "first", "next" and "last" pages
-     * @responseheader total    Total count of items
+     * @responseheader Link     Links to "prev", "first", "next" and "last" pages, only "next" when paging with a cursor
+     * @responseheader total    Total count of items, omitted when paging with a cursor unless <code>count</code> is set
      *
+     * @statuscode 400 The cursor is invalid, <code>per_page</code> is less than 1 or <code>page</code> is negative
      * @statuscode 404 The requested Variant resource does not exist
      */
     @GET
@@ -72,6 +80,8 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
                                       @QueryParam("page") Integer page,
                                       @QueryParam("per_page") Integer pageSize,
                                       @QueryParam("search") String search,
+                                      @QueryParam("cursor") String cursor,
+                                      @QueryParam("count") boolean count,
                                       @Context UriInfo uri) {
         if (pageSize != null) {
             pageSize = Math.min(MAX_PAGE_SIZE, pageSize);
@@ -83,6 +93,10 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
             page = 0;
         }
 
+        if (pageSize < 1 || page < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid page or per_page").build();
+        }
+
         if (search == null || search.isEmpty()) {
             search = null;
         }
@@ -92,6 +106,10 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
             return Response.status(Response.Status.NOT_FOUND).entity("Could not find requested Variant").build();
         }
 
+        if (cursor != null) {
+            return findInstallationsAfter(variantId, cursor, pageSize, search, count, uri);
+        }
+
         //Find the installations using the variantID
         PageResult<Installation, Count> pageResult = getSearch().findAllInstallationsByVariantForDeveloper(variantId, page, pageSize, search);
 
@@ -104,6 +122,48 @@ public class InstallationManagementEndpoint extends AbstractManagementEndpoint {
                 .build();
     }
 
+    private Response findInstallationsAfter(String variantId, String cursor, int pageSize, String search, boolean count, UriInfo uri) {
+        final String afterId;
+        try {
+            afterId = decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid cursor").build();
+        }
+
+        PageResult<Installation, Count> pageResult = getSearch().findInstallationsByVariantForDeveloperAfter(variantId, afterId, pageSize, search, count);
+        final List<Installation> installations = pageResult.getResultList();
+
+        Response.ResponseBuilder response = Response.ok(installations);
+        // a full page may be followed by more installations, a short one is the last
+        if (installations.size() == pageSize) {
+            final Link next = new Link();
+            next.setHref(uri.getRequestUriBuilder()
+                    .replaceQueryParam("page")
+                    .replaceQueryParam("cursor", encodeCursor(installations.get(pageSize - 1).getId()))
+                    .build().toASCIIString());
+            next.setRelationship("next");
+
+            final LinkHeader header = new LinkHeader();
+            header.addLink(next);
+            response.header("Link", header.toString());
+        }
+        if (pageResult.getAggregate() != null) {
+            response.header("total", pageResult.getAggregate().getCount());
+        }
+        return response.build();
+    }
+
+    static String encodeCursor(String installationId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(installationId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeCursor(String cursor) {
+        if (cursor.isEmpty()) {
+            return null;
+        }
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
     LinkHeader getLinkHeader(Integer page, long totalPages, UriInfo uri) {
         LinkHeader header = new LinkHeader();
 
@@ -16,35 +16,119 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
 
+import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.rest.AbstractManagementEndpoint;
+import org.jboss.aerogear.unifiedpush.service.PushSearchService;
 import org.springframework.stereotype.Controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.qmino.miredot.annotations.ReturnType;
 
 @Controller
 @Path("/export")
 public class ExportEndpoint extends AbstractManagementEndpoint {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     /**
      * Endpoint for exporting as JSON file device installations for a given variant.
-     * Only Keycloak authenticated can access it
+     * Only Keycloak authenticated can access it.
+     *
+     * The installations are streamed from the database into a chunked JSON array, so the size of the variant
+     * does not affect the memory use of the server.
      *
      * @param variantId the variant ID
+     * @param providers the JAX-RS providers, used to look up the configured JSON mapper
      * @return          list of {@link org.jboss.aerogear.unifiedpush.api.Installation}s
      */
     @GET
     @Path("/{variantId}/installations/")
     @Produces(MediaType.APPLICATION_JSON)
     @ReturnType("java.util.List<org.jboss.aerogear.unifiedpush.api.Installation>")
-    public Response exportInstallations(@PathParam("variantId") String variantId) {
-        return Response.ok(getSearch().findAllInstallationsByVariantForDeveloper(variantId, 0, Integer.MAX_VALUE, null).getResultList()).build();
+    public Response exportInstallations(@PathParam("variantId") String variantId, @Context Providers providers) {
+        final PushSearchService search = getSearch();
+        final ObjectMapper mapper = mapper(providers);
+
+        final StreamingOutput body = output -> {
+            final JsonGenerator generator = mapper.getFactory().createGenerator(output);
+            generator.writeStartArray();
+            stream(search, variantId, installation -> generator.writeObject(installation));
+            generator.writeEndArray();
+            generator.flush();
+        };
+        return Response.ok(body).build();
+    }
+
+    /**
+     * Endpoint for exporting device installations for a given variant as newline delimited JSON, one installation per line.
+     * Only Keycloak authenticated can access it
+     *
+     * @param variantId the variant ID
+     * @param providers the JAX-RS providers, used to look up the configured JSON mapper
+     * @return          stream of {@link org.jboss.aerogear.unifiedpush.api.Installation}s
+     */
+    @GET
+    @Path("/{variantId}/installations/")
+    @Produces(APPLICATION_NDJSON)
+    @ReturnType("java.util.List<org.jboss.aerogear.unifiedpush.api.Installation>")
+    public Response exportInstallationsAsNdjson(@PathParam("variantId") String variantId, @Context Providers providers) {
+        final PushSearchService search = getSearch();
+        final ObjectMapper mapper = mapper(providers);
+
+        final StreamingOutput body = output -> stream(search, variantId, installation -> writeLine(mapper, output, installation));
+        return Response.ok(body).build();
+    }
+
+    /**
+     * Uses the mapper of the JSON provider if the application configured one, otherwise the mapper of the
+     * installation registration, so the export writes installations like the rest of the API.
+     */
+    private static ObjectMapper mapper(Providers providers) {
+        final ContextResolver<ObjectMapper> resolver = providers != null
+                ? providers.getContextResolver(ObjectMapper.class, MediaType.APPLICATION_JSON_TYPE)
+                : null;
+        final ObjectMapper configured = resolver != null ? resolver.getContext(Installation.class) : null;
+        return configured != null ? configured : InstallationRegistrationEndpoint.mapper;
+    }
+
+    private static void writeLine(ObjectMapper mapper, OutputStream output, Installation installation) throws IOException {
+        output.write(mapper.writeValueAsBytes(installation));
+        output.write('\n');
+    }
+
+    private static void stream(PushSearchService search, String variantId, InstallationWriter writer) throws IOException {
+        try {
+            search.forEachInstallationByVariantForDeveloper(variantId, installation -> {
+                try {
+                    writer.write(installation);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface InstallationWriter {
+        void write(Installation installation) throws IOException;
     }
 
 }
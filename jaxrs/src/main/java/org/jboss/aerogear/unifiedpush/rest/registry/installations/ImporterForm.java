@@ -16,6 +16,8 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
+import java.io.InputStream;
+
 import javax.ws.rs.FormParam;
 
 /**
@@ -24,19 +26,19 @@ import javax.ws.rs.FormParam;
  */
 public class ImporterForm {
 
-    private byte[] jsonFile;
+    private InputStream jsonFile;
 
     /**
      * Reads the uploaded JSON file from the multipart importer request.
      *
-     * @param jsonFile the json file content
+     * @param jsonFile stream of the json file content
      */
     @FormParam("file")
-    public void setJsonFile(byte[] jsonFile) {
+    public void setJsonFile(InputStream jsonFile) {
         this.jsonFile = jsonFile;
     }
 
-    public byte[] getJsonFile() {
+    public InputStream getJsonFile() {
         return jsonFile;
     }
 }
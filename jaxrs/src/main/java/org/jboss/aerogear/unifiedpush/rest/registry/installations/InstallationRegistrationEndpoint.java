@@ -16,9 +16,16 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
@@ -61,8 +68,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.qmino.miredot.annotations.BodyType;
 import com.qmino.miredot.annotations.ReturnType;
 
@@ -444,24 +455,91 @@ public class InstallationRegistrationEndpoint extends AbstractBaseEndpoint {
 			return create401Response(request);
 		}
 
-		List<Installation> devices;
+		// the upload is spooled to disk and parsed incrementally, the file may contain millions of devices
+		final File importFile;
 		try {
-			devices = mapper.readValue(form.getJsonFile(), new TypeReference<List<Installation>>() {
-			});
+			importFile = File.createTempFile("ups-import-", ".json");
+		} catch (IOException e) {
+			logger.error("Unable to create temporary file for the importer", e);
+			return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+
+		final Stream<Installation> devices;
+		try {
+			try (InputStream in = form.getJsonFile()) {
+				Files.copy(in, importFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			logger.info("Devices to import: {}", countInstallations(importFile));
+
+			devices = readInstallations(importFile);
 		} catch (IOException e) {
 			logger.error("Error when parsing importer json file", e);
+			deleteImportFile(importFile);
 
 			return Response.status(Status.BAD_REQUEST).build();
 		}
 
-		logger.info("Devices to import: {}", devices.size());
-
-		clientInstallationAsyncService.addInstallations(variant, devices);
+		try {
+			clientInstallationAsyncService.addInstallations(variant, devices);
+		} catch (RuntimeException e) {
+			// the import was not submitted, nothing is going to close the stream
+			devices.close();
+			throw e;
+		}
 
 		// return directly, the above is async and may take a bit :-)
 		return Response.ok(EmptyJSON.STRING).build();
 	}
 
+	/**
+	 * Binds every installation of the import file with a streaming parser, one at a time, so that a file the
+	 * asynchronous import would fail on is rejected before the import is submitted.
+	 *
+	 * @return number of installations in the file
+	 */
+	static long countInstallations(File importFile) throws IOException {
+		final ObjectReader reader = mapper.readerFor(Installation.class);
+		try (JsonParser parser = mapper.getFactory().createParser(importFile)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new JsonParseException(parser, "Expected an array of installations");
+			}
+
+			long count = 0;
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				reader.readValue(parser);
+				count++;
+			}
+			if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+				throw new JsonParseException(parser, "Expected an installation object");
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Binds the installations of the import file one by one. Closing the stream deletes the file.
+	 */
+	private Stream<Installation> readInstallations(File importFile) throws IOException {
+		final MappingIterator<Installation> iterator = mapper.readerFor(Installation.class).readValues(importFile);
+
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+				.onClose(() -> {
+					try {
+						iterator.close();
+					} catch (IOException e) {
+						logger.warn("Unable to close importer file", e);
+					} finally {
+						deleteImportFile(importFile);
+					}
+				});
+	}
+
+	private void deleteImportFile(File importFile) {
+		if (!importFile.delete()) {
+			logger.warn("Unable to delete importer file {}", importFile);
+		}
+	}
+
 	/**
 	 * RESTful API for enabling a device (verifying it). The Endpoint is
 	 * protected using <code>HTTP Basic</code> (credentials
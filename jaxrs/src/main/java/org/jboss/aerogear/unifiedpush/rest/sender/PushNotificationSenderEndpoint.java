@@ -16,6 +16,8 @@
  */
 package org.jboss.aerogear.unifiedpush.rest.sender;
 
+import java.util.Collections;
+
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -29,9 +31,9 @@ import javax.ws.rs.core.Response.Status;
 
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
-import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
+import org.jboss.aerogear.unifiedpush.message.NotificationIntake;
+import org.jboss.aerogear.unifiedpush.message.exception.IntakeFullException;
 import org.jboss.aerogear.unifiedpush.rest.AbstractEndpoint;
-import org.jboss.aerogear.unifiedpush.rest.EmptyJSON;
 import org.jboss.aerogear.unifiedpush.rest.util.HttpRequestUtil;
 import org.jboss.aerogear.unifiedpush.rest.util.PushAppAuthHelper;
 import org.jboss.aerogear.unifiedpush.service.PushApplicationService;
@@ -47,10 +49,13 @@ import com.qmino.miredot.annotations.ReturnType;
 public class PushNotificationSenderEndpoint extends AbstractEndpoint {
     private final Logger logger = LoggerFactory.getLogger(PushNotificationSenderEndpoint.class);
 
+    // seconds a sender should wait before sending again when the intake is full
+    private static final int RETRY_AFTER_SECONDS = 5;
+
     @Inject
     private PushApplicationService pushApplicationService;
     @Inject
-    private NotificationRouter notificationRouter;
+    private NotificationIntake notificationIntake;
 
     /**
      * RESTful API for sending Push Notifications.
@@ -78,20 +83,25 @@ public class PushNotificationSenderEndpoint extends AbstractEndpoint {
      *
      * <b>Request Header</b> {@code aerogear-sender} uses to identify the used client. If the header is not present, the standard "user-agent" header is used.
      *
+     * The message is accepted before it is recorded, the response contains the ID it will be recorded with, e.g.
+     * <code>{"pushMessageInformationId":"9a4b6f12-..."}</code>.
+     *
      * @param message   message to send
      * @param request the request
-     * @return          empty JSON body
+     * @return          JSON body with the ID of the push message information
      *
      * @responseheader WWW-Authenticate Basic realm="AeroBase UnifiedPush Server" (only for 401 response)
+     * @responseheader Retry-After Seconds to wait before sending the message again (only for 503 response)
      *
      * @statuscode 202 Indicates the Job has been accepted and is being process by the AeroBase UnifiedPush Server
      * @statuscode 401 The request requires authentication
+     * @statuscode 503 Too many messages are being processed, the message was not accepted
      */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @BodyType("org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage")
-    @ReturnType("org.jboss.aerogear.unifiedpush.rest.EmptyJSON")
+    @ReturnType("java.util.Map<java.lang.String,java.lang.String>")
     public Response send(final InternalUnifiedPushMessage message, @Context HttpServletRequest request) {
 
         final PushApplication pushApplication = PushAppAuthHelper.loadPushApplicationWhenAuthorized(request, pushApplicationService);
@@ -108,10 +118,20 @@ public class PushNotificationSenderEndpoint extends AbstractEndpoint {
         // add the client identifier
         message.setClientIdentifier(HttpRequestUtil.extractAeroGearSenderInformation(request));
 
-        // submitted to EJB:
-        notificationRouter.submit(pushApplication, message);
+        final String pushMessageInformationId;
+        try {
+            pushMessageInformationId = notificationIntake.accept(pushApplication, message);
+        } catch (IntakeFullException e) {
+            logger.warn("Rejecting Push Message Request from [{}] API: {}", message.getClientIdentifier(), e.getMessage());
+            return Response.status(Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", RETRY_AFTER_SECONDS)
+                    .entity("Too many messages are being processed, try again later")
+                    .build();
+        }
         logger.debug(String.format("Push Message Request from [%s] API was internally submitted for further processing", message.getClientIdentifier()));
 
-        return Response.status(Status.ACCEPTED).entity(EmptyJSON.STRING).build();
+        return Response.status(Status.ACCEPTED)
+                .entity(Collections.singletonMap("pushMessageInformationId", pushMessageInformationId))
+                .build();
     }
 }
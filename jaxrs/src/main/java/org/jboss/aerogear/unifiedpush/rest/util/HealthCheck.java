@@ -69,6 +69,9 @@ public class HealthCheck {
         final Future<List<HealthDetails>> networkStatus = healthNetworkService.networkStatus();
 
         status.add(dbStatus.get());
+        status.add(healthDBService.retentionStatus());
+        status.add(healthNetworkService.tokenLoadingStatus());
+        status.add(healthNetworkService.tokenCleanupStatus());
         networkStatus.get().forEach(status::add);
 
         return status;
@@ -6,6 +6,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
  
 import javax.inject.Inject;
+import javax.ws.rs.core.Response;
 
 import org.jboss.aerogear.unifiedpush.rest.RestEndpointTest;
 import org.jboss.aerogear.unifiedpush.rest.WebConfigTest;
@@ -74,6 +75,30 @@ public class InstallationManagementEndpointTest extends RestEndpointTest {
 		assertThat(findLinkByRel(linkHeader, "last")).isNull();
 	}
 
+	@Test
+	public void shouldRoundTripCursor() {
+		final String cursor = InstallationManagementEndpoint.encodeCursor("a6d2a1d4-3a6e-4a1c-8f0e-0c2b7f1d9e42");
+
+		assertThat(cursor).doesNotContain("=", "/", "+");
+		assertThat(InstallationManagementEndpoint.decodeCursor(cursor)).isEqualTo("a6d2a1d4-3a6e-4a1c-8f0e-0c2b7f1d9e42");
+		assertThat(InstallationManagementEndpoint.decodeCursor("")).isNull();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectInvalidCursor() {
+		InstallationManagementEndpoint.decodeCursor("not a cursor!");
+	}
+
+	@Test
+	public void shouldRejectInvalidPaging() throws URISyntaxException {
+		assertThat(endpoint.findInstallations("variant", null, 0, null, null, false, getUriInfo()).getStatus())
+				.isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+		assertThat(endpoint.findInstallations("variant", null, -5, null, "", false, getUriInfo()).getStatus())
+				.isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+		assertThat(endpoint.findInstallations("variant", -1, 10, null, null, false, getUriInfo()).getStatus())
+				.isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+	}
+
     private Link findLinkByRel(LinkHeader linkHeader, String rel) {
         return linkHeader.getLinks().stream()
                 .filter(link -> link.getRelationship().equals(rel))
@@ -3,6 +3,10 @@ package org.jboss.aerogear.unifiedpush.rest.registry.installations;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -39,6 +43,7 @@ import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.datastax.driver.core.utils.UUIDs;
+import com.fasterxml.jackson.databind.JsonMappingException;
 
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, classes = { WebConfigTest.class })
 public class InstallationRegistrationEndpointTest extends RestEndpointTest {
@@ -129,4 +134,31 @@ public class InstallationRegistrationEndpointTest extends RestEndpointTest {
 			System.clearProperty(ConfigurationEnvironment.PROP_ENABLE_VERIFICATION);
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void importFileIsBoundBeforeSubmission() throws IOException {
+		final File importFile = File.createTempFile("ups-import-test-", ".json");
+		try {
+			Files.write(importFile.toPath(), "[{\"deviceToken\":\"a\"},{\"deviceToken\":\"b\"}]".getBytes(StandardCharsets.UTF_8));
+			assertEquals(2, InstallationRegistrationEndpoint.countInstallations(importFile));
+
+			Files.write(importFile.toPath(), "[{\"deviceToken\":\"a\"},{\"unknownProperty\":\"b\"}]".getBytes(StandardCharsets.UTF_8));
+			try {
+				InstallationRegistrationEndpoint.countInstallations(importFile);
+				Assert.fail("unknown property should be rejected");
+			} catch (JsonMappingException e) {
+				// expected
+			}
+
+			Files.write(importFile.toPath(), "[{\"deviceToken\":\"a\",\"enabled\":{}}]".getBytes(StandardCharsets.UTF_8));
+			try {
+				InstallationRegistrationEndpoint.countInstallations(importFile);
+				Assert.fail("wrong field type should be rejected");
+			} catch (JsonMappingException e) {
+				// expected
+			}
+		} finally {
+			importFile.delete();
+		}
+	}
+}
@@ -23,6 +23,7 @@ public class VariantErrorStatus {
     //@Id
     private String pushMessageVariantId; // = "push-job-id" + ":" + "variant-id";
     private String errorReason; // the text we receive for the error
+    private long occurrences = 1; // how often the error occurred, errorReason is the first one
 
     private String pushJobId;
     private String variantID;
@@ -53,6 +54,14 @@ public class VariantErrorStatus {
         this.errorReason = errorReason;
     }
 
+    public long getOccurrences() {
+        return occurrences;
+    }
+
+    public void setOccurrences(long occurrences) {
+        this.occurrences = occurrences;
+    }
+
     public String getPushMessageVariantId() {
         return pushMessageVariantId;
     }
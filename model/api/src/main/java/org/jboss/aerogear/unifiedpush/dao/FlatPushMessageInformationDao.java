@@ -17,8 +17,10 @@
 package org.jboss.aerogear.unifiedpush.dao;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -111,11 +113,46 @@ public interface FlatPushMessageInformationDao extends GenericBaseDao<FlatPushMe
     List<FlatPushMessageInformation> findLatestActivity(String loginName, int maxResults);
 
     /**
-     * Delete all Push Message Information entries that are older than the given date
+     * Returns the IDs of the oldest Push Message Information entries that are older than the given date.
      *
      * @param oldest the point in time to go back to
+     * @param maxResults number of max IDs in the returned list
+     *
+     * @return IDs of push message info objects, oldest first
+     */
+    List<String> findPushInformationIDsOlderThan(Date oldest, int maxResults);
+
+    /**
+     * Deletes the given Push Message Information entries together with their variant errors.
+     *
+     * @param pushMessageInformationIds IDs of the push message information
+     *
+     * @return number of deleted push message info objects
+     */
+    int deletePushInformation(Collection<String> pushMessageInformationIds);
+
+    /**
+     * Adds the given number of app opens to the open counter of a push message, without loading the entity.
+     *
+     * @param pushMessageInformationId ID of the push message information
+     * @param opens number of opens to add
+     * @param firstOpen time of the earliest open, only stored if the message has not been opened before
+     * @param lastOpen time of the latest open
+     *
+     * @return number of updated rows, 0 if the push message information does not exist (anymore)
+     */
+    int incrementAppOpenCounter(String pushMessageInformationId, long opens, Date firstOpen, Date lastOpen);
+
+    /**
+     * Records errors of a variant for a push message, without loading the push message. The first recorded error
+     * reason is kept, later errors only add to its occurrences.
+     *
+     * @param pushMessageInformationId ID of the push message information
+     * @param variant the variant the errors occurred for
+     * @param errorReason the error reason, stored if this is the first error of the variant
+     * @param occurrences number of errors to add
      */
-    void deletePushInformationOlderThan(Date oldest);
+    void upsertVariantError(String pushMessageInformationId, Variant variant, String errorReason, long occurrences);
 
     //Admin queries
     List<String> findVariantIDsWithWarnings();
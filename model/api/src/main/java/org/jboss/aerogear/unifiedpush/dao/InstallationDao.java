@@ -16,7 +16,9 @@
  */
 package org.jboss.aerogear.unifiedpush.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
@@ -45,6 +47,33 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     List<Installation> findInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
 
+    /**
+     * Filters the given device tokens down to those already registered for the given Variant.
+     *
+     * @param variantID the variantID for the filter
+     * @param deviceTokens the deviceTokens to look up
+     *
+     * @return the subset of the device tokens that exists for the variant.
+     */
+    Set<String> findExistingDeviceTokensForVariant(String variantID, Collection<String> deviceTokens);
+
+    /**
+     * Replaces device tokens of installations of the given Variant, using bulk updates.
+     *
+     * @param variantID the variantID for the filter
+     * @param replacements new device token, by current device token
+     *
+     * @return number of updated installations
+     */
+    int updateDeviceTokensForVariant(String variantID, Map<String, String> replacements);
+
+    /**
+     * Persists the given installations using JDBC batch inserts, and detaches them afterwards.
+     *
+     * @param installations new installations, with variant and persistent categories already set
+     */
+    void createInBatch(List<Installation> installations);
+
     /**
      * Sender API for installations:
      *
@@ -76,6 +105,21 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     PageResult<Installation, Count> findInstallationsByVariantForDeveloper(String variantID, String developer, Integer page, Integer pageSize, String search);
 
+    /**
+     * Find a page of installations for the variant specified, ordered by ID, starting after the given installation ID.
+     * Unlike offset paging, the cost of a page does not grow with its position.
+     *
+     * @param variantID the id of the variant to find the installations for
+     * @param developer the developer, or <code>null</code> for the admin role
+     * @param afterId ID of the last installation of the previous page, or <code>null</code> for the first page
+     * @param pageSize the size of the page
+     * @param search any value of the device metadata
+     * @param count whether the total number of matching installations should be counted
+     *
+     * @return installations found or empty list + the total count of results, or <code>null</code> aggregate if not counted
+     */
+    PageResult<Installation, Count> findInstallationsByVariantForDeveloperAfter(String variantID, String developer, String afterId, int pageSize, String search, boolean count);
+
     /**
      * Find all installations for the variant specified (used for admin role)
      * @param variantID the id of the variant to find the installations for
@@ -87,6 +131,18 @@ public interface InstallationDao extends GenericBaseDao<Installation, String> {
      */
     PageResult<Installation, Count> findInstallationsByVariant(String variantID, Integer page, Integer pageSize, String search);
 
+    /**
+     * Streams all installations of the variant specified, ordered by ID, with a forward-only cursor.
+     * Installations are detached from the persistence context after every fetched chunk (see
+     * {@link ResultsStream.QueryBuilder#fetchSize(int)}), so the memory use does not grow with the size of the variant.
+     *
+     * @param variantID the id of the variant to stream the installations for
+     * @param developer the developer owning the variant, or <code>null</code> for the admin role
+     *
+     * @return builder of the installation stream
+     */
+    ResultsStream.QueryBuilder<Installation> streamInstallationsByVariantForDeveloper(String variantID, String developer);
+
 
     /**
      * Counts the total number of registered devices/clients for the give List of variantIDs
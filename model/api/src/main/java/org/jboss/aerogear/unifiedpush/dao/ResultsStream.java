@@ -19,7 +19,7 @@ package org.jboss.aerogear.unifiedpush.dao;
 /**
  * Streams the batch of the results
  */
-public interface ResultsStream<T> {
+public interface ResultsStream<T> extends AutoCloseable {
 
     /**
      * Advance to the next result
@@ -37,6 +37,12 @@ public interface ResultsStream<T> {
      */
     T get() throws ResultStreamException;
 
+    /**
+     * Releases the underlying cursor, also when the stream was not read to the end.
+     */
+    @Override
+    void close();
+
     /**
      * Allow to build new {@link ResultsStream} with customized fetching strategy.
      */
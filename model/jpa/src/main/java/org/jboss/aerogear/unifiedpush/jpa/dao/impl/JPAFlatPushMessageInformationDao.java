@@ -17,15 +17,16 @@
 package org.jboss.aerogear.unifiedpush.jpa.dao.impl;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantErrorStatus;
 import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -35,9 +36,6 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
     private static final String ASC = "ASC";
     private static final String DESC = "DESC";
 
-    private final Logger logger = LoggerFactory.getLogger(JPAFlatPushMessageInformationDao.class);
-
-
     @Override
     public List<FlatPushMessageInformation> findAllForPushApplication(String pushApplicationId, boolean ascending) {
         return findAllForPushApplicationByParams(pushApplicationId, null, ascending, null, null);
@@ -120,17 +118,66 @@ public class JPAFlatPushMessageInformationDao extends JPABaseDao<FlatPushMessage
     }
 
     @Override
-    public void deletePushInformationOlderThan(Date oldest) {
-        // TODO: use criteria API...
-        entityManager.createQuery("delete from VariantErrorStatus vmi where vmi.pushMessageInformation.id in (select pmi FROM FlatPushMessageInformation pmi WHERE pmi.submitDate < :oldest)")
+    public List<String> findPushInformationIDsOlderThan(Date oldest, int maxResults) {
+        return createQuery("select pmi.id from FlatPushMessageInformation pmi" +
+                " where pmi.submitDate < :oldest" +
+                " ORDER BY pmi.submitDate " + ASC, String.class)
                 .setParameter("oldest", oldest)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    @Override
+    public int deletePushInformation(Collection<String> pushMessageInformationIds) {
+        if (pushMessageInformationIds.isEmpty()) {
+            return 0;
+        }
+
+        entityManager.createQuery("delete from VariantErrorStatus vmi where vmi.pushJobId in (:ids)")
+                .setParameter("ids", pushMessageInformationIds)
                 .executeUpdate();
 
-        int affectedRows = entityManager.createQuery("delete FROM FlatPushMessageInformation pmi WHERE pmi.submitDate < :oldest")
-                .setParameter("oldest", oldest)
+        return entityManager.createQuery("delete from FlatPushMessageInformation pmi where pmi.id in (:ids)")
+                .setParameter("ids", pushMessageInformationIds)
                 .executeUpdate();
+    }
+
+    @Override
+    public int incrementAppOpenCounter(String pushMessageInformationId, long opens, Date firstOpen, Date lastOpen) {
+        return entityManager.createQuery("update FlatPushMessageInformation pmi" +
+                " set pmi.appOpenCounter = pmi.appOpenCounter + :opens," +
+                " pmi.firstOpenDate = coalesce(pmi.firstOpenDate, :firstOpen)," +
+                " pmi.lastOpenDate = :lastOpen" +
+                " where pmi.id = :id")
+                .setParameter("opens", opens)
+                .setParameter("firstOpen", firstOpen)
+                .setParameter("lastOpen", lastOpen)
+                .setParameter("id", pushMessageInformationId)
+                .executeUpdate();
+    }
 
-        logger.info("Deleting ['" + affectedRows + "'] outdated FlatPushMessageInformation objects");
+    @Override
+    public void upsertVariantError(String pushMessageInformationId, Variant variant, String errorReason, long occurrences) {
+        final String pushMessageVariantId = pushMessageInformationId + ':' + variant.getVariantID();
+
+        final int updated = entityManager.createQuery("update VariantErrorStatus ves" +
+                " set ves.occurrences = ves.occurrences + :occurrences" +
+                " where ves.pushMessageVariantId = :id")
+                .setParameter("occurrences", occurrences)
+                .setParameter("id", pushMessageVariantId)
+                .executeUpdate();
+
+        if (updated == 0) {
+            final VariantErrorStatus errorStatus = new VariantErrorStatus();
+            errorStatus.setPushMessageVariantId(pushMessageVariantId);
+            errorStatus.setPushJobId(pushMessageInformationId);
+            errorStatus.setVariantID(variant.getVariantID());
+            errorStatus.setErrorReason(errorReason);
+            errorStatus.setOccurrences(occurrences);
+            errorStatus.setPushMessageInformation(entityManager.getReference(FlatPushMessageInformation.class, pushMessageInformationId));
+            errorStatus.setVariant(entityManager.getReference(Variant.class, variant.getId()));
+            entityManager.persist(errorStatus);
+        }
     }
 
     //Admin queries
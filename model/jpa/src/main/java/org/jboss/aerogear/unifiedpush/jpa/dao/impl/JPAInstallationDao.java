@@ -30,6 +30,7 @@ import javax.persistence.TypedQuery;
 import org.hibernate.Query;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
@@ -56,6 +57,12 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
                     + " JOIN installation.variant v"
                     + " WHERE v.variantID = :variantID";
 
+    // number of streamed installations kept in the persistence context, unless a fetch size is given
+    private static final int DEFAULT_STREAM_CHUNK_SIZE = 500;
+
+    // number of device tokens replaced by a single update statement
+    private static final int DEVICE_TOKEN_UPDATE_CHUNK_SIZE = 300;
+
     @Override
     public PageResult<Installation, Count> findInstallationsByVariantForDeveloper(
             String variantID, String developer, Integer page, Integer pageSize, String search) {
@@ -63,6 +70,48 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
 
         final StringBuilder jpqlBase = new StringBuilder(FIND_INSTALLATIONS);
         final Map<String, Object> parameters = new LinkedHashMap<>();
+        appendInstallationFilter(jpqlBase, parameters, variantID, developer, search);
+
+        String jpqlStr = jpqlBase.toString();
+        TypedQuery<Long> countQuery = createQuery("SELECT COUNT(installation) " + jpqlStr, Long.class);
+        TypedQuery<Installation> query = createQuery("SELECT installation " + jpqlStr + " ORDER BY installation.id")
+                .setFirstResult(page * pageSize)
+                .setMaxResults(pageSize);
+
+        List<Installation> resultList = setParameters(query, parameters).getResultList();
+        Long count = setParameters(countQuery, parameters).getSingleResult();
+
+        return new PageResult<>(resultList, new Count(count));
+    }
+
+    @Override
+    public PageResult<Installation, Count> findInstallationsByVariantForDeveloperAfter(
+            String variantID, String developer, String afterId, int pageSize, String search, boolean count) {
+
+        final StringBuilder jpqlBase = new StringBuilder(FIND_INSTALLATIONS);
+        final Map<String, Object> parameters = new LinkedHashMap<>();
+        appendInstallationFilter(jpqlBase, parameters, variantID, developer, search);
+
+        Count total = null;
+        if (count) {
+            total = new Count(setParameters(createQuery("SELECT COUNT(installation) " + jpqlBase, Long.class), parameters)
+                    .getSingleResult());
+        }
+
+        // seek on the primary key index instead of skipping the rows of the previous pages
+        if (afterId != null) {
+            jpqlBase.append(" AND installation.id > :afterId");
+            parameters.put("afterId", afterId);
+        }
+
+        TypedQuery<Installation> query = createQuery("SELECT installation " + jpqlBase + " ORDER BY installation.id")
+                .setMaxResults(pageSize);
+
+        return new PageResult<>(setParameters(query, parameters).getResultList(), total);
+    }
+
+    private static void appendInstallationFilter(StringBuilder jpqlBase, Map<String, Object> parameters,
+            String variantID, String developer, String search) {
         parameters.put("variantID", variantID);
         if (developer != null) {
             jpqlBase.append(" AND v.developer = :developer");
@@ -77,17 +126,6 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
                     + " OR installation.alias LIKE :search )");
             parameters.put("search", "%" + search + "%");
         }
-
-        String jpqlStr = jpqlBase.toString();
-        TypedQuery<Long> countQuery = createQuery("SELECT COUNT(installation) " + jpqlStr, Long.class);
-        TypedQuery<Installation> query = createQuery("SELECT installation " + jpqlStr + " ORDER BY installation.id")
-                .setFirstResult(page * pageSize)
-                .setMaxResults(pageSize);
-
-        List<Installation> resultList = setParameters(query, parameters).getResultList();
-        Long count = setParameters(countQuery, parameters).getSingleResult();
-
-        return new PageResult<>(resultList, new Count(count));
     }
 
     private <X> TypedQuery<X> setParameters(TypedQuery<X> query, Map<String, Object> parameters) {
@@ -100,6 +138,55 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
         return findInstallationsByVariantForDeveloper(variantID, null, page, pageSize, search);
     }
 
+    @Override
+    public ResultsStream.QueryBuilder<Installation> streamInstallationsByVariantForDeveloper(String variantID, String developer) {
+        final StringBuilder hql = new StringBuilder("SELECT installation ").append(FIND_INSTALLATIONS);
+        if (developer != null) {
+            hql.append(" AND v.developer = :developer");
+        }
+        hql.append(" ORDER BY installation.id");
+
+        return new ResultsStream.QueryBuilder<Installation>() {
+            private int fetchSize = DEFAULT_STREAM_CHUNK_SIZE;
+            @Override
+            public ResultsStream.QueryBuilder<Installation> fetchSize(int fetchSize) {
+                // also the number of rows between two clears of the persistence context, so at least 1
+                this.fetchSize = Math.max(1, fetchSize);
+                return this;
+            }
+            @Override
+            public ResultsStream<Installation> executeQuery() {
+                final Query hibernateQuery = JPAInstallationDao.this.createHibernateQuery(hql.toString());
+                hibernateQuery.setParameter("variantID", variantID);
+                if (developer != null) {
+                    hibernateQuery.setParameter("developer", developer);
+                }
+                hibernateQuery.setReadOnly(true);
+                hibernateQuery.setFetchSize(fetchSize);
+
+                final ScrollableResults results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+                return new ResultsStream<Installation>() {
+                    private int rows;
+                    @Override
+                    public boolean next() throws ResultStreamException {
+                        // previous installations are consumed, keep the session small
+                        if (++rows % fetchSize == 0) {
+                            entityManager.clear();
+                        }
+                        return results.next();
+                    }
+                    @Override
+                    public Installation get() throws ResultStreamException {
+                        return (Installation) results.get()[0];
+                    }
+                    @Override
+                    public void close() {
+                        results.close();
+                    }
+                };
+            }
+        };
+    }
 
     @Override
     public Installation findInstallationForVariantByDeviceToken(String variantID, String deviceToken) {
@@ -126,6 +213,75 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
                 .getResultList();
     }
 
+    @Override
+    public Set<String> findExistingDeviceTokensForVariant(String variantID, Collection<String> deviceTokens) {
+        if (deviceTokens == null || deviceTokens.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        return new HashSet<>(createQuery("select installation.deviceToken from Installation installation" +
+                " join installation.variant abstractVariant" +
+                " where abstractVariant.variantID = :variantID" +
+                " and installation.deviceToken IN :deviceTokens", String.class)
+                .setParameter("variantID", variantID)
+                .setParameter("deviceTokens", deviceTokens)
+                .getResultList());
+    }
+
+    @Override
+    public int updateDeviceTokensForVariant(String variantID, Map<String, String> replacements) {
+        final List<Map.Entry<String, String>> entries = new ArrayList<>(replacements.entrySet());
+        int updated = 0;
+
+        // one statement per chunk, each token takes three parameters
+        for (int from = 0; from < entries.size(); from += DEVICE_TOKEN_UPDATE_CHUNK_SIZE) {
+            final List<Map.Entry<String, String>> chunk = entries.subList(from,
+                    Math.min(entries.size(), from + DEVICE_TOKEN_UPDATE_CHUNK_SIZE));
+
+            final StringBuilder jpql = new StringBuilder("update Installation installation set installation.deviceToken = case");
+            for (int i = 0; i < chunk.size(); i++) {
+                jpql.append(" when installation.deviceToken = :current").append(i).append(" then :replacement").append(i);
+            }
+            jpql.append(" else installation.deviceToken end"
+                    + " where installation.deviceToken IN :deviceTokens"
+                    + " and installation.variant in (select variant from Variant variant where variant.variantID = :variantID)");
+
+            final javax.persistence.Query query = entityManager.createQuery(jpql.toString());
+            final List<String> deviceTokens = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                query.setParameter("current" + i, chunk.get(i).getKey());
+                query.setParameter("replacement" + i, chunk.get(i).getValue());
+                deviceTokens.add(chunk.get(i).getKey());
+            }
+
+            updated += query
+                    .setParameter("deviceTokens", deviceTokens)
+                    .setParameter("variantID", variantID)
+                    .executeUpdate();
+        }
+
+        // managed installations still carry the replaced tokens
+        if (updated > 0) {
+            entityManager.clear();
+        }
+        return updated;
+    }
+
+    @Override
+    public void createInBatch(List<Installation> installations) {
+        final Session session = entityManager.unwrap(Session.class);
+        final Integer jdbcBatchSize = session.getJdbcBatchSize();
+
+        // the installation IDs are assigned, so Hibernate can group the inserts into JDBC batches
+        session.setJdbcBatchSize(Math.max(1, installations.size()));
+        try {
+            installations.forEach(entityManager::persist);
+            flushAndClear();
+        } finally {
+            session.setJdbcBatchSize(jdbcBatchSize);
+        }
+    }
+
     @Override
     public Set<String> findAllDeviceTokenForVariantID(String variantID) {
         TypedQuery<String> query = createQuery(FIND_ALL_DEVICES_FOR_VARIANT_QUERY, String.class);
@@ -186,6 +342,10 @@ public class JPAInstallationDao extends JPABaseDao<Installation, String> impleme
                     public String get() throws ResultStreamException {
                         return (String) results.get()[0];
                     }
+                    @Override
+                    public void close() {
+                        results.close();
+                    }
                 };
             }
 
@@ -271,11 +271,30 @@ public class FlatPushMessageInformationDaoTest {
         List<FlatPushMessageInformation> messageInformations = pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE);
         assertThat(messageInformations).hasSize(2);
 
-        pushMessageInformationDao.deletePushInformationOlderThan(DateUtils.calculatePastDate(0));
+        final List<String> ids = pushMessageInformationDao.findPushInformationIDsOlderThan(DateUtils.calculatePastDate(0), 10);
+        assertThat(pushMessageInformationDao.deletePushInformation(ids)).isEqualTo(3);
 
         flushAndClear();
 
         messageInformations = pushMessageInformationDao.findAllForPushApplication("231231231", Boolean.TRUE);
         assertThat(messageInformations).hasSize(0);
     }
+
+    @Test
+    public void deleteOldPushMessageInformationsInChunks() {
+        final Variant variant = variantDao.find("1");
+        pushMessageInformationDao.upsertVariantError("1", variant, "error", 1);
+        flushAndClear();
+
+        // oldest first, limited to the chunk size
+        final List<String> ids = pushMessageInformationDao.findPushInformationIDsOlderThan(DateUtils.calculatePastDate(0), 1);
+        assertThat(ids).containsExactly("1");
+
+        assertThat(pushMessageInformationDao.deletePushInformation(ids)).isEqualTo(1);
+        flushAndClear();
+
+        assertThat(pushMessageInformationDao.find("1")).isNull();
+        assertThat(entityManager.find(VariantErrorStatus.class, "1:" + variant.getVariantID())).isNull();
+        assertThat(pushMessageInformationDao.findPushInformationIDsOlderThan(DateUtils.calculatePastDate(0), 10)).containsExactly("2", "3");
+    }
 }
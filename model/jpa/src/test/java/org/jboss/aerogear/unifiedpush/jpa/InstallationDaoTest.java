@@ -580,6 +580,23 @@ public class InstallationDaoTest {
 		assertThat(pageResult.getAggregate().getCount()).isEqualTo(6);
 	}
 
+	@Test
+	public void shouldSeekInstallationsByVariantForDeveloper() {
+		// when
+		final PageResult<Installation, Count> first = installationDao
+				.findInstallationsByVariantForDeveloperAfter(androidVariantID, "me", null, 4, null, true);
+		final String lastId = first.getResultList().get(3).getId();
+		final PageResult<Installation, Count> second = installationDao
+				.findInstallationsByVariantForDeveloperAfter(androidVariantID, "me", lastId, 4, null, false);
+
+		// then
+		assertThat(first.getResultList()).hasSize(4).extracting("id").isSorted();
+		assertThat(first.getAggregate().getCount()).isEqualTo(6);
+		assertThat(second.getResultList()).hasSize(2);
+		assertThat(second.getResultList().get(0).getId()).isGreaterThan(lastId);
+		assertThat(second.getAggregate()).isNull();
+	}
+
 	@Test
 	public void shouldSelectInstallationsByVariant() {
 		// when
@@ -592,6 +609,28 @@ public class InstallationDaoTest {
 		assertThat(pageResult.getAggregate().getCount()).isEqualTo(6);
 	}
 
+	@Test
+	public void shouldStreamInstallationsByVariant() throws ResultStreamException {
+		// when
+		final ResultsStream<Installation> stream = installationDao
+				.streamInstallationsByVariantForDeveloper(androidVariantID, null).fetchSize(2).executeQuery();
+		final List<String> ids = new ArrayList<>();
+		while (stream.next()) {
+			ids.add(stream.get().getId());
+		}
+
+		// then
+		assertThat(ids).hasSize(6).isSorted().doesNotHaveDuplicates();
+	}
+
+	@Test
+	public void shouldStreamInstallationsByVariantForDeveloper() throws ResultStreamException {
+		final ResultsStream<Installation> stream = installationDao
+				.streamInstallationsByVariantForDeveloper(androidVariantID, "someone-else").executeQuery();
+
+		assertThat(stream.next()).isFalse();
+	}
+
 	@Test
 	public void shouldSelectInstallationsByDeviceTokenSearch() {
 		// when
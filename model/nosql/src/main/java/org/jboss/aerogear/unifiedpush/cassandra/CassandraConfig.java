@@ -29,6 +29,7 @@ public class CassandraConfig extends AbstractCassandraConfiguration {
 	private static final String PROP_CONTACT_POINTS_KEY = "aerogear.config.cassandra.contactpoints";
 	private static final String PROP_PORT_KEY = "aerogear.config.cassandra.port";
 	public static final String PROP_CONSISTENCY_LEVEL = "aerogear.config.cassandra.consistencylevel";
+	public static final String PROP_MAX_CONCURRENT_LOOKUPS = "aerogear.config.cassandra.max_concurrent_lookups";
 
 	@Autowired
 	private ConfigurationEnvironment config;
@@ -90,4 +91,12 @@ public class CassandraConfig extends AbstractCassandraConfiguration {
 	public String getConsistencyLevel() {
 		return config.getProperty(PROP_CONSISTENCY_LEVEL, "ONE");
 	}
+
+	/**
+	 * Maximum number of queries a multi-key lookup (e.g. documents of many
+	 * aliases) keeps in flight at once.
+	 */
+	public int getMaxConcurrentLookups() {
+		return config.getProperty(PROP_MAX_CONCURRENT_LOOKUPS, 32);
+	}
 }
@@ -1,5 +1,6 @@
 package org.jboss.aerogear.unifiedpush.cassandra.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -38,7 +39,34 @@ public interface AliasDao {
 	 */
 	void remove(UUID pushApplicationId, UUID userId);
 
+	/**
+	 * Stream the user ids of an application, read page by page from the
+	 * application index.
+	 *
+	 * @param pushApplicationId
+	 *            selected push application
+	 * @return rows with the user id as first column
+	 */
 	Stream<Row> findUserIds(UUID pushApplicationId);
 
+	/**
+	 * Re-create the application index entry of every user. Used to backfill
+	 * the index of users created before it existed, safe to run repeatedly.
+	 *
+	 * @return number of indexed users
+	 */
+	long rebuildApplicationIndex();
+
 	Alias findOne(UUID pushApplicationId, UUID userId);
+
+	/**
+	 * Filter user ids registered to the application, with concurrent queries.
+	 *
+	 * @param pushApplicationId
+	 *            selected push application
+	 * @param userIds
+	 *            Users in UUID v1 format
+	 * @return existing user ids, in the order of the given ids
+	 */
+	List<UUID> findExistingUserIds(UUID pushApplicationId, Collection<UUID> userIds);
 }
@@ -1,5 +1,6 @@
 package org.jboss.aerogear.unifiedpush.cassandra.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -26,4 +27,17 @@ public interface DocumentDao<T, ID> {
 	DocumentContent findOne(ID key, String documentId);
 
 	List<DocumentContent> findLatestForAliases(ID key, List<Alias> aliases, String documentId);
+
+	/**
+	 * Query the documents of many users at once, with concurrent queries.
+	 *
+	 * @param key
+	 *            application and database, the user id is ignored
+	 * @param userIds
+	 *            users to query documents of
+	 * @param options
+	 *            query options applied to each user
+	 * @return documents grouped by user, in the order of the given users
+	 */
+	List<DocumentContent> findForUsers(ID key, Collection<UUID> userIds, QueryOptions options);
 }
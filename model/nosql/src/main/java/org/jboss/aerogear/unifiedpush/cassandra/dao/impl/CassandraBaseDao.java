@@ -1,7 +1,17 @@
 package org.jboss.aerogear.unifiedpush.cassandra.dao.impl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import org.jboss.aerogear.unifiedpush.cassandra.CassandraConfig;
 import org.slf4j.Logger;
@@ -9,10 +19,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.cassandra.core.CassandraOperations;
 import org.springframework.data.cassandra.core.cql.CassandraAccessor;
+import org.springframework.data.cassandra.core.cql.SessionCallback;
 import org.springframework.data.cassandra.repository.query.CassandraEntityInformation;
 import org.springframework.data.cassandra.repository.support.SimpleCassandraRepository;
 
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public abstract class CassandraBaseDao<T, ID extends Serializable> extends SimpleCassandraRepository<T, ID> {
 	private final Logger logger = LoggerFactory.getLogger(CassandraBaseDao.class);
@@ -22,6 +41,8 @@ public abstract class CassandraBaseDao<T, ID extends Serializable> extends Simpl
 	protected String tableName;
 	protected final Class<T> domainClass;
 	private CassandraConfig config;
+	private final ConcurrentMap<String, CompletableFuture<PreparedStatement>> preparedStatements = new ConcurrentHashMap<>();
+	private volatile Session session;
 
 	public CassandraBaseDao(Class<T> domainClass, CassandraEntityInformation<T, ID> metadata,
 			CassandraOperations operations, CassandraConfig configuraion) {
@@ -53,6 +74,160 @@ public abstract class CassandraBaseDao<T, ID extends Serializable> extends Simpl
 				"TypedIdCassandraRepository is @Deprecated, use CassandraRepository.save");
 	}
 
+	/**
+	 * Binds values to the prepared form of a statement.
+	 *
+	 * Statements are registered by query string and prepared on first use, so
+	 * a statement built with bind markers is parsed once by the cluster and
+	 * can be routed to a replica of its partition by the driver.
+	 *
+	 * Waits for the preparation, so it must not be called on a driver I/O
+	 * thread, use {@link #bindAsync(RegularStatement, Object...)} there.
+	 */
+	protected BoundStatement bind(RegularStatement statement, Object... values) {
+		return join(bindAsync(statement, values));
+	}
+
+	/**
+	 * Asynchronous {@link #bind(RegularStatement, Object...)}, safe to use in
+	 * dependent stages of {@link #executeAsync(Statement)}.
+	 */
+	protected CompletableFuture<BoundStatement> bindAsync(RegularStatement statement, Object... values) {
+		return prepareAsync(statement).thenApply(prepared -> prepared.bind(values));
+	}
+
+	protected CompletableFuture<PreparedStatement> prepareAsync(RegularStatement statement) {
+		final String query = statement.getQueryString();
+		final CompletableFuture<PreparedStatement> prepared = preparedStatements.computeIfAbsent(query,
+				key -> toCompletable(getSession().prepareAsync(statement))
+						.thenApply(result -> result.setConsistencyLevel(getConsistencyLevel())));
+
+		// a failed preparation is not cached, the next use prepares again
+		prepared.whenComplete((result, error) -> {
+			if (error != null) {
+				preparedStatements.remove(query, prepared);
+			}
+		});
+		return prepared;
+	}
+
+	/**
+	 * Executes a statement without blocking the calling thread.
+	 *
+	 * The returned future completes on a driver I/O thread. Dependent stages
+	 * must not block, use {@link #readAll(ResultSet, Function)} to read
+	 * results beyond the first page.
+	 */
+	protected CompletableFuture<ResultSet> executeAsync(Statement statement) {
+		statement.setConsistencyLevel(getConsistencyLevel());
+
+		return toCompletable(getSession().executeAsync(statement));
+	}
+
+	/**
+	 * Maps all rows of a result set, fetching the following pages
+	 * asynchronously.
+	 */
+	protected <R> CompletableFuture<List<R>> readAll(ResultSet resultSet, Function<Row, R> mapper) {
+		return readAll(resultSet, mapper, new ArrayList<>());
+	}
+
+	private <R> CompletableFuture<List<R>> readAll(ResultSet resultSet, Function<Row, R> mapper, List<R> results) {
+		for (int available = resultSet.getAvailableWithoutFetching(); available > 0; available--) {
+			results.add(mapper.apply(resultSet.one()));
+		}
+
+		if (resultSet.isFullyFetched()) {
+			return CompletableFuture.completedFuture(results);
+		}
+		return toCompletable(resultSet.fetchMoreResults()).thenCompose(next -> readAll(next, mapper, results));
+	}
+
+	private static <V> CompletableFuture<V> toCompletable(ListenableFuture<V> future) {
+		final CompletableFuture<V> result = new CompletableFuture<>();
+		future.addListener(() -> {
+			try {
+				result.complete(future.get());
+			} catch (ExecutionException e) {
+				result.completeExceptionally(e.getCause());
+			} catch (InterruptedException | RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}, Runnable::run);
+
+		return result;
+	}
+
+	/**
+	 * Runs a lookup for each input, with at most
+	 * {@link CassandraConfig#getMaxConcurrentLookups()} lookups in flight.
+	 *
+	 * No further lookups are started once one has failed, its exception is
+	 * thrown when the lookups in flight have been waited for.
+	 *
+	 * @return results in the order of the inputs, lookups completing with
+	 *         <code>null</code> are skipped.
+	 */
+	protected <I, R> List<R> lookupAll(Collection<I> inputs, Function<I, CompletableFuture<R>> lookup) {
+		final Semaphore window = new Semaphore(config.getMaxConcurrentLookups());
+		final AtomicBoolean failed = new AtomicBoolean();
+		final List<CompletableFuture<R>> futures = new ArrayList<>(inputs.size());
+
+		for (I input : inputs) {
+			if (failed.get()) {
+				break;
+			}
+			window.acquireUninterruptibly();
+			// a lookup may have failed while waiting for the window
+			if (failed.get()) {
+				window.release();
+				break;
+			}
+			try {
+				futures.add(lookup.apply(input).whenComplete((result, error) -> {
+					if (error != null) {
+						failed.set(true);
+					}
+					window.release();
+				}));
+			} catch (RuntimeException e) {
+				window.release();
+				throw e;
+			}
+		}
+
+		final List<R> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<R> future : futures) {
+			final R result = join(future);
+			if (result != null) {
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Waits for a future, rethrowing its runtime exception as is.
+	 */
+	protected static <R> R join(CompletableFuture<R> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+	protected T read(Row row) {
+		return operations.getConverter().read(domainClass, row);
+	}
+
+	private Session getSession() {
+		if (session == null) {
+			session = operations.getCqlOperations().execute((SessionCallback<Session>) current -> current);
+		}
+		return session;
+	}
+
 	protected ConsistencyLevel getConsistencyLevel() {
 		return ConsistencyLevel.valueOf(config.getConsistencyLevel());
 	}
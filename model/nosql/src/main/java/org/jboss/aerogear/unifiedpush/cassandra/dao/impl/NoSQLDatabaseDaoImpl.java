@@ -22,6 +22,9 @@ import com.datastax.driver.core.querybuilder.Select;
 class NoSQLDatabaseDaoImpl extends CassandraBaseDao<Database, DatabaseKey> implements DatabaseDao {
 	private static final String MV_BY_DATABASE = "databases_by_database";
 
+	private final Select selectByDatabase;
+	private final Select selectByApplication;
+
 	public NoSQLDatabaseDaoImpl(@Autowired CassandraOperations operations, @Autowired CassandraConfig configuraion) {
 		super(Database.class, new CassandraRepositoryFactory(operations).getEntityInformation(Database.class),
 				operations, configuraion);
@@ -29,21 +32,22 @@ class NoSQLDatabaseDaoImpl extends CassandraBaseDao<Database, DatabaseKey> imple
 		Assert.isTrue(
 				((CassandraAccessor) operations.getCqlOperations()).getConsistencyLevel() == getConsistencyLevel(),
 				"ConsistencyLevel Must be QUORUM");
+
+		selectByDatabase = QueryBuilder.select().from(MV_BY_DATABASE);
+		selectByDatabase.where(QueryBuilder.eq("push_application_id", QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq("database", QueryBuilder.bindMarker()));
+
+		selectByApplication = QueryBuilder.select().from(super.tableName);
+		selectByApplication.where(QueryBuilder.eq("push_application_id", QueryBuilder.bindMarker()));
 	}
 
 	public Database findOne(DatabaseQueryKey key) {
-		Select select = QueryBuilder.select().from(MV_BY_DATABASE);
-		select.where(QueryBuilder.eq("push_application_id", key.getPushApplicationId()));
-		select.where(QueryBuilder.eq("database", key.getDatabase()));
-
-		return operations.selectOne(select, domainClass);
+		return operations.selectOne(bind(selectByDatabase, key.getPushApplicationId(), key.getDatabase()),
+				domainClass);
 	}
 
 	public Stream<Database> find(UUID pushApplicationId) {
-		Select select = QueryBuilder.select().from(super.tableName);
-		select.where(QueryBuilder.eq("push_application_id", pushApplicationId));
-
-		return operations.stream(select, domainClass);
+		return operations.stream(bind(selectByApplication, pushApplicationId), domainClass);
 	}
 
 	@Override
@@ -1,12 +1,14 @@
 package org.jboss.aerogear.unifiedpush.cassandra.dao.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.aerogear.unifiedpush.api.Alias;
@@ -25,6 +27,7 @@ import org.springframework.data.cassandra.repository.support.CassandraRepository
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
 
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
@@ -38,6 +41,8 @@ public class NoSQLDocumentDaoImpl extends CassandraBaseDao<DocumentContent, Docu
 	private static final String MV_WITH_DOCUMENT_ID = "documents_with_document_id";
 	private static final int DEFAULT_LIMIT = 100;
 
+	private final Delete deletePartition;
+
 	@Autowired
 	private DatabaseDao databaseDao;
 	@Autowired
@@ -51,6 +56,11 @@ public class NoSQLDocumentDaoImpl extends CassandraBaseDao<DocumentContent, Docu
 		Assert.isTrue(
 				((CassandraAccessor) operations.getCqlOperations()).getConsistencyLevel() == getConsistencyLevel(),
 				"ConsistencyLevel Must be QUORUM");
+
+		deletePartition = QueryBuilder.delete().from(super.tableName);
+		deletePartition.where(QueryBuilder.eq("push_application_id", QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq("database", QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq("user_id", QueryBuilder.bindMarker()));
 	}
 
 	@Override
@@ -95,73 +105,75 @@ public class NoSQLDocumentDaoImpl extends CassandraBaseDao<DocumentContent, Docu
 	 * Return newest document according to DocumentKey.
 	 */
 	private DocumentContent findLatest(DocumentKey queryKey, String documentId) {
-		Select select = QueryBuilder.select().from(super.tableName);
-		select.where(QueryBuilder.eq("push_application_id", queryKey.getPushApplicationId()));
-		select.where(QueryBuilder.eq("database", queryKey.getDatabase()));
-		select.where(QueryBuilder.eq("user_id", queryKey.getUserId()));
-
 		// Also search by document logical id.
-		if (documentId != null) {
-			UUID snapshot = findLatestById(queryKey, documentId);
-
-			if (snapshot != null)
-				select.where(QueryBuilder.eq("snapshot", snapshot));
-		}
+		UUID snapshot = documentId == null ? null : findLatestById(queryKey, documentId);
 
-		return operations.selectOne(select, this.domainClass);
+		return operations.selectOne(selectLatest(queryKey, snapshot), this.domainClass);
 	}
 
 	// Select latest snapshot for a document id
 	private UUID findLatestById(DocumentKey queryKey, String documentId) {
-		return findById(queryKey, new QueryOptions(documentId, 1)).findFirst().map(row -> row.getUUID(0)).orElse(null);
+		Row row = operations.getCqlOperations()
+				.queryForResultSet(selectSnapshots(queryKey, new QueryOptions(documentId, 1))).one();
+		return row == null ? null : row.getUUID(0);
 	}
 
-	// Select limited (default 100) amount of snapshots by document id
-	private Stream<Row> findById(DocumentKey queryKey, QueryOptions options) {
-		Select select = QueryBuilder.select("snapshot", "push_application_id", "database", "user_id", "document_id")
-				.from(MV_WITH_DOCUMENT_ID);
-		select.where(QueryBuilder.eq("push_application_id", queryKey.getPushApplicationId()));
-		select.where(QueryBuilder.eq("database", queryKey.getDatabase()));
-		select.where(QueryBuilder.eq("user_id", queryKey.getUserId()));
-		select.where(QueryBuilder.eq("document_id", options.getId()));
+	@Override
+	public List<DocumentContent> findLatestForAliases(DocumentKey key, List<Alias> aliases, String logicalId) {
+		if (aliases == null)
+			return new ArrayList<>();
+
+		// Query global documents for each alias, concurrently
+		return lookupAll(aliases, alias -> findLatestAsync(
+				new DocumentKey(key.getPushApplicationId(), key.getDatabase(), alias.getId()), logicalId));
+	}
 
-		if (options != null) {
-			// Query snapshot by equality
-			if (options.getFromDate() != null) {
-				final UUID min = UUIDs.startOf(options.getFromDate());
-				select.where(QueryBuilder.gte("snapshot", min));
-			}
-			if (options.getToDate() != null) {
-				final UUID max = UUIDs.endOf(options.getToDate());
-				select.where(QueryBuilder.lt("snapshot", max));
-			}
+	@Override
+	public List<DocumentContent> findForUsers(DocumentKey key, Collection<UUID> userIds, QueryOptions options) {
+		return lookupAll(userIds, userId -> findAsync(
+				new DocumentKey(key.getPushApplicationId(), key.getDatabase(), userId), options))
+						.stream().flatMap(List::stream).collect(Collectors.toList());
+	}
 
-			if (options.getLimit() != null && options.getLimit() > 0)
-				select.limit(options.getLimit());
-			else
-				select.limit(DEFAULT_LIMIT);
+	/**
+	 * Asynchronous {@link #findLatest(DocumentKey, String)}.
+	 */
+	private CompletableFuture<DocumentContent> findLatestAsync(DocumentKey queryKey, String documentId) {
+		CompletableFuture<UUID> snapshot;
+		if (documentId == null) {
+			snapshot = CompletableFuture.completedFuture(null);
+		} else {
+			snapshot = selectSnapshots(queryKey, new QueryOptions(documentId, 1)).thenCompose(this::executeAsync).thenApply(resultSet -> {
+				Row row = resultSet.one();
+				return row == null ? null : row.getUUID(0);
+			});
 		}
 
-		return StreamSupport.stream(operations.getCqlOperations().queryForResultSet(select).spliterator(), false);
+		return snapshot.thenCompose(latest -> selectLatest(queryKey, latest)).thenCompose(this::executeAsync).thenApply(resultSet -> {
+			Row row = resultSet.one();
+			return row == null ? null : read(row);
+		});
 	}
 
-	@Override
-	public List<DocumentContent> findLatestForAliases(DocumentKey key, List<Alias> aliases, String logicalId) {
-		List<DocumentContent> docs = new ArrayList<>();
-		if (aliases == null)
-			return docs;
-
-		aliases.forEach((alias) -> {
-			key.setUserId(alias.getId());
-			// Query global documents for each database
-			DocumentContent doc = findOne(key, logicalId);
+	/**
+	 * Asynchronous {@link #find(DocumentKey, QueryOptions)}.
+	 */
+	private CompletableFuture<List<DocumentContent>> findAsync(DocumentKey queryKey, QueryOptions options) {
+		CompletableFuture<List<UUID>> snapshots;
+		if (options != null && StringUtils.isNotEmpty(options.getId())) {
+			snapshots = selectSnapshots(queryKey, options).thenCompose(this::executeAsync)
+					.thenCompose(resultSet -> readAll(resultSet, row -> row.getUUID(0)));
+		} else {
+			snapshots = CompletableFuture.completedFuture(null);
+		}
 
-			if (doc != null) {
-				docs.add(doc);
+		return snapshots.thenCompose(ids -> {
+			if (ids != null && ids.isEmpty()) {
+				return CompletableFuture.completedFuture(new ArrayList<>());
 			}
+			return selectDocuments(queryKey, options, ids).thenCompose(this::executeAsync)
+					.thenCompose(resultSet -> readAll(resultSet, this::read));
 		});
-
-		return docs;
 	}
 
 	private Stream<DocumentContent> find(DocumentKey queryKey) {
@@ -169,40 +181,111 @@ public class NoSQLDocumentDaoImpl extends CassandraBaseDao<DocumentContent, Docu
 	}
 
 	public Stream<DocumentContent> find(DocumentKey queryKey, QueryOptions options) {
-		Select select = QueryBuilder.select().from(super.tableName);
-		select.where(QueryBuilder.eq("push_application_id", queryKey.getPushApplicationId()));
-		select.where(QueryBuilder.eq("database", queryKey.getDatabase()));
-		select.where(QueryBuilder.eq("user_id", queryKey.getUserId()));
+		List<UUID> snapshots = null;
+
+		// Query by document id.
+		// Snapshot cannot be restricted by both an equality and an
+		// inequality relation
+		if (options != null && StringUtils.isNotEmpty(options.getId())) {
+			// Query snapshots for a given document id by equality
+			snapshots = operations.getCqlOperations().query(join(selectSnapshots(queryKey, options)),
+					(row, rowNum) -> row.getUUID(0));
+
+			if (snapshots.isEmpty())
+				return Stream.empty();
+		}
+
+		return operations.stream(join(selectDocuments(queryKey, options, snapshots)), domainClass);
+	}
+
+	/*
+	 * Latest document of a partition, or the document of a given snapshot.
+	 */
+	private CompletableFuture<BoundStatement> selectLatest(DocumentKey queryKey, UUID snapshot) {
+		Select select = wherePartition(QueryBuilder.select().from(super.tableName));
+		List<Object> values = partitionValues(queryKey);
+
+		if (snapshot != null) {
+			select.where(QueryBuilder.eq("snapshot", QueryBuilder.bindMarker()));
+			values.add(snapshot);
+		}
+		select.limit(1);
+
+		return bindAsync(select, values.toArray());
+	}
+
+	/*
+	 * Limited (default 100) amount of snapshots by document id.
+	 */
+	private CompletableFuture<BoundStatement> selectSnapshots(DocumentKey queryKey, QueryOptions options) {
+		Select select = wherePartition(QueryBuilder.select("snapshot").from(MV_WITH_DOCUMENT_ID));
+		select.where(QueryBuilder.eq("document_id", QueryBuilder.bindMarker()));
+		List<Object> values = partitionValues(queryKey, options.getId());
+
+		// Query snapshot by equality
+		whereSnapshotRange(select, values, options);
+		whereLimit(select, values, options.getLimit() != null && options.getLimit() > 0 ? options.getLimit() : DEFAULT_LIMIT);
+
+		return bindAsync(select, values.toArray());
+	}
+
+	/*
+	 * Documents of a partition, either of the given snapshots or within the
+	 * date range of the options.
+	 */
+	private CompletableFuture<BoundStatement> selectDocuments(DocumentKey queryKey, QueryOptions options, List<UUID> snapshots) {
+		Select select = wherePartition(QueryBuilder.select().from(super.tableName));
+		List<Object> values = partitionValues(queryKey);
+
+		if (snapshots != null) {
+			// query snapshot by inequality
+			select.where(QueryBuilder.in("snapshot", QueryBuilder.bindMarker()));
+			values.add(snapshots);
+		} else if (options != null) {
+			whereSnapshotRange(select, values, options);
+		}
 
 		if (options != null) {
-			// Query by document id.
-			// Snapshot cannot be restricted by both an equality and an
-			// inequality relation
-			if (StringUtils.isNotEmpty(options.getId())) {
-
-				// Query snapshots for a given document id by equality
-				List<UUID> snapshots = findById(queryKey, options).map(row -> row.getUUID(0))
-						.collect(Collectors.toList());
-
-				// query snapshot by inequality
-				select.where(QueryBuilder.in("snapshot", snapshots));
-			} else {
-				// Query snapshot by equality
-				if (options.getFromDate() != null) {
-					final UUID min = UUIDs.startOf(options.getFromDate());
-					select.where(QueryBuilder.gte("snapshot", min));
-				}
-				if (options.getToDate() != null) {
-					final UUID max = UUIDs.endOf(options.getToDate());
-					select.where(QueryBuilder.lt("snapshot", max));
-				}
-			}
+			whereLimit(select, values, options.getLimit());
+		}
+
+		return bindAsync(select, values.toArray());
+	}
 
-			if (options.getLimit() != null && options.getLimit() > 0)
-				select.limit(options.getLimit());
+	private static Select wherePartition(Select select) {
+		select.where(QueryBuilder.eq("push_application_id", QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq("database", QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq("user_id", QueryBuilder.bindMarker()));
+		return select;
+	}
+
+	private static List<Object> partitionValues(DocumentKey queryKey, Object... others) {
+		List<Object> values = new ArrayList<>();
+		values.add(queryKey.getPushApplicationId());
+		values.add(queryKey.getDatabase());
+		values.add(queryKey.getUserId());
+		values.addAll(Arrays.asList(others));
+		return values;
+	}
+
+	private static void whereSnapshotRange(Select select, List<Object> values, QueryOptions options) {
+		if (options.getFromDate() != null) {
+			final UUID min = UUIDs.startOf(options.getFromDate());
+			select.where(QueryBuilder.gte("snapshot", QueryBuilder.bindMarker()));
+			values.add(min);
+		}
+		if (options.getToDate() != null) {
+			final UUID max = UUIDs.endOf(options.getToDate());
+			select.where(QueryBuilder.lt("snapshot", QueryBuilder.bindMarker()));
+			values.add(max);
 		}
+	}
 
-		return operations.stream(select, domainClass);
+	private static void whereLimit(Select select, List<Object> values, Integer limit) {
+		if (limit != null && limit > 0) {
+			select.limit(QueryBuilder.bindMarker());
+			values.add(limit);
+		}
 	}
 
 	@Override
@@ -246,12 +329,8 @@ public class NoSQLDocumentDaoImpl extends CassandraBaseDao<DocumentContent, Docu
 	public void deleteById(DocumentKey key) {
 		// Delete all documents by partition key
 		if (key.getSnapshot() == null) {
-			Delete delete = QueryBuilder.delete().from(super.tableName);
-			delete.where(QueryBuilder.eq("push_application_id", key.getPushApplicationId()));
-			delete.where(QueryBuilder.eq("database", key.getDatabase()));
-			delete.where(QueryBuilder.eq("user_id", key.getUserId()));
-
-			operations.getCqlOperations().execute(delete);
+			operations.getCqlOperations().execute(bind(deletePartition, key.getPushApplicationId(),
+					key.getDatabase(), key.getUserId()));
 		} else {
 			super.deleteById(key);
 		}
@@ -1,12 +1,12 @@
 package org.jboss.aerogear.unifiedpush.cassandra.dao.impl;
 
-import java.time.Month;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -29,9 +29,11 @@ import org.springframework.data.cassandra.repository.support.CassandraRepository
 import org.springframework.stereotype.Repository;
 import org.springframework.util.Assert;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Delete;
+import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 
@@ -39,16 +41,36 @@ import com.datastax.driver.core.querybuilder.Select;
 class NoSQLUserDaoImpl extends CassandraBaseDao<User, UserKey> implements AliasDao {
 	private final Logger logger = LoggerFactory.getLogger(NoSQLUserDaoImpl.class);
 
-	private static final String MV_BY_PUSH_APPLICATION = "users_by_application";
 	private static final String MV_BY_ALIAS_AND_APPLICATION = "users_by_alias_application";
 	private static final String MV_BY_ALIAS = "users_by_alias";
-	private static final List<Integer> months;
+
+	/*
+	 * Application index, user ids of an application are spread over a fixed
+	 * number of partitions by hash of the user id. Changing the number of
+	 * buckets requires to rebuild the index.
+	 */
+	static final String USERS_BY_APPLICATION = "users_by_application_bucket";
+	static final int BUCKETS = 16;
+	private static final String FIELD_BUCKET = "bucket";
+	private static final int PAGE_SIZE = 1000;
+	private static final List<Short> buckets;
+
+	private final Select selectUsers;
+	private final Select selectUserId;
+	private final Select selectByAlias;
+	private final Select selectByAliasAndApplication;
+	private final Select selectByApplication;
+	private final Select selectApplicationUserIds;
+	private final Insert insertUser;
+	private final Insert insertByApplication;
+	private final Delete deleteUsers;
+	private final Delete deleteByApplication;
 
 	@Autowired
 	private CacheManager cacheManager;
 
 	static {
-		months = Arrays.stream(Month.values()).map(month -> month.getValue()).collect(Collectors.toList());
+		buckets = IntStream.range(0, BUCKETS).mapToObj(bucket -> (short) bucket).collect(Collectors.toList());
 	}
 
 	public NoSQLUserDaoImpl(@Autowired CassandraOperations operations, @Autowired CassandraConfig configuraion) {
@@ -58,6 +80,55 @@ class NoSQLUserDaoImpl extends CassandraBaseDao<User, UserKey> implements AliasD
 		Assert.isTrue(
 				((CassandraAccessor) operations.getCqlOperations()).getConsistencyLevel() == getConsistencyLevel(),
 				"ConsistencyLevel Must be QUORUM");
+
+		selectUsers = QueryBuilder.select().from(super.tableName);
+		selectUsers.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(UserKey.FIELD_USER_ID, QueryBuilder.bindMarker()));
+
+		selectUserId = QueryBuilder.select(UserKey.FIELD_USER_ID).from(super.tableName);
+		selectUserId.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(UserKey.FIELD_USER_ID, QueryBuilder.bindMarker()));
+		selectUserId.limit(1);
+
+		selectByAlias = QueryBuilder
+				.select(UserKey.FIELD_PUSH_APPLICATION_ID, UserKey.FIELD_USER_ID, UserKey.FIELD_ALIAS)
+				.from(MV_BY_ALIAS);
+		selectByAlias.where(QueryBuilder.in(UserKey.FIELD_ALIAS, QueryBuilder.bindMarker()));
+
+		selectByAliasAndApplication = QueryBuilder
+				.select(UserKey.FIELD_PUSH_APPLICATION_ID, UserKey.FIELD_USER_ID, UserKey.FIELD_ALIAS)
+				.from(MV_BY_ALIAS_AND_APPLICATION);
+		selectByAliasAndApplication.where(QueryBuilder.in(UserKey.FIELD_ALIAS, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()));
+
+		selectByApplication = QueryBuilder.select(UserKey.FIELD_USER_ID).from(USERS_BY_APPLICATION);
+		selectByApplication.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(FIELD_BUCKET, QueryBuilder.bindMarker()));
+
+		selectApplicationUserIds = QueryBuilder.select(UserKey.FIELD_PUSH_APPLICATION_ID, UserKey.FIELD_USER_ID)
+				.distinct().from(super.tableName);
+
+		insertUser = QueryBuilder.insertInto(super.tableName) //
+				.value(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()) //
+				.value(UserKey.FIELD_USER_ID, QueryBuilder.bindMarker()) //
+				.value(UserKey.FIELD_ALIAS, QueryBuilder.bindMarker()) //
+				.value("type", QueryBuilder.bindMarker()) //
+				.value("month", QueryBuilder.bindMarker()) //
+				.value("day", QueryBuilder.bindMarker());
+
+		insertByApplication = QueryBuilder.insertInto(USERS_BY_APPLICATION) //
+				.value(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()) //
+				.value(FIELD_BUCKET, QueryBuilder.bindMarker()) //
+				.value(UserKey.FIELD_USER_ID, QueryBuilder.bindMarker());
+
+		deleteUsers = QueryBuilder.delete().from(super.tableName);
+		deleteUsers.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(UserKey.FIELD_USER_ID, QueryBuilder.bindMarker()));
+
+		deleteByApplication = QueryBuilder.delete().from(USERS_BY_APPLICATION);
+		deleteByApplication.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(FIELD_BUCKET, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(UserKey.FIELD_USER_ID, QueryBuilder.bindMarker()));
 	}
 
 	@Override
@@ -78,12 +149,16 @@ class NoSQLUserDaoImpl extends CassandraBaseDao<User, UserKey> implements AliasD
 			users.add(User.copy(alias, alias.getOther(), User.AliasType.OTHER.ordinal()));
 		}
 
-		users.stream().forEach(user -> {
-			super.save(user);
-		});
-
-		if (users == null || users.size() == 0) {
+		if (users.size() == 0) {
 			logger.warn("Attempt to store an alias without a valid AliasType. alias:{}", alias.toString());
+		} else {
+			// Users and their application index entry are written atomically
+			BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED);
+			users.forEach(user -> batch.add(bind(insertUser, user.getKey().getPushApplicationId(), user.getId(),
+					user.getAlias(), user.getType(), user.getMonth(), user.getDay())));
+			batch.add(bind(insertByApplication, alias.getPushApplicationId(), bucket(alias.getId()), alias.getId()));
+
+			operations.getCqlOperations().execute(batch);
 		}
 
 		return users;
@@ -150,13 +225,15 @@ class NoSQLUserDaoImpl extends CassandraBaseDao<User, UserKey> implements AliasD
 		return alias;
 	}
 
-	private List<User> getUsers(UUID pushApplicationId, UUID userId) {
-		Select select = QueryBuilder.select().from(super.tableName);
-		select.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, pushApplicationId));
-		select.where(QueryBuilder.eq(UserKey.FIELD_USER_ID, userId));
+	@Override
+	public List<UUID> findExistingUserIds(UUID pushApplicationId, Collection<UUID> userIds) {
+		return lookupAll(userIds, userId -> bindAsync(selectUserId, pushApplicationId, userId)
+				.thenCompose(this::executeAsync).thenApply(resultSet -> resultSet.one() == null ? null : userId));
+	}
 
+	private List<User> getUsers(UUID pushApplicationId, UUID userId) {
 		// Get all possible aliases for a userId
-		return operations.select(select, super.domainClass);
+		return operations.select(bind(selectUsers, pushApplicationId, userId), super.domainClass);
 	}
 
 	/*
@@ -175,41 +252,66 @@ class NoSQLUserDaoImpl extends CassandraBaseDao<User, UserKey> implements AliasD
 	private Stream<Row> findUserIds(String alias, UUID pushApplicationId) {
 		List<String> aliases = optionalAliases(alias, null);
 
-		StringBuffer cql = new StringBuffer("SELECT ") //
-				.append(UserKey.FIELD_PUSH_APPLICATION_ID).append(",") //
-				.append(UserKey.FIELD_USER_ID).append(",") //
-				.append(UserKey.FIELD_ALIAS) //
-				.append(" FROM ").append(pushApplicationId == null ? MV_BY_ALIAS : MV_BY_ALIAS_AND_APPLICATION) //
-				.append(" WHERE alias IN ('").append(StringUtils.join(aliases, "','")).append("')");
-		if (pushApplicationId != null) {
-			cql.append(" AND ").append(UserKey.FIELD_PUSH_APPLICATION_ID).append("=").append(pushApplicationId);
-		}
+		Statement statement = pushApplicationId == null ? bind(selectByAlias, aliases)
+				: bind(selectByAliasAndApplication, aliases, pushApplicationId);
 
-		return StreamSupport.stream(
-				operations.getCqlOperations().queryForResultSet(new SimpleStatement(cql.toString())).spliterator(),
-				false);
+		return StreamSupport.stream(operations.getCqlOperations().queryForResultSet(statement).spliterator(), false);
 	}
 
 	/*
-	 * Select user_id from all 12 partitions (by month). For a planet scale
-	 * sizing, we can also create MV by day (365 partitions).
+	 * Select user_id from all application index buckets, one bucket after the
+	 * other. Each bucket is read page by page as the stream is consumed.
 	 */
 	public Stream<Row> findUserIds(UUID pushApplicationId) {
-		StringBuffer cql = new StringBuffer("SELECT ") //
-				.append(UserKey.FIELD_USER_ID) //
-				.append(" FROM ").append(MV_BY_PUSH_APPLICATION) //
-				.append(" WHERE ").append(UserKey.FIELD_PUSH_APPLICATION_ID).append("=").append(pushApplicationId) //
-				.append(" AND month IN (").append(StringUtils.join(months, ",")).append(")");
-
-		return StreamSupport.stream(
-				operations.getCqlOperations().queryForResultSet(new SimpleStatement(cql.toString())).spliterator(),
-				false);
+		return buckets.stream().flatMap(bucket -> {
+			Statement statement = bind(selectByApplication, pushApplicationId, bucket).setFetchSize(PAGE_SIZE);
+			return StreamSupport.stream(operations.getCqlOperations().queryForResultSet(statement).spliterator(),
+					false);
+		});
+	}
+
+	@Override
+	public long rebuildApplicationIndex() {
+		Statement statement = bind(selectApplicationUserIds).setFetchSize(PAGE_SIZE);
+		List<UserKey> page = new ArrayList<>(PAGE_SIZE);
+		long count = 0;
+
+		for (Row row : operations.getCqlOperations().queryForResultSet(statement)) {
+			page.add(new UserKey(row.getUUID(0), row.getUUID(1)));
+
+			if (page.size() == PAGE_SIZE) {
+				count += indexPage(page);
+				logger.info("Indexed {} users by application", count);
+			}
+		}
+
+		return count + indexPage(page);
+	}
+
+	private int indexPage(List<UserKey> page) {
+		lookupAll(page, key -> bindAsync(insertByApplication, key.getPushApplicationId(), bucket(key.getId()), key.getId())
+				.thenCompose(this::executeAsync).thenApply(resultSet -> null));
+
+		int size = page.size();
+		page.clear();
+		return size;
+	}
+
+	static short bucket(UUID userId) {
+		return (short) Math.floorMod(userId.hashCode(), BUCKETS);
 	}
 
 	@Override
 	public void remove(UUID pushApplicationId, String alias) {
 		findUserIds(alias, pushApplicationId).forEach(row -> {
-			deleteById(getKey(row));
+			UserKey key = getKey(row);
+			deleteById(key);
+
+			// Remove from the application index once the user has no alias left
+			if (getUsers(key.getPushApplicationId(), key.getId()).isEmpty()) {
+				operations.getCqlOperations().execute(bind(deleteByApplication, key.getPushApplicationId(),
+						bucket(key.getId()), key.getId()));
+			}
 		});
 	}
 
@@ -234,10 +336,10 @@ class NoSQLUserDaoImpl extends CassandraBaseDao<User, UserKey> implements AliasD
 		// Delete all aliases by partition key
 		// Future spring-cassandra versions might handle null clustering key.
 		if (key.getAlias() == null) {
-			Delete delete = QueryBuilder.delete().from(super.tableName);
-			delete.where(QueryBuilder.eq(UserKey.FIELD_PUSH_APPLICATION_ID, key.getPushApplicationId()));
-			delete.where(QueryBuilder.eq(UserKey.FIELD_USER_ID, key.getId()));
-			operations.getCqlOperations().execute(delete);
+			BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED);
+			batch.add(bind(deleteUsers, key.getPushApplicationId(), key.getId()));
+			batch.add(bind(deleteByApplication, key.getPushApplicationId(), bucket(key.getId()), key.getId()));
+			operations.getCqlOperations().execute(batch);
 		} else {
 			super.deleteById(key);
 			evict(key.getPushApplicationId(), key.getAlias());
@@ -21,6 +21,8 @@ class OtpCodeDaoImpl extends CassandraBaseDao<OtpCode, OtpCodeKey> implements Ot
 
 	private static InsertOptions writeOptions;
 
+	private final Delete deleteByToken;
+
 	public OtpCodeDaoImpl(@Autowired CassandraOperations operations, @Autowired CassandraConfig configuraion) {
 		super(OtpCode.class, new CassandraRepositoryFactory(operations).getEntityInformation(OtpCode.class), operations,
 				configuraion);
@@ -30,6 +32,10 @@ class OtpCodeDaoImpl extends CassandraBaseDao<OtpCode, OtpCodeKey> implements Ot
 				"ConsistencyLevel Must be QUORUM");
 
 		writeOptions = InsertOptions.builder().consistencyLevel(getConsistencyLevel()).ttl(CODE_TTL).build();
+
+		deleteByToken = QueryBuilder.delete().from(super.tableName);
+		deleteByToken.where(QueryBuilder.eq(OtpCodeKey.FIELD_VARIANT_ID, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(OtpCodeKey.FIELD_TOKEN_ID, QueryBuilder.bindMarker()));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -46,10 +52,6 @@ class OtpCodeDaoImpl extends CassandraBaseDao<OtpCode, OtpCodeKey> implements Ot
 	}
 
 	public void deleteAll(OtpCodeKey id) {
-		Delete delete = QueryBuilder.delete().from(super.tableName);
-		delete.where(QueryBuilder.eq(OtpCodeKey.FIELD_VARIANT_ID, id.getVariantId()));
-		delete.where(QueryBuilder.eq(OtpCodeKey.FIELD_TOKEN_ID, id.getTokenId()));
-
-		operations.getCqlOperations().execute(delete);
+		operations.getCqlOperations().execute(bind(deleteByToken, id.getVariantId(), id.getTokenId()));
 	}
 }
@@ -130,6 +130,17 @@ public class NoSQLAliasDaoTest extends FixedKeyspaceCreatingIntegrationTest {
 		assertTrue(alias.getOther().equals(aliasAttached.getOther()));
 	}
 
+	@Test
+	public void testRebuildApplicationIndex() {
+		UUID pushApplicationId = UUID.randomUUID();
+		createTestUsers(pushApplicationId, TEST_EMAIL);
+
+		// Index is idempotent, users are not duplicated
+		assertTrue(aliasDao.rebuildApplicationIndex() >= 2);
+		assertTrue(aliasDao.findAll(pushApplicationId).size() == 2);
+		assertTrue(aliasDao.findUserIds(pushApplicationId).count() == 2);
+	}
+
 	private void createTestUsers(UUID pushApplicationId, String email) {
 		Alias alias1 = new Alias(pushApplicationId, UUIDs.timeBased(), email);
 		Alias alias2 = new Alias(pushApplicationId, UUIDs.timeBased(), email);
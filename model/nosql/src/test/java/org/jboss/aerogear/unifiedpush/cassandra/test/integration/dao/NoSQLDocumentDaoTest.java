@@ -2,6 +2,8 @@ package org.jboss.aerogear.unifiedpush.cassandra.test.integration.dao;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -121,6 +123,46 @@ public class NoSQLDocumentDaoTest extends FixedKeyspaceCreatingIntegrationTest {
 		Assert.assertTrue(documents.collect(Collectors.toList()).size() == 1);
 	}
 
+	@Test
+	public void testFindForManyUsers() {
+		UUID pushApplicationId = UUID.randomUUID();
+
+		Alias alias1 = new Alias(pushApplicationId, UUIDs.timeBased(), "supprot@aerobase.org");
+		Alias alias2 = new Alias(pushApplicationId, UUIDs.timeBased(), "supprot@aerobase.org");
+		aliasDao.create(alias1);
+		aliasDao.create(alias2);
+
+		documentDao.create(new DocumentContent(
+				new DocumentKey(new DocumentMetadata(pushApplicationId.toString(), "STATUS", alias1)), "{1}", "ID1"));
+		documentDao.create(new DocumentContent(
+				new DocumentKey(new DocumentMetadata(pushApplicationId.toString(), "STATUS", alias1)), "{2}", "ID2"));
+		documentDao.create(new DocumentContent(
+				new DocumentKey(new DocumentMetadata(pushApplicationId.toString(), "STATUS", alias2)), "{3}", "ID1"));
+
+		UUID unknown = UUIDs.timeBased();
+		List<UUID> userIds = Arrays.asList(alias1.getId(), unknown, alias2.getId());
+		DocumentKey key = new DocumentKey(pushApplicationId, "STATUS");
+
+		// Only registered users
+		assertEquals(Arrays.asList(alias1.getId(), alias2.getId()),
+				aliasDao.findExistingUserIds(pushApplicationId, userIds));
+
+		// All documents of each user, grouped in the order of the users
+		List<DocumentContent> all = documentDao.findForUsers(key, userIds, new QueryOptions());
+		assertEquals(Arrays.asList("{2}", "{1}", "{3}"),
+				all.stream().map(DocumentContent::getContent).collect(Collectors.toList()));
+
+		// By document id
+		List<DocumentContent> byId = documentDao.findForUsers(key, userIds, new QueryOptions("ID1"));
+		assertEquals(Arrays.asList("{1}", "{3}"),
+				byId.stream().map(DocumentContent::getContent).collect(Collectors.toList()));
+
+		// Latest document of each alias
+		List<DocumentContent> latest = documentDao.findLatestForAliases(key, Arrays.asList(alias1, alias2), null);
+		assertEquals(Arrays.asList("{2}", "{3}"),
+				latest.stream().map(DocumentContent::getContent).collect(Collectors.toList()));
+	}
+
 	@Test
 	public void testDeleteApplicaitonDocuemnts() {
 		UUID pushApplicationId = UUID.randomUUID();
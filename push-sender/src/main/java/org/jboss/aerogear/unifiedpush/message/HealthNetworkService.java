@@ -22,7 +22,7 @@ import java.util.List;
 import java.util.concurrent.Future;
 
 /**
- * Finds out about the status of the push networks
+ * Finds out about the status of the push networks and of the senders using them
  */
 public interface HealthNetworkService {
     /**
@@ -32,4 +32,16 @@ public interface HealthNetworkService {
      */
     Future<List<HealthDetails>> networkStatus();
 
+    /**
+     * Get the number of device token changes reported by the push networks and not yet applied.
+     * @return the HealthDetails with the pending device token cleanups, always Status.OK
+     */
+    HealthDetails tokenCleanupStatus();
+
+    /**
+     * Get the number of token loaders paused because the dispatch queue is full, and how often loading paused so far.
+     * @return the HealthDetails with the token loading back pressure, always Status.OK
+     */
+    HealthDetails tokenLoadingStatus();
+
 }
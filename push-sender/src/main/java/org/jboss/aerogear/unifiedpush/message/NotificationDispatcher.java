@@ -24,8 +24,10 @@ import javax.inject.Inject;
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.message.retry.NotificationRetryService;
 import org.jboss.aerogear.unifiedpush.message.sender.NotificationSenderCallback;
 import org.jboss.aerogear.unifiedpush.message.sender.PushNotificationSender;
+import org.jboss.aerogear.unifiedpush.message.throttle.FairDispatchScheduler;
 import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
 import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
 import org.slf4j.Logger;
@@ -53,9 +55,17 @@ public class NotificationDispatcher {
 	@Inject
 	private WorkQueueProcessor<MessageHolderWithTokens> messages;
 
+	@Inject
+	private NotificationRetryService retryService;
+
+	@Inject
+	private FairDispatchScheduler scheduler;
+
 	@PostConstruct
 	public void subscribe() {
-		messages.repeat().subscribe(m -> sendMessagesToPushNetwork(m));
+		// batches are sent in fair order across variants, see FairDispatchScheduler
+		scheduler.start(this::sendMessagesToPushNetwork);
+		messages.repeat().subscribe(m -> scheduler.submit(m));
 	}
     /**
      * Receives a {@link UnifiedPushMessage} and list of device tokens that the message should be sent to, selects appropriate sender implementation that
@@ -75,27 +85,31 @@ public class NotificationDispatcher {
     		BeanFactoryAnnotationUtils.qualifiedBeanOfType(
     				context.getAutowireCapableBeanFactory(), PushNotificationSender.class, variant.getType().name())
 			    		.sendPushMessage(variant, deviceTokens, unifiedPushMessage, msg.getPushMessageInformation().getId(),
-			                    new SenderServiceCallback(
-			                            variant,
-			                            deviceTokens.size(),
-			                            msg.getPushMessageInformation()
-			                    )
+			                    new SenderServiceCallback(msg)
 			    		);
         } catch (Throwable e) {
-        	logger.error("Unable to send push notification for %s variant ", variant.getName());
-        	// TODO - implement retry policy
+        	if (NotificationRetryService.isTransient(e)) {
+        		logger.warn("Unable to reach push network for {} variant", variant.getName(), e);
+        		retryService.retry(msg, deviceTokens, String.valueOf(e.getMessage()), -1);
+        	} else {
+        		// e.g. a missing sender or a broken variant, sending again fails the same way
+        		logger.error("Unable to send push notification for {} variant", variant.getName(), e);
+        		new SenderServiceCallback(msg).onError(String.valueOf(e.getMessage()));
+        	}
 		}
     }
 
     private class SenderServiceCallback implements NotificationSenderCallback {
+        private final MessageHolderWithTokens msg;
         private final Variant variant;
         private final int tokenSize;
         private final FlatPushMessageInformation pushMessageInformation;
 
-        public SenderServiceCallback(Variant variant, int tokenSize, FlatPushMessageInformation pushMessageInformation) {
-            this.variant = variant;
-            this.tokenSize = tokenSize;
-            this.pushMessageInformation = pushMessageInformation;
+        public SenderServiceCallback(MessageHolderWithTokens msg) {
+            this.msg = msg;
+            this.variant = msg.getVariant();
+            this.tokenSize = msg.getDeviceTokens().size();
+            this.pushMessageInformation = msg.getPushMessageInformation();
         }
 
         @Override
@@ -108,5 +122,11 @@ public class NotificationDispatcher {
             logger.warn(String.format("Error on '%s' delivery: %s", variant.getType().getTypeName(), reason));
             pushMessageMetricsService.appendError(pushMessageInformation, variant, reason);
         }
+
+        @Override
+        public void onRetriableError(final String reason, final Collection<String> failedTokens, final long retryAfterMillis) {
+            logger.warn(String.format("Transient error on '%s' delivery to %d devices: %s", variant.getType().getTypeName(), failedTokens.size(), reason));
+            retryService.retry(msg, failedTokens, reason, retryAfterMillis);
+        }
     }
 }
@@ -0,0 +1,157 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.message.exception.IntakeFullException;
+import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Accepts requests for sending a {@link UnifiedPushMessage} without waiting for the database.
+ *
+ * The ID of the push message information is generated up front and returned to the sender right away, the messages
+ * are passed to {@link NotificationRouter} by a pool of <tt>aerogear.sender.intake.workers</tt> threads. Besides the
+ * messages being routed, at most <tt>aerogear.sender.intake.capacity</tt> messages wait, either for a worker or for
+ * their record to be committed, further messages are rejected with {@link IntakeFullException}. Room for the record
+ * is reserved before a message is accepted, so a message is also rejected when the push message information writer,
+ * which is shared with other callers, is full.
+ *
+ * Accepted messages are held in memory only: a message whose routing fails, or which is still waiting when the server
+ * stops, is logged and not sent.
+ */
+@Service
+public class NotificationIntake {
+
+    public static final String PROP_CAPACITY = "aerogear.sender.intake.capacity";
+    public static final String PROP_WORKERS = "aerogear.sender.intake.workers";
+
+    private final Logger logger = LoggerFactory.getLogger(NotificationIntake.class);
+
+    @Inject
+    private NotificationRouter notificationRouter;
+    @Inject
+    private IPushMessageMetricsService metricsService;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private ThreadPoolExecutor executor;
+    private int maxInFlight;
+
+    @PostConstruct
+    public void start() {
+        final int workers = config.getProperty(PROP_WORKERS, 4);
+        final int capacity = config.getProperty(PROP_CAPACITY, 1000);
+        maxInFlight = workers + capacity;
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadFactory threadFactory = r -> {
+            final Thread thread = new Thread(r, "notification-intake-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), threadFactory);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("Dropping {} accepted push messages on shutdown", executor.shutdownNow().size());
+        }
+    }
+
+    /**
+     * Queues a request for sending a {@link UnifiedPushMessage}.
+     *
+     * @param pushApplication the push application
+     * @param message the message
+     * @return the ID of the push message information that will be recorded for the message
+     * @throws IntakeFullException if too many messages are waiting to be routed or recorded
+     */
+    public String accept(PushApplication pushApplication, InternalUnifiedPushMessage message) {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            throw new IntakeFullException("Too many push messages are waiting to be recorded");
+        }
+        if (!metricsService.reserveNewRequest()) {
+            inFlight.decrementAndGet();
+            throw new IntakeFullException("Too many push messages are waiting to be recorded");
+        }
+
+        final String pushMessageInformationId = UUID.randomUUID().toString();
+        try {
+            executor.execute(() -> route(pushApplication, message, pushMessageInformationId));
+        } catch (RejectedExecutionException e) {
+            metricsService.releaseNewRequest();
+            inFlight.decrementAndGet();
+            throw new IntakeFullException("Too many push messages are waiting to be routed");
+        }
+        return pushMessageInformationId;
+    }
+
+    /**
+     * @return number of accepted messages waiting for a worker
+     */
+    public int getPendingCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of accepted messages whose record is not committed yet
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    private void route(PushApplication pushApplication, InternalUnifiedPushMessage message, String pushMessageInformationId) {
+        try {
+            notificationRouter.submit(pushApplication, message, pushMessageInformationId).whenComplete((information, e) -> {
+                inFlight.decrementAndGet();
+                if (e != null) {
+                    logRoutingFailure(pushApplication, pushMessageInformationId, e);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            logRoutingFailure(pushApplication, pushMessageInformationId, e);
+        }
+    }
+
+    private void logRoutingFailure(PushApplication pushApplication, String pushMessageInformationId, Throwable e) {
+        logger.error("Unable to submit push message {} of push application {}", pushMessageInformationId,
+                pushApplication.getPushApplicationID(), e);
+    }
+}
@@ -20,13 +20,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.exception.IntakeFullException;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
 import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
 import org.jboss.aerogear.unifiedpush.service.GenericVariantService;
@@ -35,7 +39,8 @@ import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import reactor.core.publisher.TopicProcessor;
 
@@ -45,10 +50,15 @@ import reactor.core.publisher.TopicProcessor;
  * Router splits messages to specific variant types (push network type) so that they can be processed separately,
  * giving attention to limitations and requirements of specific push networks.
  *
- * {@link NotificationRouter} receives a request for sending a {@link UnifiedPushMessage} and queues one message per variant type, both in transaction.
- * The transactional behavior makes sure the request for sending notification is recorded and then asynchronously processed.
+ * {@link NotificationRouter} receives a request for sending a {@link UnifiedPushMessage} and queues one message per variant type.
+ * The messages are queued only once the request for sending notification is recorded, and then asynchronously processed.
  *
  * The further processing of the push message happens in {@link TokenLoader}.
+ *
+ * Requests of the sender API do not wait for the router, they are handed over by {@link NotificationIntake}.
+ *
+ * The router is not transactional: only the lookup of the variants runs in a short read-only transaction, so that no
+ * pooled connection is held while the record is committed by the writer on a connection of its own.
  */
 @Service
 public class NotificationRouter {
@@ -63,20 +73,89 @@ public class NotificationRouter {
     @Inject
     private TopicProcessor<MessageHolderWithVariants> dispatchVariantMessageEvent;
 
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
     /**
-	 * Receives a request for sending a {@link UnifiedPushMessage} and queues
-	 * one message per variant type, both in one transaction.
+	 * Receives a request for sending a {@link UnifiedPushMessage}, records it
+	 * and queues one message per variant type.
      *
 	 * Once this method returns, message is recorded and will be eventually
 	 * delivered in the future.
+     *
+	 * The record is committed in a transaction of its own, see
+	 * {@link IPushMessageMetricsService#storeNewRequestAsync(String, String, String, String, String)}.
      *
 	 * @param pushApplication
 	 *            the push application
 	 * @param message
 	 *            the message
+	 * @throws IntakeFullException
+	 *             if too many messages are waiting to be recorded
      */
-    @Transactional
     public void submit(PushApplication pushApplication, InternalUnifiedPushMessage message) {
+        route(pushApplication, message, null, false).join();
+    }
+
+    /**
+	 * Same as {@link #submit(PushApplication, InternalUnifiedPushMessage)},
+	 * recording the message under an ID generated before, without waiting
+	 * for the record to be committed.
+     *
+	 * The record is inserted together with the records of other messages,
+	 * the variant messages are queued once it is committed. Room for the
+	 * record must have been reserved with
+	 * {@link IPushMessageMetricsService#reserveNewRequest()}, it is given back
+	 * if the message cannot be recorded.
+     *
+	 * @param pushApplication
+	 *            the push application
+	 * @param message
+	 *            the message
+	 * @param pushMessageInformationId
+	 *            the ID of the recorded message
+	 * @return future completed once the message is recorded and queued
+     */
+    public CompletableFuture<FlatPushMessageInformation> submit(PushApplication pushApplication, InternalUnifiedPushMessage message, String pushMessageInformationId) {
+        return route(pushApplication, message, pushMessageInformationId, true);
+    }
+
+    private CompletableFuture<FlatPushMessageInformation> route(PushApplication pushApplication, InternalUnifiedPushMessage message, String pushMessageInformationId, boolean reserved) {
+        final CompletableFuture<FlatPushMessageInformation> recorded;
+        final VariantMap variants;
+        try {
+            // the transaction only covers the lookup, the record is committed by the writer
+            variants = readOnlyTransaction.execute(status -> findVariants(pushApplication, message));
+            recorded = record(pushApplication, message, pushMessageInformationId, reserved);
+        } catch (RuntimeException e) {
+            if (reserved) {
+                metricsService.releaseNewRequest();
+            }
+            throw e;
+        }
+
+        return recorded.thenApply(pushMessageInformation -> {
+            // we split the variants per type since each type may have its own
+            // configuration (e.g. batch size)
+            variants.forEach((variantType, variant) -> {
+                if (variant != null && !variant.isEmpty()){
+                    logger.info(String.format("Internal dispatching of push message for one %s variant (by %s)", variantType.getTypeName(), message.getClientIdentifier()));
+                    dispatchVariantMessageEvent.onNext(new MessageHolderWithVariants(pushMessageInformation, message, variantType, variant));
+                }
+            });
+            return pushMessageInformation;
+        });
+    }
+
+    private VariantMap findVariants(PushApplication pushApplication, InternalUnifiedPushMessage message) {
         logger.debug("Processing send request with '{}' payload", message.getMessage());
 
         // collections for all the different variants:
@@ -85,23 +164,19 @@ public class NotificationRouter {
         final List<String> variantIDs = message.getCriteria().getVariants();
 
         // if the criteria payload did specify the "variants" field,
-        // we look up each of those mentioned variants, by their "variantID":
+        // we look up all of those mentioned variants, by their "variantID",
+        // unknown variantIDs are skipped:
         if (variantIDs != null) {
-
-            variantIDs.forEach(variantID -> {
-                Variant variant = genericVariantService.findByVariantID(variantID);
-
-                // does the variant exist ?
-                if (variant != null) {
-                    variants.add(variant);
-                }
-            });
+            variants.addAll(genericVariantService.findByVariantIDs(variantIDs));
         } else {
             // No specific variants have been requested,
             // we get all the variants, from the given PushApplicationEntity:
             variants.addAll(pushApplication.getVariants());
         }
+        return variants;
+    }
 
+    private CompletableFuture<FlatPushMessageInformation> record(PushApplication pushApplication, InternalUnifiedPushMessage message, String pushMessageInformationId, boolean reserved) {
         // TODO: Not sure the transformation should be done here...
 		// There are likely better places to check if the metadata is way to
 		// long
@@ -110,22 +185,24 @@ public class NotificationRouter {
             jsonMessageContent = message.toMinimizedJsonString();
         }
 
-        final FlatPushMessageInformation pushMessageInformation =
-                metricsService.storeNewRequestFrom(
-                        pushApplication.getPushApplicationID(),
-                        jsonMessageContent,
-                        message.getIpAddress(),
-                        message.getClientIdentifier()
-                );
-
-		// we split the variants per type since each type may have its own
-		// configuration (e.g. batch size)
-        variants.forEach((variantType, variant) -> {
-        	if (variant != null && !variant.isEmpty()){
-        		logger.info(String.format("Internal dispatching of push message for one %s variant (by %s)", variantType.getTypeName(), message.getClientIdentifier()));
-        		dispatchVariantMessageEvent.onNext(new MessageHolderWithVariants(pushMessageInformation, message, variantType, variant));
-        	}
-        });
+        if (reserved) {
+            return metricsService.storeReservedRequestAsync(
+                    pushMessageInformationId,
+                    pushApplication.getPushApplicationID(),
+                    jsonMessageContent,
+                    message.getIpAddress(),
+                    message.getClientIdentifier());
+        }
+        try {
+            return metricsService.storeNewRequestAsync(
+                    pushMessageInformationId,
+                    pushApplication.getPushApplicationID(),
+                    jsonMessageContent,
+                    message.getIpAddress(),
+                    message.getClientIdentifier());
+        } catch (RejectedExecutionException e) {
+            throw new IntakeFullException(e.getMessage());
+        }
     }
 
 	/**
@@ -20,14 +20,23 @@ import reactor.core.publisher.WorkQueueProcessor;
 public class SenderConfig {
 	public static final int BUFFER_SIZE = 256 * 256;
 
+	/**
+	 * Token batches are published by the token loader and by the notification retry scheduler, so the processor is
+	 * shared between producer threads.
+	 */
 	@Bean
 	public WorkQueueProcessor<MessageHolderWithTokens> getTokensProcessor() {
-		return WorkQueueProcessor.<MessageHolderWithTokens>builder().bufferSize(BUFFER_SIZE).build();
+		return WorkQueueProcessor.<MessageHolderWithTokens>builder().bufferSize(BUFFER_SIZE).share(true).build();
 	}
 
+	/**
+	 * Token loading requests are published by the notification router, by the token loader for the next transaction
+	 * and by the token batch recovery for deferred and recovered requests, so the processor is shared between producer
+	 * threads.
+	 */
 	@Bean
 	public TopicProcessor<MessageHolderWithVariants> getBatchProcessor() {
-		return TopicProcessor.<MessageHolderWithVariants>builder().bufferSize(BUFFER_SIZE).build();
+		return TopicProcessor.<MessageHolderWithVariants>builder().bufferSize(BUFFER_SIZE).share(true).build();
 	}
 
 	@Bean
@@ -0,0 +1,76 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.turo.pushy.apns.ApnsClient;
+
+/**
+ * Group of APNs connections of one iOS variant, together with the default topic parsed from the variant certificate.
+ *
+ * Every {@link ApnsClient} is a single HTTP/2 connection, so spreading notifications over several clients raises the
+ * throughput of a variant beyond the stream limit of one connection.
+ */
+public class ApnsClientPool {
+
+    private final List<ApnsClient> clients;
+    private final String defaultTopic;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ApnsClientPool(List<ApnsClient> clients, String defaultTopic) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("pool needs at least one client");
+        }
+        this.clients = Collections.unmodifiableList(new ArrayList<>(clients));
+        this.defaultTopic = defaultTopic;
+    }
+
+    /**
+     * Picks the next connected client in round-robin fashion.
+     *
+     * @return connected client or null if none of the clients is connected
+     */
+    public ApnsClient next() {
+        final int size = clients.size();
+        for (int i = 0; i < size; i++) {
+            final ApnsClient client = clients.get(Math.floorMod(next.getAndIncrement(), size));
+            if (client.isConnected()) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if at least one of the clients is connected
+     */
+    public boolean isConnected() {
+        return clients.stream().anyMatch(ApnsClient::isConnected);
+    }
+
+    public List<ApnsClient> getClients() {
+        return clients;
+    }
+
+    public String getDefaultTopic() {
+        return defaultTopic;
+    }
+}
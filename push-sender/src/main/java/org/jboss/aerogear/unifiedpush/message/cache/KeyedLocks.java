@@ -0,0 +1,66 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Locks per cache key, so that only callers of the very same key wait for each other. The lock of a key is dropped
+ * once no caller holds or waits for it.
+ */
+final class KeyedLocks {
+
+    private final ConcurrentMap<String, KeyLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the action while holding the lock of the key.
+     *
+     * @param key the cache key
+     * @param action the action, e.g. constructing the cached service
+     * @param <T> result type
+     * @return the result of the action
+     */
+    <T> T withLock(String key, Supplier<T> action) {
+        final KeyLock lock = locks.compute(key, (k, existing) -> {
+            final KeyLock current = existing != null ? existing : new KeyLock();
+            current.users++;
+            return current;
+        });
+        try {
+            synchronized (lock) {
+                return action.get();
+            }
+        } finally {
+            locks.computeIfPresent(key, (k, current) -> --current.users == 0 ? null : current);
+        }
+    }
+
+    /**
+     * @return true if no caller holds or waits for a lock
+     */
+    boolean isEmpty() {
+        return locks.isEmpty();
+    }
+
+    private static final class KeyLock {
+
+        // only changed within ConcurrentMap.compute
+        private int users;
+    }
+}
@@ -39,6 +39,12 @@ import net.jodah.expiringmap.ExpirationPolicy;
 import net.jodah.expiringmap.ExpiringMap;
 import reactor.core.publisher.WorkQueueProcessor;
 
+/**
+ * Caches {@link ApnsClientPool}s per iOS variant (and its production / development mode).
+ *
+ * Pools are constructed under a per-variant lock, so establishing connections for one variant never blocks
+ * senders of other variants.
+ */
 @Service
 public class SimpleApnsClientCache {
 
@@ -54,52 +60,66 @@ public class SimpleApnsClientCache {
 		}
     }
 
-    final ConcurrentMap<String, ApnsClient> apnsClientExpiringMap;
+    final KeyedLocks constructionLocks = new KeyedLocks();
+
+    final ConcurrentMap<String, ApnsClientPool> apnsClientExpiringMap;
     {
         apnsClientExpiringMap = ExpiringMap.builder()
 
                 // TODO: would be nice if it could be configured via System property:
                 .expiration(12, TimeUnit.HOURS)
                 .expirationPolicy(ExpirationPolicy.ACCESSED)
-                .asyncExpirationListener((ExpirationListener<String, ApnsClient>) (variantID, apnsClient) -> {
+                .asyncExpirationListener((ExpirationListener<String, ApnsClientPool>) (variantID, pool) -> {
 
-                    if (apnsClient.isConnected()) {
-                        logger.info("APNs connection for iOS Variant ({}) was inactive last 12 hours, disconnecting...", variantID);
+                    for (ApnsClient apnsClient : pool.getClients()) {
+                        if (apnsClient.isConnected()) {
+                            logger.info("APNs connection for iOS Variant ({}) was inactive last 12 hours, disconnecting...", variantID);
 
-                        final Future<Void> disconnectFuture = apnsClient.disconnect();
+                            final Future<Void> disconnectFuture = apnsClient.disconnect();
 
-                        disconnectFuture.addListener(future -> {
+                            disconnectFuture.addListener(future -> {
 
-                            if (future.isSuccess()) {
-                                logger.debug("Disconnected from APNS due to inactive connection for iOS Variant ({})", variantID);
-                            } else {
-                                final Throwable t = future.cause();
-                                logger.warn(t.getMessage(), t);
-                            }
-                        });
+                                if (future.isSuccess()) {
+                                    logger.debug("Disconnected from APNS due to inactive connection for iOS Variant ({})", variantID);
+                                } else {
+                                    final Throwable t = future.cause();
+                                    logger.warn(t.getMessage(), t);
+                                }
+                            });
+                        }
                     }
                 }).build();
     }
 
-    public ApnsClient getApnsClientForVariant(final iOSVariant iOSVariant, final ServiceConstructor<ApnsClient> constructor) {
+    public ApnsClientPool getApnsClientPoolForVariant(final iOSVariant iOSVariant, final ServiceConstructor<ApnsClientPool> constructor) {
         final String connectionKey = extractConnectionKey(iOSVariant);
-        ApnsClient client = apnsClientExpiringMap.get(connectionKey);
+        ApnsClientPool pool = apnsClientExpiringMap.get(connectionKey);
 
-        if (client == null) {
-            logger.debug("no cached connection for {}, establishing it", connectionKey);
-            synchronized (apnsClientExpiringMap) {
-                client = constructor.construct();
+        if (pool != null) {
+            logger.debug("reusing cached connections for {}", connectionKey);
+            return pool; // we had it already
+        }
+
+        // only senders of the very same variant wait for each other
+        return constructionLocks.withLock(connectionKey, () -> {
+            final ApnsClientPool cached = apnsClientExpiringMap.get(connectionKey);
+            if (cached != null) {
+                return cached; // established meanwhile by another sender
+            }
 
-                if (client.isConnected()) {
-                    putApnsClientForVariantID(connectionKey, client);
-                }
+            logger.debug("no cached connections for {}, establishing them", connectionKey);
+            final ApnsClientPool constructed = constructor.construct();
 
-                return client; // return the newly connected client
+            if (constructed.isConnected()) {
+                putApnsClientPoolForVariantID(connectionKey, constructed);
+            } else {
+                // clients that failed to connect would keep reconnecting in the background
+                logger.debug("unable to connect to APNs for {}, shutting down the connections", connectionKey);
+                constructed.getClients().forEach(client -> client.disconnect().addListener(new ApnsDisconnectFutureListener()));
             }
-        } else {
-            logger.debug("reusing cached connection for {}", connectionKey);
-            return client; // we had it already
-        }
+
+            return constructed; // the caller checks whether the pool is connected
+        });
     }
 
     /**
@@ -109,11 +129,11 @@ public class SimpleApnsClientCache {
     public void disconnectOnChange(final iOSVariantUpdateEvent iOSVariantUpdateEvent) {
         final iOSVariant variant = iOSVariantUpdateEvent.getiOSVariant();
         final String connectionKey = extractConnectionKey(variant);
-        final ApnsClient client = apnsClientExpiringMap.remove(connectionKey);
+        final ApnsClientPool pool = apnsClientExpiringMap.remove(connectionKey);
         logger.debug("Removed client from cache for {}", variant.getVariantID());
         try{
-	        if (client != null) {
-	            tearDownApnsHttp2Connection(client);
+	        if (pool != null) {
+	            tearDownApnsHttp2Connections(pool);
 	        }
         }catch (Throwable e) {
         	logger.error("Error while disconnecting ios variant", e);
@@ -128,11 +148,11 @@ public class SimpleApnsClientCache {
         return  sb.toString();
     }
 
-    private void putApnsClientForVariantID(final String variantID, final ApnsClient apnsClient) {
-        final ApnsClient client = apnsClientExpiringMap.putIfAbsent(variantID, apnsClient);
-        if (client != null) {
+    private void putApnsClientPoolForVariantID(final String variantID, final ApnsClientPool pool) {
+        final ApnsClientPool existing = apnsClientExpiringMap.putIfAbsent(variantID, pool);
+        if (existing != null) {
             logger.warn("duplicate connection in pool, immediately shutting down the new connection");
-            tearDownApnsHttp2Connection(apnsClient);  // we do not want this new connection
+            tearDownApnsHttp2Connections(pool);  // we do not want this new connection
         }
     }
 
@@ -141,13 +161,15 @@ public class SimpleApnsClientCache {
 
         logger.debug("remove all connections before server shutdown");
 
-        for (final Map.Entry<String, ApnsClient> cachedConnection : apnsClientExpiringMap.entrySet()) {
-
-            final ApnsClient connection = cachedConnection.getValue();
-            tearDownApnsHttp2Connection(connection);
+        for (final Map.Entry<String, ApnsClientPool> cachedConnection : apnsClientExpiringMap.entrySet()) {
+            tearDownApnsHttp2Connections(cachedConnection.getValue());
         }
     }
 
+    private void tearDownApnsHttp2Connections(final ApnsClientPool pool) {
+        pool.getClients().forEach(this::tearDownApnsHttp2Connection);
+    }
+
     private void tearDownApnsHttp2Connection(final ApnsClient client) {
         if (client.isConnected()) {
             logger.trace("Tearing down connection to APNs for the given client");
@@ -167,4 +189,4 @@ public class SimpleApnsClientCache {
 
         }
     }
-}
\ No newline at end of file
+}
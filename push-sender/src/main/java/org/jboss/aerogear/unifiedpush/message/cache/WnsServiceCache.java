@@ -0,0 +1,104 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.api.WindowsWNSVariant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import ar.com.fernandospr.wns.WnsService;
+import net.jodah.expiringmap.ExpirationPolicy;
+import net.jodah.expiringmap.ExpiringMap;
+
+/**
+ * Caches {@link WnsService}s per Windows variant and credentials (SID and client secret).
+ *
+ * A {@link WnsService} keeps the OAuth access token it obtained from the Windows Live service, so reusing it saves
+ * the client credential flow on every batch. WNS access tokens are valid for 24 hours, cached services are therefore
+ * dropped 23 hours after their creation and the next batch authenticates again. Changed credentials lead to a new
+ * cache key, so the service of the old credentials is never used again.
+ */
+@Service
+public class WnsServiceCache {
+
+    // WNS access tokens expire after 24 hours
+    static final long SERVICE_LIFETIME_HOURS = 23;
+
+    private final Logger logger = LoggerFactory.getLogger(WnsServiceCache.class);
+
+    final KeyedLocks constructionLocks = new KeyedLocks();
+
+    final ConcurrentMap<String, WnsService> wnsServiceExpiringMap = ExpiringMap.builder()
+            .expiration(SERVICE_LIFETIME_HOURS, TimeUnit.HOURS)
+            .expirationPolicy(ExpirationPolicy.CREATED)
+            .build();
+
+    /**
+     * Returns the cached service of the variant, or constructs and caches a new one.
+     *
+     * @param variant the Windows variant
+     * @param constructor creates a service for the current credentials of the variant
+     * @return the service
+     */
+    public WnsService getWnsServiceForVariant(final WindowsWNSVariant variant, final ServiceConstructor<WnsService> constructor) {
+        final String serviceKey = extractServiceKey(variant);
+        WnsService service = wnsServiceExpiringMap.get(serviceKey);
+
+        if (service != null) {
+            logger.debug("reusing cached WNS service for {}", variant.getVariantID());
+            return service;
+        }
+
+        // only senders of the very same variant wait for each other
+        return constructionLocks.withLock(variant.getVariantID(), () -> {
+            final WnsService cached = wnsServiceExpiringMap.get(serviceKey);
+            if (cached != null) {
+                return cached; // created meanwhile by another sender
+            }
+
+            logger.debug("no cached WNS service for {}, creating one", variant.getVariantID());
+            final WnsService constructed = constructor.construct();
+            if (constructed != null) {
+                wnsServiceExpiringMap.put(serviceKey, constructed);
+            }
+            return constructed;
+        });
+    }
+
+    /**
+     * Drops the cached service of the variant, e.g. once WNS rejected its access token.
+     *
+     * @param variant the Windows variant
+     */
+    public void invalidate(final WindowsWNSVariant variant) {
+        if (wnsServiceExpiringMap.remove(extractServiceKey(variant)) != null) {
+            logger.debug("Removed WNS service from cache for {}", variant.getVariantID());
+        }
+    }
+
+    private String extractServiceKey(final WindowsWNSVariant variant) {
+        return new StringBuilder()
+                .append(variant.getVariantID())
+                .append(':').append(variant.getSid())
+                .append(':').append(variant.getClientSecret())
+                .toString();
+    }
+}
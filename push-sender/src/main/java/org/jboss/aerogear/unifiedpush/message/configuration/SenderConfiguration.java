@@ -33,6 +33,7 @@ public class SenderConfiguration {
 
     private int batchesToLoad;
     private int batchSize;
+    private int tokensPerSecond;
 
     public SenderConfiguration() {
     }
@@ -44,8 +45,20 @@ public class SenderConfiguration {
      * @param batchSize specifies how many devices will be loaded and delivered in one batch (see {@link #batchSize()}
      */
     public SenderConfiguration(int batchesToLoad, int batchSize) {
+        this(batchesToLoad, batchSize, 0);
+    }
+
+    /**
+     * Creates a new configuration with the configuration values provided
+     *
+     * @param batchesToLoad specifies how many batches should be loaded in one transaction (see {@link #batchesToLoad()}
+     * @param batchSize specifies how many devices will be loaded and delivered in one batch (see {@link #batchSize()}
+     * @param tokensPerSecond specifies how many devices of one variant are delivered per second (see {@link #tokensPerSecond()}
+     */
+    public SenderConfiguration(int batchesToLoad, int batchSize, int tokensPerSecond) {
         this.batchesToLoad = batchesToLoad;
         this.batchSize = batchSize;
+        this.tokensPerSecond = tokensPerSecond;
     }
 
     /**
@@ -87,6 +100,22 @@ public class SenderConfiguration {
         this.batchSize = batchSize;
     }
 
+    /**
+     * Specifies how many device tokens of a single variant are submitted to the Push Network per second.
+     *
+     * Batches of a variant exceeding its rate are held back, so that one large send does not delay the messages of
+     * other variants. A value of 0 disables the limit.
+     *
+     * @return the number of device tokens per second and variant, or 0 if unlimited
+     */
+    public int tokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    void setTokensPerSecond(int tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
     /**
      * This is a derived property, computed as a product of {@link #batchesToLoad()} and {@link #batchSize()}.
      *
@@ -33,7 +33,8 @@ import org.springframework.context.annotation.Configuration;
  * Configuration can be changed by overriding system properties, e.g. via as VM args.
  *
  * Example: In order to change the configuration of {@link SenderConfiguration#batchSize()} for APNs (iOS) service,
- * one can provide following system property: <tt>-Daerogear.ios.batchSize=12000</tt>.
+ * one can provide following system property: <tt>-Daerogear.ios.batchSize=12000</tt>. Likewise
+ * <tt>-Daerogear.ios.tokensPerSecond=5000</tt> limits every iOS variant to 5000 devices per second.
  *
  * The name of the network (<tt>aerogear.&lt;network&gt;.&lt;property&gt;</tt>) is specified by {@link VariantType#getTypeName()}.
  *
@@ -82,7 +83,8 @@ public class SenderConfigurationProvider {
     private SenderConfiguration loadConfigurationFor(VariantType type, SenderConfiguration defaultConfiguration) {
         return validateAndSanitizeConfiguration(type, new SenderConfiguration(
                 getProperty(type, ConfigurationProperty.batchesToLoad, defaultConfiguration.batchesToLoad(), Integer.class),
-                getProperty(type, ConfigurationProperty.batchSize, defaultConfiguration.batchSize(), Integer.class)
+                getProperty(type, ConfigurationProperty.batchSize, defaultConfiguration.batchSize(), Integer.class),
+                getProperty(type, ConfigurationProperty.tokensPerSecond, defaultConfiguration.tokensPerSecond(), Integer.class)
             ));
     }
 
@@ -102,6 +104,12 @@ public class SenderConfigurationProvider {
             default:
                 break;
         }
+        if (configuration.tokensPerSecond() < 0) {
+            logger.warn(String
+                    .format("Sender configuration -D%s=%s is invalid: the rate must not be negative, disabling the limit",
+                            getSystemPropertyName(type, ConfigurationProperty.tokensPerSecond), configuration.tokensPerSecond()));
+            configuration.setTokensPerSecond(0);
+        }
         return configuration;
     }
 
@@ -127,6 +135,7 @@ public class SenderConfigurationProvider {
      */
     private enum ConfigurationProperty {
         batchesToLoad,
-		batchSize
+		batchSize,
+		tokensPerSecond
 	}
 }
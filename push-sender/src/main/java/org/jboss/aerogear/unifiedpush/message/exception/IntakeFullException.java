@@ -0,0 +1,32 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.exception;
+
+import org.jboss.aerogear.unifiedpush.message.NotificationIntake;
+
+/**
+ * Thrown by {@link NotificationIntake} when it cannot accept more messages. Nothing was recorded for the rejected
+ * message, so it is safe to send it again later.
+ */
+public class IntakeFullException extends RuntimeException {
+
+    private static final long serialVersionUID = -6253120587396374551L;
+
+    public IntakeFullException(String message) {
+        super(message);
+    }
+}
@@ -35,8 +35,13 @@ public class MessageHolderWithTokens extends AbstractMessageHolder {
     private int serialId;
     private Variant variant;
     private Collection<String> deviceTokens;
+    private int attempt;
 
     public MessageHolderWithTokens(FlatPushMessageInformation pushMessageInformation, UnifiedPushMessage unifiedPushMessage, Variant variant, Collection<String> deviceTokens, int serialId) {
+        this(pushMessageInformation, unifiedPushMessage, variant, deviceTokens, serialId, 1);
+    }
+
+    public MessageHolderWithTokens(FlatPushMessageInformation pushMessageInformation, UnifiedPushMessage unifiedPushMessage, Variant variant, Collection<String> deviceTokens, int serialId, int attempt) {
         super(pushMessageInformation, unifiedPushMessage);
         if (!(deviceTokens instanceof Serializable)) {
             throw new IllegalArgumentException("deviceTokens must be a serializable collection");
@@ -44,6 +49,7 @@ public class MessageHolderWithTokens extends AbstractMessageHolder {
         this.variant = variant;
         this.deviceTokens = deviceTokens;
         this.serialId = serialId;
+        this.attempt = attempt;
     }
 
     public Variant getVariant() {
@@ -57,4 +63,11 @@ public class MessageHolderWithTokens extends AbstractMessageHolder {
     public int getSerialId() {
         return serialId;
     }
+
+    /**
+     * @return number of this delivery of the tokens, starting with 1; higher for retries of failed tokens
+     */
+    public int getAttempt() {
+        return attempt;
+    }
 }
@@ -0,0 +1,31 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+
+/**
+ * Receives the tokens whose delivery still failed after the last attempt allowed by the {@link RetryPolicy}.
+ */
+public interface DeadLetterSink {
+
+	/**
+	 * @param message the undelivered message, holding only the tokens that failed
+	 * @param reason error of the last delivery
+	 */
+	void deadLetter(MessageHolderWithTokens message, String reason);
+}
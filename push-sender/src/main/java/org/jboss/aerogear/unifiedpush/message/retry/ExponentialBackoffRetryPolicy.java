@@ -0,0 +1,55 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Capped exponential backoff with jitter. The delay of an attempt is picked randomly from the upper half of its
+ * exponential backoff, so that batches failing together do not hit the push network together again. A delay requested
+ * by the push network is always honoured.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+	private final int maxAttempts;
+	private final long initialBackoff;
+	private final long maxBackoff;
+
+	/**
+	 * @param maxAttempts maximum number of deliveries, including the first one
+	 * @param initialBackoff backoff after the first failed delivery in milliseconds
+	 * @param maxBackoff upper bound of the backoff in milliseconds
+	 */
+	public ExponentialBackoffRetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff) {
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	@Override
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	@Override
+	public long getDelay(int attempt, long retryAfterMillis) {
+		final int shift = Math.min(Math.max(attempt - 1, 0), 30);
+		final long backoff = Math.min(initialBackoff << shift, maxBackoff);
+		final long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		return Math.max(jittered, retryAfterMillis);
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Records undeliverable tokens as an error of their push message, so that they show up in the push metrics.
+ */
+@Service
+public class MetricsDeadLetterSink implements DeadLetterSink {
+
+	private final Logger logger = LoggerFactory.getLogger(MetricsDeadLetterSink.class);
+
+	@Inject
+	private IPushMessageMetricsService pushMessageMetricsService;
+
+	@Override
+	public void deadLetter(MessageHolderWithTokens message, String reason) {
+		final String error = String.format("Giving up delivery to %d devices after %d attempts: %s",
+				message.getDeviceTokens().size(), message.getAttempt(), reason);
+
+		logger.error("{} ({} variant {})", error, message.getVariant().getType().getTypeName(),
+				message.getVariant().getVariantID());
+		pushMessageMetricsService.appendError(message.getPushMessageInformation(), message.getVariant(), error);
+	}
+}
@@ -0,0 +1,197 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.NotificationDispatcher;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.message.sender.adm.AdmResponseException;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.FCMResponseException;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import reactor.core.publisher.WorkQueueProcessor;
+
+/**
+ * Sends tokens again that failed with a transient push network error, e.g. an overloaded or throttling push network.
+ *
+ * Only the failed tokens are put on a delay queue and dispatched again through {@link NotificationDispatcher} once
+ * their delay, computed by the {@link RetryPolicy} of the variant type, expired. Tokens which failed on the last
+ * attempt are handed to the {@link DeadLetterSink}.
+ *
+ * Every variant type has its own policy, configured by <tt>aerogear.sender.retry.&lt;type&gt;.max_attempts</tt>,
+ * <tt>aerogear.sender.retry.&lt;type&gt;.backoff.initial_ms</tt> and <tt>aerogear.sender.retry.&lt;type&gt;.backoff.max_ms</tt>
+ * (type as in {@link VariantType#getTypeName()}), falling back to the same properties without type. Retries are not
+ * persisted, pending retries are lost on shutdown.
+ */
+@Service
+public class NotificationRetryService {
+
+	public static final String PROP_PREFIX = "aerogear.sender.retry.";
+	public static final String PROP_MAX_ATTEMPTS = "max_attempts";
+	public static final String PROP_INITIAL_BACKOFF = "backoff.initial_ms";
+	public static final String PROP_MAX_BACKOFF = "backoff.max_ms";
+
+	private final Logger logger = LoggerFactory.getLogger(NotificationRetryService.class);
+
+	@Inject
+	private WorkQueueProcessor<MessageHolderWithTokens> messages;
+
+	@Inject
+	private DeadLetterSink deadLetterSink;
+
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private final Map<VariantType, RetryPolicy> policies = new EnumMap<>(VariantType.class);
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	public void start() {
+		final int maxAttempts = config.getProperty(PROP_PREFIX + PROP_MAX_ATTEMPTS, 3);
+		final int initialBackoff = config.getProperty(PROP_PREFIX + PROP_INITIAL_BACKOFF, 1000);
+		final int maxBackoff = config.getProperty(PROP_PREFIX + PROP_MAX_BACKOFF, 60000);
+
+		for (VariantType type : VariantType.values()) {
+			final String prefix = PROP_PREFIX + type.getTypeName() + '.';
+			policies.put(type, new ExponentialBackoffRetryPolicy(
+					config.getProperty(prefix + PROP_MAX_ATTEMPTS, maxAttempts),
+					config.getProperty(prefix + PROP_INITIAL_BACKOFF, initialBackoff),
+					config.getProperty(prefix + PROP_MAX_BACKOFF, maxBackoff)));
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "notification-retry");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void stop() {
+		final int dropped = scheduler.shutdownNow().size();
+		if (dropped > 0) {
+			logger.warn("Dropping {} pending notification retries on shutdown", dropped);
+		}
+	}
+
+	/**
+	 * Schedules another delivery of the failed tokens of a message, or hands them to the {@link DeadLetterSink} if the
+	 * message was delivered for the last time.
+	 *
+	 * @param msg the message whose delivery failed
+	 * @param failedTokens the tokens to send again, a subset of the tokens of the message
+	 * @param reason the error reported by the push network
+	 * @param retryAfterMillis delay requested by the push network, or -1 if there is none
+	 */
+	public void retry(MessageHolderWithTokens msg, Collection<String> failedTokens, String reason, long retryAfterMillis) {
+		if (failedTokens.isEmpty()) {
+			return;
+		}
+
+		final MessageHolderWithTokens failed = new MessageHolderWithTokens(msg.getPushMessageInformation(),
+				msg.getUnifiedPushMessage(), msg.getVariant(), new ArrayList<>(failedTokens), msg.getSerialId(),
+				msg.getAttempt());
+		final RetryPolicy policy = getPolicy(msg.getVariant().getType());
+
+		if (msg.getAttempt() >= policy.getMaxAttempts()) {
+			deadLetterSink.deadLetter(failed, reason);
+			return;
+		}
+
+		final MessageHolderWithTokens next = new MessageHolderWithTokens(msg.getPushMessageInformation(),
+				msg.getUnifiedPushMessage(), msg.getVariant(), failed.getDeviceTokens(), msg.getSerialId(),
+				msg.getAttempt() + 1);
+		final long delay = policy.getDelay(msg.getAttempt(), retryAfterMillis);
+
+		logger.info("Retrying delivery of batch #{} to {} devices of variant {} in {} ms (attempt {} of {}): {}",
+				msg.getSerialId(), failedTokens.size(), msg.getVariant().getVariantID(), delay, next.getAttempt(),
+				policy.getMaxAttempts(), reason);
+
+		pending.incrementAndGet();
+		scheduler.schedule(() -> redeliver(next, reason), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Tells whether a failure of a sender is transient, i.e. caused by an I/O error talking to the push network. Other
+	 * failures, e.g. programming or configuration errors, fail again on every attempt and are not retried. Responses of
+	 * ADM and FCM are reported as I/O errors as well, only those which ask to slow down or report that the push
+	 * network is unavailable are transient.
+	 *
+	 * @param e the failure
+	 * @return true if sending again may succeed
+	 */
+	public static boolean isTransient(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof AdmResponseException) {
+				final int status = ((AdmResponseException) cause).getStatus();
+				return status == 429 || status >= 500;
+			}
+			if (cause instanceof FCMResponseException) {
+				return ((FCMResponseException) cause).getStatus() >= 500;
+			}
+			if (cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param type the variant type
+	 * @return the retry policy of the variant type
+	 */
+	public RetryPolicy getPolicy(VariantType type) {
+		return policies.get(type);
+	}
+
+	/**
+	 * @return number of token batches waiting for their next delivery
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	private void redeliver(MessageHolderWithTokens msg, String reason) {
+		pending.decrementAndGet();
+		try {
+			messages.onNext(msg);
+		} catch (RuntimeException e) {
+			logger.error("Unable to queue retry of batch #{} for variant {}", msg.getSerialId(),
+					msg.getVariant().getVariantID(), e);
+			deadLetterSink.deadLetter(msg, reason);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+/**
+ * Decides how often and when tokens that failed with a transient push network error are sent again.
+ */
+public interface RetryPolicy {
+
+	/**
+	 * @return maximum number of deliveries of a token batch, including the first one
+	 */
+	int getMaxAttempts();
+
+	/**
+	 * Computes the delay before the next delivery.
+	 *
+	 * @param attempt number of the delivery that failed, starting with 1
+	 * @param retryAfterMillis delay requested by the push network (e.g. <tt>Retry-After</tt>), or -1 if there is none
+	 * @return delay in milliseconds
+	 */
+	long getDelay(int attempt, long retryAfterMillis);
+}
@@ -0,0 +1,195 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+
+/**
+ * Base class of the asynchronous HTTP clients shared by the variants of a push network.
+ *
+ * Connections are pooled and kept alive between batches. The number of requests in flight is bounded, callers block
+ * in {@link #limit(Supplier)} once the limit is reached. Returned futures are completed on a dedicated thread pool, so
+ * that callbacks never run on the I/O reactor threads.
+ */
+public abstract class AbstractAsyncHttpClient implements Closeable {
+
+	private final String name;
+	private final CloseableHttpAsyncClient client;
+	private final Semaphore inFlight;
+	private final ExecutorService completionExecutor;
+
+	/**
+	 * @param name name of the push network, used for thread names and error messages
+	 * @param maxConnections maximum number of pooled connections
+	 * @param maxConnectionsPerHost maximum number of pooled connections to a single host
+	 * @param maxInFlight maximum number of requests submitted and not yet completed
+	 * @param timeoutInMillis connect and socket timeout
+	 */
+	protected AbstractAsyncHttpClient(String name, int maxConnections, int maxConnectionsPerHost, int maxInFlight,
+			int timeoutInMillis) {
+		this.name = name;
+
+		final RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(timeoutInMillis)
+				.setSocketTimeout(timeoutInMillis)
+				.setConnectionRequestTimeout(timeoutInMillis)
+				.build();
+
+		this.client = HttpAsyncClients.custom()
+				.setMaxConnTotal(maxConnections)
+				.setMaxConnPerRoute(maxConnectionsPerHost)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+		this.inFlight = new Semaphore(maxInFlight);
+
+		final AtomicInteger threadCounter = new AtomicInteger();
+		final String threadPrefix = name.toLowerCase() + "-completion-";
+		this.completionExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+				r -> {
+					final Thread thread = new Thread(r, threadPrefix + threadCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		client.start();
+	}
+
+	/**
+	 * Counts the requests started by the given supplier as one request in flight, until the returned future completes.
+	 * Blocks while the limit of requests in flight is reached.
+	 *
+	 * @param requests starts the requests, e.g. a token request followed by the message
+	 * @param <T> result type
+	 * @return future completed with the result of the requests, after the in-flight permit was released
+	 */
+	protected <T> CompletableFuture<T> limit(Supplier<CompletableFuture<T>> requests) {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return failed(e);
+		}
+
+		final CompletableFuture<T> future;
+		try {
+			future = requests.get();
+		} catch (RuntimeException e) {
+			inFlight.release();
+			return failed(e);
+		}
+		// callers are chained after the release, so that they can submit further requests from their callbacks
+		return future.whenComplete((ignore, e) -> inFlight.release());
+	}
+
+	/**
+	 * Executes a single request. The response is read on the I/O reactor thread, the returned future is completed on
+	 * the completion thread pool.
+	 *
+	 * @param request the request
+	 * @param reader reads the response, consuming its entity so that the connection goes back to the pool
+	 * @param <T> result type
+	 * @return future completed with the value returned by the reader
+	 */
+	protected <T> CompletableFuture<T> execute(HttpUriRequest request, ResponseReader<T> reader) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		try {
+			client.execute(request, new FutureCallback<HttpResponse>() {
+				@Override
+				public void completed(HttpResponse response) {
+					final T result;
+					try {
+						result = reader.read(response);
+					} catch (IOException | RuntimeException e) {
+						// never let a reader failure escape into the I/O reactor, the future would never complete
+						fail(e);
+						return;
+					}
+					complete(() -> future.complete(result));
+				}
+
+				@Override
+				public void failed(Exception e) {
+					fail(e);
+				}
+
+				@Override
+				public void cancelled() {
+					fail(new IOException(name + " request was cancelled"));
+				}
+
+				private void fail(Exception e) {
+					complete(() -> future.completeExceptionally(e));
+				}
+
+				private void complete(Runnable completion) {
+					try {
+						completionExecutor.execute(completion);
+					} catch (RejectedExecutionException e) {
+						// the client was closed, complete on the I/O reactor thread rather than never
+						completion.run();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	protected static <T> CompletableFuture<T> failed(Throwable e) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			client.close();
+		} finally {
+			completionExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Reads the response of a request, on the I/O reactor thread.
+	 *
+	 * @param <T> result type
+	 */
+	@FunctionalInterface
+	protected interface ResponseReader<T> {
+
+		T read(HttpResponse response) throws IOException;
+	}
+}
@@ -16,30 +16,56 @@
  */
 package org.jboss.aerogear.unifiedpush.message.sender;
 
-
 import org.jboss.aerogear.adm.ADM;
-import org.jboss.aerogear.adm.AdmService;
 import org.jboss.aerogear.adm.PayloadBuilder;
 import org.jboss.aerogear.unifiedpush.api.AdmVariant;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.VariantType;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.sender.adm.AdmHttpClient;
+import org.jboss.aerogear.unifiedpush.message.sender.adm.AdmResponseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Qualifier(VariantType.ADMQ)
 public class AdmPushNotificationSender implements PushNotificationSender {
     private final Logger logger = LoggerFactory.getLogger(AdmPushNotificationSender.class);
 
+    @Inject
+    private AdmHttpClient admClient;
+
+    /**
+     * Sends the message to every token through the shared {@link AdmHttpClient}, which sends them concurrently. The
+     * callback is invoked once for the whole batch, when ADM answered all of them: tokens that may be retried are
+     * reported as a retriable error, the reason mentions the rejected tokens of the same batch if there are any.
+     */
     @Override
     public void sendPushMessage(Variant variant, Collection<String> clientIdentifiers, UnifiedPushMessage pushMessage, String pushMessageInformationId, NotificationSenderCallback senderCallback) {
-        final AdmService admService = ADM.newService();
+        // no need to send empty list
+        if (clientIdentifiers.isEmpty()) {
+            return;
+        }
 
         final PayloadBuilder builder = ADM.newPayload();
 
@@ -66,16 +92,77 @@ public class AdmPushNotificationSender implements PushNotificationSender {
         builder.dataField(InternalUnifiedPushMessage.PUSH_MESSAGE_ID, pushMessageInformationId);
 
         final AdmVariant admVariant = (AdmVariant) variant;
+        final String payload = builder.build();
+
+        // every future completes with the failure reason, or null when ADM accepted the message or it should be retried
+        final Set<String> retriable = ConcurrentHashMap.newKeySet();
+        // longest delay ADM asked for, so that throttled messages are not sent again too early
+        final AtomicLong retryAfterMillis = new AtomicLong(-1);
+        final List<CompletableFuture<String>> results = clientIdentifiers.stream()
+                .map(token -> admClient.send(admVariant.getClientId(), admVariant.getClientSecret(), token, payload)
+                        .handle((ignore, e) -> {
+                            if (e == null) {
+                                return null;
+                            }
+                            if (isRetriable(e)) {
+                                retriable.add(token);
+                                retryAfterMillis.accumulateAndGet(retryAfterMillis(e), Math::max);
+                                return null;
+                            }
+                            return failureReason(e);
+                        }))
+                .collect(Collectors.toList());
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).thenRun(() -> {
+            final Map<String, Long> failures = results.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
 
-        clientIdentifiers.forEach(token -> {
-            try {
-                admService.sendMessageToDevice(token, admVariant.getClientId(), admVariant.getClientSecret(),  builder.build());
+            logger.info(String.format("Sent push notification to Amazon's ADM Server for %d tokens", results.size()));
+            final long failed = failures.values().stream().mapToLong(Long::longValue).sum();
+            if (failed > 0) {
+                logger.error("Error sending payload to ADM server for {} of {} tokens: {}", failed, results.size(), failures);
+            }
+
+            if (!retriable.isEmpty()) {
+                final String reason = String.format("ADM did not accept %d of %d messages", retriable.size(), results.size());
+                senderCallback.onRetriableError(failed > 0 ? String.format("%s, rejected %d: %s", reason, failed, failures) : reason,
+                        new ArrayList<>(retriable), retryAfterMillis.get());
+            } else if (failed > 0) {
+                senderCallback.onError(String.format("ADM rejected %d of %d messages: %s", failed, results.size(), failures));
+            } else {
                 senderCallback.onSuccess();
-            } catch (Exception e) {
-                logger.error("Error sending payload to ADM server", e);
-                senderCallback.onError(e.getMessage());
             }
         });
-        logger.info(String.format("Sent push notification to Amazon's ADM Server for %d tokens",clientIdentifiers.size()));
+    }
+
+    /**
+     * ADM is throttling (429) or unavailable (5xx), or could not be reached at all
+     */
+    private static boolean isRetriable(Throwable e) {
+        final Throwable cause = unwrap(e);
+        if (cause instanceof AdmResponseException) {
+            final int status = ((AdmResponseException) cause).getStatus();
+            return status == 429 || status >= 500;
+        }
+        return cause instanceof IOException;
+    }
+
+    private static long retryAfterMillis(Throwable e) {
+        final Throwable cause = unwrap(e);
+        if (cause instanceof AdmResponseException && ((AdmResponseException) cause).getRetryAfterSeconds() >= 0) {
+            return TimeUnit.SECONDS.toMillis(((AdmResponseException) cause).getRetryAfterSeconds());
+        }
+        return -1;
+    }
+
+    private static String failureReason(Throwable e) {
+        final Throwable cause = unwrap(e);
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 }
@@ -0,0 +1,267 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Bounded queue of device token changes reported by the push networks: tokens to remove and tokens to replace by their
+ * canonical token.
+ *
+ * Senders only enqueue, a worker drains the queue periodically (<tt>aerogear.sender.token_cleanup.flush_interval_ms</tt>)
+ * or once half of its capacity (<tt>aerogear.sender.token_cleanup.max_pending</tt>) is used. Each flush issues one bulk
+ * update of the replaced tokens and one bulk removal per variant. The changes of a variant whose update or removal
+ * fails are queued again and retried on the next flush. When the queue is full, changes are dropped: the push network
+ * reports the same token again on the next send. A flush interval of 0 applies every change immediately, in
+ * the thread of the sender.
+ *
+ * Senders that know when all responses of a batch are in call {@link #requestFlush()}, so the tokens of a batch do not
+ * wait for the next interval. {@link #getPendingCount()} and {@link #getPendingCount(String)} report the pending changes.
+ */
+@Service
+public class DeviceTokenCleanupQueue {
+
+    public static final String PROP_FLUSH_INTERVAL = "aerogear.sender.token_cleanup.flush_interval_ms";
+    public static final String PROP_MAX_PENDING = "aerogear.sender.token_cleanup.max_pending";
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceTokenCleanupQueue.class);
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Map<String, Integer> pendingByVariant = new ConcurrentHashMap<>();
+
+    @Inject
+    private ClientInstallationService clientInstallationService;
+
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private BlockingQueue<TokenChange> queue;
+    private ScheduledExecutorService scheduler;
+    private int flushThreshold;
+
+    @PostConstruct
+    public void init() {
+        final long flushInterval = config.getProperty(PROP_FLUSH_INTERVAL, 1000);
+        final int maxPending = config.getProperty(PROP_MAX_PENDING, 10000);
+
+        queue = new ArrayBlockingQueue<>(maxPending);
+        flushThreshold = Math.max(1, maxPending / 2);
+
+        if (flushInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "device-token-cleanup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::scheduledFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            logger.info("queueing of device token cleanups is disabled");
+        }
+    }
+
+    /**
+     * Schedules the removal of the installation of an invalid token.
+     *
+     * @param variantID id of the variant of the token
+     * @param deviceToken token rejected by the push network
+     */
+    public void remove(String variantID, String deviceToken) {
+        enqueue(new TokenChange(variantID, deviceToken, null));
+    }
+
+    /**
+     * Schedules the replacement of a token by its canonical token. If the canonical token is registered already, the
+     * installation of the outdated token is removed instead.
+     *
+     * @param variantID id of the variant of the token
+     * @param deviceToken token used for the push
+     * @param canonicalToken token returned by the push network
+     */
+    public void replace(String variantID, String deviceToken, String canonicalToken) {
+        enqueue(new TokenChange(variantID, deviceToken, canonicalToken));
+    }
+
+    /**
+     * @return number of token changes not yet applied
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * @param variantID id of a variant
+     * @return number of token changes of the variant not yet applied
+     */
+    public int getPendingCount(String variantID) {
+        return pendingByVariant.getOrDefault(variantID, 0);
+    }
+
+    /**
+     * Asks the worker to apply the queued token changes now, instead of waiting for the next interval.
+     */
+    public void requestFlush() {
+        if (scheduler != null && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::scheduledFlush);
+        }
+    }
+
+    private void enqueue(TokenChange change) {
+        // counted before it is queued, so a concurrent flush never drains an uncounted change
+        pendingByVariant.merge(change.variantID, 1, Integer::sum);
+        if (!queue.offer(change)) {
+            decrementPending(change.variantID, 1);
+            logger.warn("Device token cleanup queue is full, dropping cleanup of token {} of variant {}",
+                    change.deviceToken, change.variantID);
+        }
+
+        if (scheduler == null) {
+            flush();
+        } else if (queue.size() >= flushThreshold) {
+            requestFlush();
+        }
+    }
+
+    private void decrementPending(String variantID, int count) {
+        pendingByVariant.computeIfPresent(variantID, (id, pending) -> pending > count ? pending - count : null);
+    }
+
+    /**
+     * Applies all queued token changes, grouped by variant. The changes of a variant that cannot be applied are queued
+     * again, as far as the capacity allows, and retried on the next flush.
+     *
+     * @return number of applied token changes
+     */
+    public synchronized int flush() {
+        flushRequested.set(false);
+
+        final List<TokenChange> changes = new ArrayList<>();
+        queue.drainTo(changes);
+
+        final Map<String, List<TokenChange>> changesByVariant = new LinkedHashMap<>();
+        for (TokenChange change : changes) {
+            changesByVariant.computeIfAbsent(change.variantID, id -> new ArrayList<>()).add(change);
+        }
+
+        int applied = 0;
+        for (Map.Entry<String, List<TokenChange>> entry : changesByVariant.entrySet()) {
+            final String variantID = entry.getKey();
+            final List<TokenChange> variantChanges = entry.getValue();
+            try {
+                apply(variantID, variantChanges);
+                decrementPending(variantID, variantChanges.size());
+                applied += variantChanges.size();
+            } catch (RuntimeException e) {
+                logger.warn("Unable to apply {} device token changes of variant {}", variantChanges.size(), variantID, e);
+                requeue(variantID, variantChanges);
+            }
+        }
+        return applied;
+    }
+
+    private void apply(String variantID, List<TokenChange> changes) {
+        final Map<String, String> canonicalTokens = new LinkedHashMap<>();
+        final Set<String> removed = new HashSet<>();
+        for (TokenChange change : changes) {
+            if (change.canonicalToken == null) {
+                removed.add(change.deviceToken);
+            } else {
+                canonicalTokens.put(change.deviceToken, change.canonicalToken);
+            }
+        }
+
+        canonicalTokens.keySet().removeAll(removed);
+        if (!canonicalTokens.isEmpty()) {
+            removed.addAll(clientInstallationService.replaceDeviceTokensForVariant(variantID, canonicalTokens));
+        }
+
+        if (!removed.isEmpty()) {
+            logger.info("Deleting {} invalid or duplicated installations of variant {}", removed.size(), variantID);
+            clientInstallationService.removeInstallationsForVariantByDeviceTokens(variantID, removed);
+        }
+    }
+
+    private void requeue(String variantID, List<TokenChange> changes) {
+        int dropped = 0;
+        for (TokenChange change : changes) {
+            if (!queue.offer(change)) {
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            decrementPending(variantID, dropped);
+            logger.warn("Device token cleanup queue is full, dropping {} cleanups of variant {}", dropped, variantID);
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to flush device token cleanups", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queue.isEmpty()) {
+            scheduledFlush();
+        }
+    }
+
+    private static final class TokenChange {
+
+        private final String variantID;
+        private final String deviceToken;
+        private final String canonicalToken;
+
+        TokenChange(String variantID, String deviceToken, String canonicalToken) {
+            this.variantID = variantID;
+            this.deviceToken = deviceToken;
+            this.canonicalToken = canonicalToken;
+        }
+    }
+}
@@ -20,30 +20,35 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
-import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.VariantType;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.Priority;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
-import org.jboss.aerogear.unifiedpush.message.sender.fcm.ConfigurableFCMSender;
-import org.jboss.aerogear.unifiedpush.service.ClientInstallationAsyncService;
-import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.FCMHttpClient;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.FCMResponseException;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import com.google.android.gcm.server.Constants;
-import com.google.android.gcm.server.Message;
-import com.google.android.gcm.server.Message.Builder;
 import com.google.android.gcm.server.MulticastResult;
 import com.google.android.gcm.server.Result;
 
@@ -51,6 +56,8 @@ import com.google.android.gcm.server.Result;
 @Qualifier(value = VariantType.ANDROIDQ)
 public class FCMPushNotificationSender implements PushNotificationSender {
 
+    public static final String PROP_TOPIC_CONCURRENCY = "aerogear.android.topicConcurrency";
+
     // collection of error codes we check for in the FCM response
     // in order to clean-up invalid or incorrect device tokens
     private static final Set<String> FCM_ERROR_CODES =
@@ -60,16 +67,35 @@ public class FCMPushNotificationSender implements PushNotificationSender {
                     Constants.ERROR_MISMATCH_SENDER_ID)    // incorrect token, from a different project/sender ID
             );
 
+    // error codes of registration IDs that FCM failed to process, sending them again later may succeed
+    private static final Set<String> FCM_RETRIABLE_ERROR_CODES =
+            new HashSet<>(Arrays.asList(
+                    Constants.ERROR_UNAVAILABLE,
+                    Constants.ERROR_INTERNAL_SERVER_ERROR)
+            );
+
     @Inject
-    private ClientInstallationService clientInstallationService;
+    private DeviceTokenCleanupQueue tokenCleanupQueue;
     @Inject
-    private ClientInstallationAsyncService clientInstallationAsyncService;
+    private FCMHttpClient fcmClient;
+    @Inject
+    private ConfigurationEnvironment config;
+
+    // maximum number of topic requests of a single batch in flight
+    private int topicConcurrency;
 
     private final Logger logger = LoggerFactory.getLogger(FCMPushNotificationSender.class);
 
+    @PostConstruct
+    public void init() {
+        topicConcurrency = Math.max(1, config.getProperty(PROP_TOPIC_CONCURRENCY, 10));
+    }
+
     /**
      * Sends FCM notifications ({@link UnifiedPushMessage}) to all devices, that are represented by
      * the {@link List} of tokens for the given {@link AndroidVariant}.
+     *
+     * The request is submitted through the shared {@link FCMHttpClient}, the callback is invoked once FCM responded.
      */
     @Override
     public void sendPushMessage(Variant variant, Collection<String> tokens, UnifiedPushMessage pushMessage, String pushMessageInformationId, NotificationSenderCallback callback) {
@@ -82,107 +108,181 @@ public class FCMPushNotificationSender implements PushNotificationSender {
         final List<String> pushTargets = new ArrayList<>(tokens);
         final AndroidVariant androidVariant = (AndroidVariant) variant;
 
-        // payload builder:
-        Builder fcmBuilder = new Message.Builder();
+        final Map<String, Object> fcmMessage = buildPayload(pushMessage, pushMessageInformationId);
+
+        // send it out.....
+        logger.debug("Sending transformed FCM payload: {}", fcmMessage);
+
+        // push targets can be registration IDs OR topics (starting /topic/), but they can't be mixed.
+        if (pushTargets.get(0).startsWith(Constants.TOPIC_PREFIX)) {
+            processFCMTopics(androidVariant, pushTargets, fcmMessage, callback);
+            return;
+        }
+
+        // send out a message to a batch of devices...
+        processFCM(androidVariant, pushTargets, fcmMessage).whenComplete((retriableTokens, e) -> {
+            if (e == null && retriableTokens.isEmpty()) {
+                logger.debug("Message batch to FCM has been submitted");
+                callback.onSuccess();
+            } else if (e == null) {
+                callback.onRetriableError(String.format("FCM was unable to process %d registration IDs", retriableTokens.size()),
+                        retriableTokens, -1);
+            } else if (isRetriable(unwrap(e))) {
+                // the whole request failed, e.g. FCM is unavailable
+                callback.onRetriableError(String.format("Error sending payload to FCM server: %s", unwrap(e).getMessage()),
+                        pushTargets, retryAfterMillis(unwrap(e)));
+            } else {
+                // FCM exceptions:
+                callback.onError(String.format("Error sending payload to FCM server: %s", unwrap(e).getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Transforms the {@link UnifiedPushMessage} into FCM message fields, recipients are added by {@link FCMHttpClient}.
+     */
+    private Map<String, Object> buildPayload(UnifiedPushMessage pushMessage, String pushMessageInformationId) {
+        final Map<String, Object> fcmMessage = new LinkedHashMap<>();
+        final Map<String, String> data = new LinkedHashMap<>();
 
         org.jboss.aerogear.unifiedpush.message.Message message = pushMessage.getMessage();
         // add the "recognized" keys...
-        fcmBuilder.addData("alert", message.getAlert());
-        fcmBuilder.addData("sound", message.getSound());
-        fcmBuilder.addData("badge", String.valueOf(message.getBadge()));
+        data.put("alert", message.getAlert());
+        data.put("sound", message.getSound());
+        data.put("badge", String.valueOf(message.getBadge()));
 
         /*
         The Message defaults to a Normal priority.  High priority is used
         by FCM to wake up devices in Doze mode as well as apps in AppStandby
         mode.  This has no effect on devices older than Android 6.0
         */
-        fcmBuilder.priority(
-                message.getPriority() ==  Priority.HIGH ?
-                                          Message.Priority.HIGH :
-                                          Message.Priority.NORMAL
-                           );
+        fcmMessage.put("priority", message.getPriority() == Priority.HIGH ? "high" : "normal");
 
         // if present, apply the time-to-live metadata:
         int ttl = pushMessage.getConfig().getTimeToLive();
         if (ttl != -1) {
-            fcmBuilder.timeToLive(ttl);
+            fcmMessage.put("time_to_live", ttl);
         }
 
         // iterate over the missing keys:
         message.getUserData().keySet()
-                .forEach(key -> fcmBuilder.addData(key, String.valueOf(message.getUserData().get(key))));
+                .forEach(key -> data.put(key, String.valueOf(message.getUserData().get(key))));
 
         //add the aerogear-push-id
-        fcmBuilder.addData(InternalUnifiedPushMessage.PUSH_MESSAGE_ID, pushMessageInformationId);
-
-        Message fcmMessage = fcmBuilder.build();
+        data.put(InternalUnifiedPushMessage.PUSH_MESSAGE_ID, pushMessageInformationId);
 
-        // send it out.....
-        try {
-            logger.debug("Sending transformed FCM payload: {}", fcmMessage);
-
-            final ConfigurableFCMSender sender = new ConfigurableFCMSender(androidVariant.getGoogleKey());
-
-            // send out a message to a batch of devices...
-            processFCM(androidVariant, pushTargets, fcmMessage , sender);
-
-            logger.debug("Message batch to FCM has been submitted");
-            callback.onSuccess();
-
-        } catch (Exception e) {
-            // FCM exceptions:
-            callback.onError(String.format("Error sending payload to FCM server: %s", e.getMessage()));
-        }
+        fcmMessage.put("data", data);
+        return fcmMessage;
     }
 
     /**
      * Process the HTTP POST to the FCM infrastructure for the given list of registrationIDs.
+     *
+     * @return future completed with the registration IDs that FCM failed to process and can be sent again
      */
-    private void processFCM(AndroidVariant androidVariant, List<String> pushTargets, Message fcmMessage, ConfigurableFCMSender sender) throws IOException {
-
+    private CompletableFuture<List<String>> processFCM(AndroidVariant androidVariant, List<String> pushTargets, Map<String, Object> fcmMessage) {
+        logger.info(String.format("Sent push notification to FCM Server for %d registrationIDs", pushTargets.size()));
+        return fcmClient.send(androidVariant.getGoogleKey(), fcmMessage, pushTargets).thenApply(multicastResult -> {
+            logger.trace("Response from FCM request: {}", multicastResult);
 
-        // push targets can be registration IDs OR topics (starting /topic/), but they can't be mixed.
-        if (pushTargets.get(0).startsWith(Constants.TOPIC_PREFIX)) {
+            // after sending, let's identify the inactive/invalid registrationIDs and trigger their deletion:
+            return cleanupInvalidRegistrationIDsForVariant(androidVariant.getVariantID(), multicastResult, pushTargets);
+        });
+    }
 
-            // perform the topic delivery
+    /**
+     * Sends the message to every topic, at most {@link #PROP_TOPIC_CONCURRENCY} topics at a time. Every failed topic
+     * is reported to the callback on its own, so the error of one topic neither stops nor hides the others. If the
+     * thread is interrupted while waiting for the window, the topics not sent yet are reported once as retriable.
+     */
+    private void processFCMTopics(AndroidVariant androidVariant, List<String> topics, Map<String, Object> fcmMessage, NotificationSenderCallback callback) {
+        final String googleKey = androidVariant.getGoogleKey();
+        final Semaphore window = new Semaphore(topicConcurrency);
+        final List<CompletableFuture<Boolean>> sends = new ArrayList<>(topics.size());
+
+        for (int i = 0; i < topics.size(); i++) {
+            final String topic = topics.get(i);
+            try {
+                window.acquire();
+            } catch (InterruptedException e) {
+                // the topics that were not sent yet are retried together, the sends in flight still report on their own
+                Thread.currentThread().interrupt();
+                callback.onRetriableError(String.format("Sending to %d FCM topics was interrupted", topics.size() - i),
+                        new ArrayList<>(topics.subList(i, topics.size())), -1);
+                sends.add(CompletableFuture.completedFuture(false));
+                break;
+            }
 
-            for (String topic : pushTargets) {
+            sends.add(fcmClient.sendToTopic(googleKey, fcmMessage, topic).handle((result, e) -> {
+                window.release();
+                if (e != null && isRetriable(unwrap(e))) {
+                    callback.onRetriableError(String.format("Error sending payload to FCM topic %s: %s", topic, unwrap(e).getMessage()),
+                            Collections.singletonList(topic), retryAfterMillis(unwrap(e)));
+                    return false;
+                }
+                if (e != null) {
+                    callback.onError(String.format("Error sending payload to FCM topic %s: %s", topic, unwrap(e).getMessage()));
+                    return false;
+                }
+                logger.trace("Response from FCM topic request: {}", result);
+                if (result.getErrorCodeName() != null) {
+                    callback.onError(String.format("Error sending payload to FCM topic %s: %s", topic, result.getErrorCodeName()));
+                    return false;
+                }
                 logger.info(String.format("Sent push notification to FCM topic: %s", topic));
-                Result result = sender.sendNoRetry(fcmMessage, topic);
+                return true;
+            }));
+        }
 
-                logger.trace("Response from FCM topic request: {}", result);
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[sends.size()])).thenRun(() -> {
+            if (sends.stream().allMatch(CompletableFuture::join)) {
+                logger.debug("Message to {} FCM topics has been submitted", sends.size());
+                callback.onSuccess();
             }
-        } else {
-            logger.info(String.format("Sent push notification to FCM Server for %d registrationIDs", pushTargets.size()));
-            MulticastResult multicastResult = sender.sendNoRetry(fcmMessage, pushTargets);
+        });
+    }
 
-            logger.trace("Response from FCM request: {}", multicastResult);
+    /**
+     * FCM asks to retry on 5xx responses, connection failures are transient as well.
+     */
+    private static boolean isRetriable(Throwable cause) {
+        if (cause instanceof FCMResponseException) {
+            return ((FCMResponseException) cause).getStatus() >= 500;
+        }
+        return cause instanceof IOException;
+    }
 
-            // after sending, let's identify the inactive/invalid registrationIDs and trigger their deletion:
-            cleanupInvalidRegistrationIDsForVariant(androidVariant.getVariantID(), multicastResult, pushTargets);
+    private static long retryAfterMillis(Throwable cause) {
+        if (cause instanceof FCMResponseException && ((FCMResponseException) cause).getRetryAfterSeconds() >= 0) {
+            return TimeUnit.SECONDS.toMillis(((FCMResponseException) cause).getRetryAfterSeconds());
         }
+        return -1;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 
     /**
      * <p>Walks over the {@code MulticastResult} from the FCM call and identifies the <code>index</code> of all {@code Result} objects that
-     * indicate an <code>InvalidRegistration</code> error.
+     * indicate an <code>InvalidRegistration</code> error or carry a canonical registration ID.
      *
      * <p>This <code>index</code> is used to find the matching <code>registration ID</code> in the List of all used <code>registrationIDs</code>.
      *
-     * <p>Afterwards all 'invalid' registration IDs for the given <code>variantID</code> are being deleted from our database.
+     * <p>Afterwards all 'invalid' registration IDs are queued for deletion, and all outdated registration IDs are queued for
+     * replacement by their canonical ID. The {@link DeviceTokenCleanupQueue} applies them in bulk, outside of the sender thread.
      *
      * @param variantID id of the actual {@code AndroidVariantEntity}.
      * @param multicastResult the results from the HTTP request to the Google Cloud.
      * @param registrationIDs list of all tokens that we submitted to FCM.
+     * @return registration IDs that FCM failed to process because of a transient error
      */
-    private void cleanupInvalidRegistrationIDsForVariant(String variantID, MulticastResult multicastResult, List<String> registrationIDs) {
+    private List<String> cleanupInvalidRegistrationIDsForVariant(String variantID, MulticastResult multicastResult, List<String> registrationIDs) {
+        final List<String> retriableTokens = new ArrayList<>();
 
         // get the FCM send results for all of the client devices:
         final List<Result> results = multicastResult.getResults();
 
-        // storage for all the invalid registration IDs:
-        final Set<String> inactiveTokens = new HashSet<>();
-
         // read the results:
         for (int i = 0; i < results.size(); i++) {
             // use the current index to access the individual results
@@ -202,44 +302,23 @@ public class FCMPushNotificationSender implements PushNotificationSender {
             //check if current index of result has canonical id
             String canonicalRegId = result.getCanonicalRegistrationId();
             if (canonicalRegId != null) {
-                // same device has more than one registration id: update it, if needed!
-                // let's see if the canonical id is already in our system:
-                Installation installation = clientInstallationService.findInstallationForVariantByDeviceToken(variantID, canonicalRegId);
-
-                if (installation != null) {
-                    // ok, there is already a device, with newest/latest registration ID (aka canonical id)
-                    // It is time to remove the old reg id, to avoid duplicated messages in the future!
-                    inactiveTokens.add(registrationIDs.get(i));
-
-                } else {
-                    // since there is no registered device with newest/latest registration ID (aka canonical id),
-                    // this means the new token/regId was never stored on the server. Let's update the device and change its token to new canonical id:
-                    installation = clientInstallationService.findInstallationForVariantByDeviceToken(variantID,registrationIDs.get(i));
-                    installation.setDeviceToken(canonicalRegId);
-
-                    //update installation with the new token
-                    logger.info(String.format("Based on returned canonical id from FCM, updating Android installations with registration id [%s] with new token [%s] ", registrationIDs.get(i), canonicalRegId));
-                    clientInstallationService.updateInstallation(installation);
-                }
+                // same device has more than one registration id: the old reg id is either replaced by the canonical id,
+                // or removed if a device with the canonical id is registered already, to avoid duplicated messages in the future!
+                tokenCleanupQueue.replace(variantID, registrationIDs.get(i), canonicalRegId);
 
-            } else {
+            } else if (FCM_ERROR_CODES.contains(errorCodeName)) {
                 // is there any 'interesting' error code, which requires a clean up of the registration IDs
-                if (FCM_ERROR_CODES.contains(errorCodeName)) {
 
-                    // Ok the result at INDEX 'i' represents a 'bad' registrationID
+                // Ok the result at INDEX 'i' represents a 'bad' registrationID
 
-                    // Now use the INDEX of the _that_ result object, and look
-                    // for the matching registrationID inside of the List that contains
-                    // _all_ the used registration IDs and store it:
-                   inactiveTokens.add(registrationIDs.get(i));
-                }
+                // Now use the INDEX of the _that_ result object, and look
+                // for the matching registrationID inside of the List that contains
+                // _all_ the used registration IDs and queue its deletion:
+                tokenCleanupQueue.remove(variantID, registrationIDs.get(i));
+            } else if (FCM_RETRIABLE_ERROR_CODES.contains(errorCodeName)) {
+                retriableTokens.add(registrationIDs.get(i));
             }
         }
-
-        if (! inactiveTokens.isEmpty()) {
-            // trigger asynchronous deletion:
-            logger.info(String.format("Based on FCM response data and error codes, deleting %d invalid or duplicated Android installations", inactiveTokens.size()));
-            clientInstallationAsyncService.removeInstallationsForVariantByDeviceTokens(variantID, inactiveTokens);
-        }
+        return retriableTokens;
     }
 }
@@ -16,6 +16,8 @@
  */
 package org.jboss.aerogear.unifiedpush.message.sender;
 
+import java.util.Collection;
+
 /**
  * A simple Callback interface used when sending {@link org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage} to
  * an actual push network.
@@ -38,4 +40,17 @@ public interface NotificationSenderCallback {
      */
     void onError(String reason);
 
+    /**
+     * Called when the push network failed to accept some tokens because of a transient condition (e.g. it is overloaded
+     * or throttles the sender), so that sending them again later may succeed. Callbacks that do not retry treat it as
+     * an error.
+     *
+     * @param reason details about the error
+     * @param failedTokens the tokens that should be sent again
+     * @param retryAfterMillis delay requested by the push network, or -1 if there is none
+     */
+    default void onRetriableError(String reason, Collection<String> failedTokens, long retryAfterMillis) {
+        onError(reason);
+    }
+
 }
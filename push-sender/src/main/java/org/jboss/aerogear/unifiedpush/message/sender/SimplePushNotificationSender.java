@@ -17,17 +17,30 @@
 package org.jboss.aerogear.unifiedpush.message.sender;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
-
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
 import javax.ws.rs.core.Response.Status;
 
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.api.VariantType;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.sender.simplepush.SimplePushHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -39,9 +52,18 @@ public class SimplePushNotificationSender implements PushNotificationSender {
 
     private final Logger logger = LoggerFactory.getLogger(SimplePushNotificationSender.class);
 
+    @Inject
+    private SimplePushHttpClient simplePushClient;
+
     /*
      * Sends SimplePush notifications to all connected clients, that are represented by
      * the {@link Collection} of channelIDs, for the given SimplePush network.
+     *
+     * The updates are sent concurrently through the shared {@link SimplePushHttpClient}, the callback is invoked once
+     * all SimplePush servers answered. The updates in flight per server are limited to the connections per host, and
+     * once a server is unreachable, the remaining channels of that server are skipped, so a dead server does not hold
+     * up the batch. The channels of unreachable servers are reported as a retriable error, so that they are sent again
+     * later.
      */
     @Override
     public void sendPushMessage(Variant variant, Collection<String> tokens, UnifiedPushMessage pushMessage, String pushMessageInformationId, NotificationSenderCallback callback) {
@@ -57,73 +79,84 @@ public class SimplePushNotificationSender implements PushNotificationSender {
         if (payload == null) {
             payload = "";
         }
+        logger.trace("Sending out SimplePush payload: {}", payload);
 
-        // iterate over all the given channels, if there are channels:
-        boolean hasWarning = false;
-        for (String clientURL : tokens) {
+        final Set<String> unreachableHosts = ConcurrentHashMap.newKeySet();
+        // channels of unreachable servers, sent again later
+        final Set<String> retriable = ConcurrentHashMap.newKeySet();
+        // only accessed by the sending thread
+        final Map<String, Semaphore> hostPermits = new HashMap<>();
 
-            HttpURLConnection conn = null;
+        // every future completes with the host of a rejected update, or null when the update was accepted or is retried
+        final List<CompletableFuture<String>> results = new ArrayList<>(tokens.size());
+        for (String clientURL : tokens) {
+            final String host = host(clientURL);
+            final Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(simplePushClient.getMaxConnectionsPerHost()));
             try {
-                // PUT the version payload to the SimplePushServer
-                logger.trace("Sending out SimplePush payload: {}", payload);
-                conn = put(clientURL, payload);
-                int simplePushStatusCode = conn.getResponseCode();
-                logger.trace("SimplePush Status: {}", simplePushStatusCode);
-
-                if (Status.OK.getStatusCode() != simplePushStatusCode) {
-                    hasWarning = true;
-                }
-            } catch (Exception e) {
-                // any error while performing the PUT
-                logger.error("Error delivering SimplePush payload", e);
-                hasWarning = true;
-            } finally {
-                // tear down
-                if (conn != null) {
-                    conn.disconnect();
-                }
+                // wait for an earlier update of the host to complete, so that a failed host is known before the next request
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                retriable.add(clientURL);
+                continue;
+            }
+            if (unreachableHosts.contains(host)) {
+                permits.release();
+                retriable.add(clientURL);
+                continue;
             }
-        }
-
-        logger.info(String.format("Sent push notification to SimplePush Server for %d  tokens",tokens.size()));
 
-        if (hasWarning) {
-            callback.onError("Error delivering SimplePush payload");
-        }
-        else {
-            callback.onSuccess();
+            // PUT the version payload to the SimplePushServer
+            results.add(simplePushClient.put(clientURL, payload).handle((simplePushStatusCode, e) -> {
+                try {
+                    if (e != null) {
+                        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        logger.debug("Error delivering SimplePush payload to {}", clientURL, cause);
+                        if (cause instanceof IOException) {
+                            unreachableHosts.add(host);
+                            retriable.add(clientURL);
+                            return null;
+                        }
+                        return host;
+                    }
+                    logger.trace("SimplePush Status: {}", simplePushStatusCode);
+                    return Status.OK.getStatusCode() == simplePushStatusCode ? null : host;
+                } finally {
+                    permits.release();
+                }
+            }));
         }
-    }
 
-    /*
-     * Returns HttpURLConnection that 'puts' the given body to the given URL.
-     */
-    protected HttpURLConnection put(String url, String body) throws IOException {
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()])).thenRun(() -> {
+            final Map<String, Long> failuresPerHost = results.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.groupingBy(Function.identity(), TreeMap::new, Collectors.counting()));
 
-        if (url == null) {
-            throw new IllegalArgumentException("SimplePush Update URL cannot be null");
-        }
+            logger.info(String.format("Sent push notification to SimplePush Server for %d  tokens", results.size()));
 
-        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
-        HttpURLConnection conn = getConnection(url);
-        conn.setDoOutput(true);
-        conn.setUseCaches(false);
-        conn.setFixedLengthStreamingMode(bytes.length);
-        conn.setRequestProperty("Content-Length", Integer.toString(bytes.length));
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        conn.setRequestProperty("Accept", "*/*");
-        conn.setRequestMethod("PUT");
-        try (OutputStream out = conn.getOutputStream()) {
-            out.write(bytes);
-            out.flush();
-        }
-        return conn;
+            if (!failuresPerHost.isEmpty()) {
+                logger.error("Error delivering SimplePush payload, failed channels per host: {}", failuresPerHost);
+            }
+
+            if (!retriable.isEmpty()) {
+                logger.warn("Unable to reach SimplePush servers {} for {} channels", unreachableHosts, retriable.size());
+                callback.onRetriableError(String.format("Unable to reach SimplePush servers %s for %d channels, failed channels per host: %s",
+                        new TreeSet<>(unreachableHosts), retriable.size(), failuresPerHost), new ArrayList<>(retriable), -1);
+            } else if (!failuresPerHost.isEmpty()) {
+                callback.onError(String.format("Error delivering SimplePush payload, failed channels per host: %s", failuresPerHost));
+            } else {
+                callback.onSuccess();
+            }
+        });
     }
 
-    /*
-     * Convenience method to open/establish a HttpURLConnection.
-     */
-    protected HttpURLConnection getConnection(String url) throws IOException {
-        return (HttpURLConnection) new URL(url).openConnection();
+    private static String host(String clientURL) {
+        try {
+            final String host = URI.create(clientURL).getHost();
+            return host != null ? host : clientURL;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return String.valueOf(clientURL);
+        }
     }
 }
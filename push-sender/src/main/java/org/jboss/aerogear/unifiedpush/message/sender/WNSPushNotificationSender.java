@@ -16,14 +16,19 @@
  */
 package org.jboss.aerogear.unifiedpush.message.sender;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -35,6 +40,8 @@ import org.jboss.aerogear.unifiedpush.api.WindowsWNSVariant;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.Message;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.cache.WnsServiceCache;
+import org.jboss.aerogear.unifiedpush.message.retry.NotificationRetryService;
 import org.jboss.aerogear.unifiedpush.message.windows.Windows;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationAsyncService;
 import org.slf4j.Logger;
@@ -64,22 +71,36 @@ public class WNSPushNotificationSender implements PushNotificationSender {
 
     private static final String CORDOVA = "cordova";
     static final String CORDOVA_PAGE = "/Plugins/aerogear-cordova-push/P.xaml";
-    private String pushMessageInformationId;
+    private static final String BINDING_TEMPLATE = "bindingTemplate";
+    // WNS throttles the sender (406) or is temporarily unavailable (500, 503), sending again later may succeed
+    private static final Set<Integer> RETRIABLE_RESPONSE_CODES = new HashSet<>(Arrays.asList(406, 500, 503));
+    private static final int UNAUTHORIZED = 401;
+    private static final Pattern SERVER_ERROR_STATUS = Pattern.compile("\\b5\\d\\d\\b");
+
+    // template builder methods per builder type, resolved once instead of on every message
+    private static final Map<Class<?>, Map<String, MethodHandle>> TEMPLATES;
+    static {
+        final Map<Class<?>, Map<String, MethodHandle>> templates = new HashMap<>();
+        templates.put(WnsToastBuilder.class, findTemplates(WnsToastBuilder.class));
+        templates.put(WnsTileBuilder.class, findTemplates(WnsTileBuilder.class));
+        TEMPLATES = Collections.unmodifiableMap(templates);
+    }
 
     @Inject
     private ClientInstallationAsyncService clientInstallationAsyncService;
+    @Inject
+    private WnsServiceCache wnsServiceCache;
 
     @Override
     public void sendPushMessage(Variant variant, Collection<String> clientIdentifiers, UnifiedPushMessage pushMessage, String pushMessageInformationId, NotificationSenderCallback senderCallback) {
-        setPushMessageInformationId(pushMessageInformationId);
-
         // no need to send empty list
         if (clientIdentifiers.isEmpty()) {
             return;
         }
 
         final WindowsWNSVariant windowsVariant = (WindowsWNSVariant) variant;
-        WnsService wnsService = new WnsService(windowsVariant.getSid(), windowsVariant.getClientSecret(), false);
+        final WnsService wnsService = wnsServiceCache.getWnsServiceForVariant(windowsVariant,
+                () -> new WnsService(windowsVariant.getSid(), windowsVariant.getClientSecret(), false));
 
         Set<String> expiredClientIdentifiers = new HashSet<>(clientIdentifiers.size());
         ArrayList<String> channelUris = new ArrayList<>(clientIdentifiers);
@@ -95,7 +116,7 @@ public class WNSPushNotificationSender implements PushNotificationSender {
             if (message.getWindows().getType() != null) {
                 switch (message.getWindows().getType()) {
                     case toast:
-                        responses = wnsService.pushToast(channelUris, optional, createToastMessage(message));
+                        responses = wnsService.pushToast(channelUris, optional, createToastMessage(message, pushMessageInformationId));
                         break;
                     case badge:
                         responses = wnsService.pushBadge(channelUris, optional, createBadgeMessage(message));
@@ -110,31 +131,63 @@ public class WNSPushNotificationSender implements PushNotificationSender {
                         throw new IllegalArgumentException("unknown type: " + message.getWindows().getType());
                 }
             } else {
-                responses = wnsService.pushToast(channelUris, optional, createSimpleToastMessage(message));
+                responses = wnsService.pushToast(channelUris, optional, createSimpleToastMessage(message, pushMessageInformationId));
             }
 
             logger.info(String.format("Sent push notification to WNS for %d  tokens", channelUris.size()));
 
+            if (responses.stream().anyMatch(response -> response.code == UNAUTHORIZED)) {
+                // the cached access token was rejected, authenticate again for the next batch
+                wnsServiceCache.invalidate(windowsVariant);
+            }
+
             expiredClientIdentifiers.addAll(responses.stream().filter(response -> response.code == 410).map(response -> response.channelUri).collect(Collectors.toList()));
             if (!expiredClientIdentifiers.isEmpty()) {
                 logger.info(String.format("Deleting '%d' expired WNS installations", expiredClientIdentifiers.size()));
                 clientInstallationAsyncService.removeInstallationsForVariantByDeviceTokens(variant.getVariantID(), expiredClientIdentifiers);
             }
             logger.debug("Message to WNS has been submitted");
-            senderCallback.onSuccess();
-        } catch (WnsException | IllegalArgumentException exception) {
+
+            // notifications rejected with an outdated access token are sent again with a new one
+            final List<String> retriableClientIdentifiers = responses.stream()
+                    .filter(response -> response.code == UNAUTHORIZED || RETRIABLE_RESPONSE_CODES.contains(response.code))
+                    .map(response -> response.channelUri).collect(Collectors.toList());
+            if (retriableClientIdentifiers.isEmpty()) {
+                senderCallback.onSuccess();
+            } else {
+                senderCallback.onRetriableError(String.format("WNS did not accept %d notifications", retriableClientIdentifiers.size()), retriableClientIdentifiers, -1);
+            }
+        } catch (WnsException exception) {
+            wnsServiceCache.invalidate(windowsVariant);
+            if (isTransient(exception)) {
+                // WNS could not be reached or failed internally while authenticating
+                senderCallback.onRetriableError(exception.getMessage(), channelUris, -1);
+            } else {
+                // e.g. a wrong SID or client secret, authenticating again fails the same way
+                senderCallback.onError(exception.getMessage());
+            }
+        } catch (IllegalArgumentException exception) {
             senderCallback.onError(exception.getMessage());
         }
     }
 
-    WnsToast createToastMessage(Message message) {
+    /**
+     * Authentication failures of WNS only carry the HTTP status in their message. They are transient if WNS could not be
+     * reached, or answered with a server error.
+     */
+    static boolean isTransient(WnsException exception) {
+        return NotificationRetryService.isTransient(exception)
+                || (exception.getMessage() != null && SERVER_ERROR_STATUS.matcher(exception.getMessage()).find());
+    }
+
+    WnsToast createToastMessage(Message message, String pushMessageInformationId) {
         final WnsToastBuilder builder = new WnsToastBuilder();
         Windows windows = message.getWindows();
         if (windows.getDuration() != null) {
             builder.duration(windows.getDuration().toString());
         }
         builder.audioSrc(message.getSound());
-        builder.launch(createLaunchParam(message.getWindows().getPage(), message.getAlert(), message.getUserData(), getPushMessageInformationId()));
+        builder.launch(createLaunchParam(message.getWindows().getPage(), message.getAlert(), message.getUserData(), pushMessageInformationId));
         createMessage(message, windows.getToastType().toString(), builder);
         return builder.build();
     }
@@ -172,41 +225,49 @@ public class WNSPushNotificationSender implements PushNotificationSender {
     }
 
     private static void createTemplate(WnsAbstractBuilder builder, String type, List<String> param) {
+        final MethodHandle template = TEMPLATES.getOrDefault(builder.getClass(), Collections.emptyMap()).get(type);
+        if (template == null) {
+            return;
+        }
+
+        final int methodArgs = template.type().parameterCount() - 1;
+        if (methodArgs != param.size()) {
+            throw new IllegalArgumentException("this template needs " + methodArgs
+                    + " fields, but you specified " + param.size());
+        }
+
+        final List<Object> arguments = new ArrayList<>(param.size() + 1);
+        arguments.add(builder);
+        arguments.addAll(param);
         try {
-            Method[] methods = builder.getClass().getMethods();
-            for (Method method : methods) {
-                if (method.getName().equals("bindingTemplate" + type)) {
-                    int methodArgs = method.getParameterTypes().length;
-                    if (methodArgs == param.size()) {
-                        method.invoke(builder, (Object[]) param.toArray(new String[param.size()]));
-                    } else {
-                        throw new IllegalArgumentException("this template needs " + methodArgs
-                                + " fields, but you specified " + param.size());
-                    }
+            template.invokeWithArguments(arguments);
+        } catch (Throwable e) {
+            throw new RuntimeException("error thrown while invoking template build method: " + type, e);
+        }
+    }
+
+    private static Map<String, MethodHandle> findTemplates(Class<? extends WnsAbstractBuilder> builderType) {
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        final Map<String, MethodHandle> templates = new HashMap<>();
+        for (Method method : builderType.getMethods()) {
+            if (method.getName().startsWith(BINDING_TEMPLATE)) {
+                try {
+                    templates.put(method.getName().substring(BINDING_TEMPLATE.length()), lookup.unreflect(method));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("something wrong with the permissions of this method", e);
                 }
             }
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException("error thrown while invoking template build method: " + type, e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException("something wrong with the permissions of this method", e);
         }
+        return templates;
     }
 
-    WnsToast createSimpleToastMessage(Message message) {
+    WnsToast createSimpleToastMessage(Message message, String pushMessageInformationId) {
         final WnsToastBuilder builder = new WnsToastBuilder().bindingTemplateToastText01(message.getAlert());
         final Map<String, Object> data = message.getUserData();
-        builder.launch(createLaunchParam(message.getWindows().getPage(), message.getAlert(), data, getPushMessageInformationId()));
+        builder.launch(createLaunchParam(message.getWindows().getPage(), message.getAlert(), data, pushMessageInformationId));
         return builder.build();
     }
 
-    public String getPushMessageInformationId() {
-        return pushMessageInformationId;
-    }
-
-    public void setPushMessageInformationId(String pushMessageInformationId) {
-        this.pushMessageInformationId = pushMessageInformationId;
-    }
-
     static String createLaunchParam(String page, String message, Map<String, Object> data, String pushMessageInformationId) {
         final UriBuilder uriBuilder = UriBuilder.fromPath("");
 
@@ -0,0 +1,246 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.adm;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.jboss.aerogear.unifiedpush.message.sender.AbstractAsyncHttpClient;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Asynchronous client of the Amazon Device Messaging API.
+ *
+ * One client is shared by all ADM variants. The OAuth access token of a variant is requested once and reused until
+ * shortly before it expires, instead of being requested for every message. Connections to the ADM host are pooled and
+ * a message counts as one request in flight, including the token request and the retry with a new token.
+ */
+public class AdmHttpClient extends AbstractAsyncHttpClient {
+
+	public static final String CUSTOM_AEROGEAR_ADM_PUSH_HOST = "custom.aerogear.adm.push.host";
+
+	public static final String ADM_ENDPOINT_HOST = "https://api.amazon.com";
+
+	private static final String TOKEN_PATH = "/auth/O2/token";
+	private static final String MESSAGES_PATH = "/messaging/registrations/%s/messages";
+
+	// tokens are renewed ahead of their expiry, so that in-flight messages do not carry an expired token
+	private static final long TOKEN_EXPIRY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private final Logger logger = LoggerFactory.getLogger(AdmHttpClient.class);
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final ConcurrentMap<String, CompletableFuture<AccessToken>> accessTokens = new ConcurrentHashMap<>();
+
+	/**
+	 * @param maxConnections maximum number of pooled connections to the ADM host
+	 * @param maxInFlight maximum number of messages submitted to ADM and not yet completed
+	 * @param timeoutInMillis connect and socket timeout
+	 */
+	public AdmHttpClient(int maxConnections, int maxInFlight, int timeoutInMillis) {
+		super("ADM", maxConnections, maxConnections, maxInFlight, timeoutInMillis);
+	}
+
+	/**
+	 * Sends the payload to a single device. A message rejected because of an expired access token is sent once more
+	 * with a new token.
+	 *
+	 * @param clientId client ID of the ADM variant
+	 * @param clientSecret client secret of the ADM variant
+	 * @param registrationId the recipient
+	 * @param payload JSON message (<tt>data</tt>, <tt>consolidationKey</tt>, ...)
+	 * @return future completed once ADM accepted the message
+	 */
+	public CompletableFuture<Void> send(String clientId, String clientSecret, String registrationId, String payload) {
+		// the token request and the retry are part of the message in flight
+		return limit(() -> sendWithToken(clientId, clientSecret, registrationId, payload)
+				.handle((ignore, e) -> {
+					if (e != null && isUnauthorized(e)) {
+						logger.debug("ADM rejected the access token of client {}, requesting a new one", clientId);
+						return sendWithToken(clientId, clientSecret, registrationId, payload);
+					}
+					return e == null ? CompletableFuture.<Void>completedFuture(null) : failed(unwrap(e));
+				})
+				.thenCompose(retried -> retried));
+	}
+
+	private CompletableFuture<Void> sendWithToken(String clientId, String clientSecret, String registrationId, String payload) {
+		final CompletableFuture<AccessToken> token = accessToken(clientId, clientSecret);
+		return token.thenCompose(accessToken -> {
+			final HttpPost post = new HttpPost(messagesEndpoint(registrationId));
+			post.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken.value);
+			post.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+			post.setHeader("X-Amzn-Type-Version", "com.amazon.device.messaging.ADMMessage@1.0");
+			post.setHeader("X-Amzn-Accept-Type", "com.amazon.device.messaging.ADMSendResult@1.0");
+			post.setEntity(new StringEntity(payload, ContentType.APPLICATION_JSON));
+
+			return execute(post, this::readResponse);
+		}).handle((json, e) -> {
+			if (e != null && isUnauthorized(e)) {
+				// only drop the token this message used, a concurrent sender may have renewed it already
+				accessTokens.remove(tokenKey(clientId, clientSecret), token);
+			}
+			if (e != null) {
+				throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+			}
+			return null;
+		});
+	}
+
+	private CompletableFuture<AccessToken> accessToken(String clientId, String clientSecret) {
+		final String key = tokenKey(clientId, clientSecret);
+		final CompletableFuture<AccessToken> cached = accessTokens.get(key);
+		if (isUsable(cached)) {
+			return cached;
+		}
+
+		final CompletableFuture<AccessToken> token = accessTokens.compute(key,
+				(k, existing) -> isUsable(existing) ? existing : requestAccessToken(clientId, clientSecret));
+
+		// failed requests are not cached, the next message asks again
+		token.whenComplete((ignore, e) -> {
+			if (e != null) {
+				accessTokens.remove(key, token);
+			}
+		});
+		return token;
+	}
+
+	private CompletableFuture<AccessToken> requestAccessToken(String clientId, String clientSecret) {
+		logger.debug("Requesting ADM access token for client {}", clientId);
+
+		final HttpPost post = new HttpPost(endpoint() + TOKEN_PATH);
+		post.setEntity(new UrlEncodedFormEntity(Arrays.asList(
+				new BasicNameValuePair("grant_type", "client_credentials"),
+				new BasicNameValuePair("scope", "messaging:push"),
+				new BasicNameValuePair("client_id", clientId),
+				new BasicNameValuePair("client_secret", clientSecret)), StandardCharsets.UTF_8));
+
+		final long requested = System.currentTimeMillis();
+		return execute(post, this::readResponse).thenApply(json -> new AccessToken(json.path("access_token").asText(),
+				requested + TimeUnit.SECONDS.toMillis(json.path("expires_in").asLong()) - TOKEN_EXPIRY_MARGIN_MILLIS));
+	}
+
+	private static boolean isUsable(CompletableFuture<AccessToken> token) {
+		if (token == null || token.isCompletedExceptionally()) {
+			return false;
+		}
+		// a pending request is shared by all senders of the variant
+		return !token.isDone() || token.join().expiresAt > System.currentTimeMillis();
+	}
+
+	private JsonNode readResponse(HttpResponse response) throws IOException {
+		final int status = response.getStatusLine().getStatusCode();
+		final String content = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+
+		if (status != HttpStatus.SC_OK) {
+			logger.debug("ADM responded with HTTP status {}: {}", status, content);
+			throw new AdmResponseException(status, reason(content, response.getStatusLine().getReasonPhrase()),
+					retryAfter(response));
+		}
+
+		return content.isEmpty() ? mapper.createObjectNode() : mapper.readTree(content);
+	}
+
+	private String reason(String content, String defaultReason) {
+		try {
+			final JsonNode json = mapper.readTree(content);
+			// message errors carry a "reason", token errors an "error"
+			if (json != null && json.hasNonNull("reason")) {
+				return json.get("reason").asText();
+			}
+			if (json != null && json.hasNonNull("error")) {
+				return json.get("error").asText();
+			}
+		} catch (IOException e) {
+			// not a JSON error document
+		}
+		return defaultReason;
+	}
+
+	private static long retryAfter(HttpResponse response) {
+		final Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+		if (header != null) {
+			try {
+				return Long.parseLong(header.getValue().trim());
+			} catch (NumberFormatException e) {
+				// HTTP-date variant is not used by ADM
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isUnauthorized(Throwable e) {
+		final Throwable cause = unwrap(e);
+		return cause instanceof AdmResponseException && ((AdmResponseException) cause).getStatus() == HttpStatus.SC_UNAUTHORIZED;
+	}
+
+	private static Throwable unwrap(Throwable e) {
+		return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+	}
+
+	private static String tokenKey(String clientId, String clientSecret) {
+		return clientId + ':' + clientSecret;
+	}
+
+	private static String messagesEndpoint(String registrationId) {
+		try {
+			return endpoint() + String.format(MESSAGES_PATH, URLEncoder.encode(registrationId, StandardCharsets.UTF_8.name()));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String endpoint() {
+		// let's see if there is a different host we should post to (e.g. load/stress testing)
+		return ConfigurationUtils.tryGetProperty(CUSTOM_AEROGEAR_ADM_PUSH_HOST, ADM_ENDPOINT_HOST);
+	}
+
+	private static final class AccessToken {
+
+		private final String value;
+		private final long expiresAt;
+
+		AccessToken(String value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
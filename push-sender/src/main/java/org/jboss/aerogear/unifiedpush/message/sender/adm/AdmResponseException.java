@@ -0,0 +1,63 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.adm;
+
+import java.io.IOException;
+
+/**
+ * Thrown when ADM rejects a token or message request with a non-successful HTTP status.
+ */
+public class AdmResponseException extends IOException {
+
+	private static final long serialVersionUID = -3395784062713829510L;
+
+	private final int status;
+	private final String reason;
+	private final long retryAfterSeconds;
+
+	public AdmResponseException(int status, String reason) {
+		this(status, reason, -1);
+	}
+
+	public AdmResponseException(int status, String reason, long retryAfterSeconds) {
+		super(String.format("HTTP Status Code: %d (%s)", status, reason));
+		this.status = status;
+		this.reason = reason;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * @return the HTTP status returned by ADM
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the <tt>reason</tt> given by ADM (e.g. <tt>InvalidRegistrationId</tt>), or the HTTP reason phrase
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return value of the <tt>Retry-After</tt> header in seconds, or -1 if ADM did not send one
+	 */
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.apns;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * Client certificate, private key and default topic parsed from the .p12 file of an iOS variant.
+ *
+ * @see ApnsUtil#readKeyMaterial(byte[], char[])
+ */
+public class ApnsKeyMaterial {
+
+    private final X509Certificate certificate;
+    private final PrivateKey privateKey;
+    private final String defaultTopic;
+
+    public ApnsKeyMaterial(X509Certificate certificate, PrivateKey privateKey, String defaultTopic) {
+        this.certificate = certificate;
+        this.privateKey = privateKey;
+        this.defaultTopic = defaultTopic;
+    }
+
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public String getDefaultTopic() {
+        return defaultTopic;
+    }
+}
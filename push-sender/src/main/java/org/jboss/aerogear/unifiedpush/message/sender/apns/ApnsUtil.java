@@ -21,7 +21,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.security.auth.x500.X500Principal;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Enumeration;
 import java.util.regex.Matcher;
@@ -30,7 +34,7 @@ import java.util.regex.Pattern;
 public final class ApnsUtil {
 
     private static final String KEYSTORE_TYPE = "PKCS12";
-    private static final String TOPIC_PATTERN = ".*UID=([^,]+).*";
+    private static final Pattern TOPIC_PATTERN = Pattern.compile(".*UID=([^,]+).*");
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ApnsUtil.class);
 
@@ -39,25 +43,14 @@ public final class ApnsUtil {
 
     public static String readDefaultTopic(final byte[] keystore, final char[] password) {
         try {
-            final KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
-            keyStore.load(new ByteArrayInputStream(keystore), password);
+            final KeyStore keyStore = loadKeyStore(keystore, password);
 
             final Enumeration<String> aliases = keyStore.aliases();
 
             while (aliases.hasMoreElements()) {
-                final String alias = aliases.nextElement();
-                final X509Certificate certificate = (X509Certificate) keyStore.getCertificate(alias);
-                final X500Principal subjectX500Principal = certificate.getSubjectX500Principal();
-
-                final String subject = subjectX500Principal.getName();
-                if (subject != null ) {
-
-                    final Pattern pattern = Pattern.compile(TOPIC_PATTERN);
-                    final Matcher matcher = pattern.matcher(subject);
-
-                    if (matcher.matches()) {
-                        return matcher.group(1);
-                    }
+                final String topic = readTopic((X509Certificate) keyStore.getCertificate(aliases.nextElement()));
+                if (topic != null) {
+                    return topic;
                 }
             }
         } catch (Exception e) {
@@ -66,4 +59,52 @@ public final class ApnsUtil {
 
         return null; // if no topic was found we try with null
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses the .p12 file once and extracts everything needed to build APNs clients for it.
+     *
+     * @param keystore content of the .p12 file
+     * @param password passphrase of the .p12 file
+     * @return the client certificate, its private key and the default topic
+     * @throws GeneralSecurityException if the keystore does not contain a private key entry or can't be decrypted
+     * @throws IOException if the keystore content can't be read
+     */
+    public static ApnsKeyMaterial readKeyMaterial(final byte[] keystore, final char[] password) throws GeneralSecurityException, IOException {
+        final KeyStore keyStore = loadKeyStore(keystore, password);
+
+        final Enumeration<String> aliases = keyStore.aliases();
+
+        while (aliases.hasMoreElements()) {
+            final String alias = aliases.nextElement();
+
+            if (keyStore.isKeyEntry(alias)) {
+                final X509Certificate certificate = (X509Certificate) keyStore.getCertificate(alias);
+                final PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, password);
+
+                return new ApnsKeyMaterial(certificate, privateKey, readTopic(certificate));
+            }
+        }
+
+        throw new KeyStoreException("No private key entry found in the .p12 file");
+    }
+
+    private static KeyStore loadKeyStore(final byte[] keystore, final char[] password) throws GeneralSecurityException, IOException {
+        final KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+        keyStore.load(new ByteArrayInputStream(keystore), password);
+        return keyStore;
+    }
+
+    private static String readTopic(final X509Certificate certificate) {
+        final X500Principal subjectX500Principal = certificate.getSubjectX500Principal();
+
+        final String subject = subjectX500Principal.getName();
+        if (subject != null) {
+            final Matcher matcher = TOPIC_PATTERN.matcher(subject);
+
+            if (matcher.matches()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+}
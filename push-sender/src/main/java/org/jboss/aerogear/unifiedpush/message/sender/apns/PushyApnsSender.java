@@ -19,10 +19,16 @@ package org.jboss.aerogear.unifiedpush.message.sender.apns;
 import static org.jboss.aerogear.unifiedpush.system.ConfigurationUtils.tryGetIntegerProperty;
 import static org.jboss.aerogear.unifiedpush.system.ConfigurationUtils.tryGetProperty;
 
-import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 
@@ -34,10 +40,13 @@ import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.Message;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.apns.APNs;
+import org.jboss.aerogear.unifiedpush.message.cache.ApnsClientPool;
 import org.jboss.aerogear.unifiedpush.message.cache.SimpleApnsClientCache;
+import org.jboss.aerogear.unifiedpush.message.sender.DeviceTokenCleanupQueue;
 import org.jboss.aerogear.unifiedpush.message.sender.NotificationSenderCallback;
 import org.jboss.aerogear.unifiedpush.message.sender.PushNotificationSender;
 import org.jboss.aerogear.unifiedpush.service.proxy.ProxyConfiguration;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -62,15 +71,22 @@ public class PushyApnsSender implements PushNotificationSender {
 
     public static final String CUSTOM_AEROGEAR_APNS_PUSH_HOST = "custom.aerogear.apns.push.host";
     public static final String CUSTOM_AEROGEAR_APNS_PUSH_PORT = "custom.aerogear.apns.push.port";
+    // number of HTTP/2 connections opened to APNs per iOS variant
+    public static final String PROP_CONNECTIONS_PER_VARIANT = "aerogear.ios.connections";
     private static final String customAerogearApnsPushHost = tryGetProperty(CUSTOM_AEROGEAR_APNS_PUSH_HOST);
     private static final Integer customAerogearApnsPushPort = tryGetIntegerProperty(CUSTOM_AEROGEAR_APNS_PUSH_PORT);
-
-    private final ConcurrentSkipListSet<String> invalidTokens = new ConcurrentSkipListSet<>();
+    // rejection reasons for which sending the notification again later may succeed
+    private static final Set<String> RETRIABLE_REJECTION_REASONS = new HashSet<>(Arrays.asList(
+            "TooManyRequests", "ServiceUnavailable", "InternalServerError", "Shutdown"));
 
     @Inject
     private SimpleApnsClientCache simpleApnsClientCache;
     @Inject
+    private DeviceTokenCleanupQueue tokenCleanupQueue;
+    @Inject
     private WorkQueueProcessor<iOSVariantUpdateEvent> variantUpdateEventEvent;
+    @Inject
+    private ConfigurationEnvironment config;
 
     @Override
     public void sendPushMessage(final Variant variant, final Collection<String> tokens, final UnifiedPushMessage pushMessage, final String pushMessageInformationId, final NotificationSenderCallback senderCallback) {
@@ -92,10 +108,10 @@ public class PushyApnsSender implements PushNotificationSender {
             }
         }
 
-        final ApnsClient apnsClient;
+        final ApnsClientPool apnsClientPool;
         {
             try {
-                apnsClient = receiveApnsConnection(iOSVariant);
+                apnsClientPool = receiveApnsConnections(iOSVariant);
             } catch (IllegalArgumentException iae) {
                 logger.error(iae.getMessage(), iae);
                 senderCallback.onError(String.format("Unable to connect to APNs (%s))", iae.getMessage()));
@@ -103,24 +119,38 @@ public class PushyApnsSender implements PushNotificationSender {
             }
         }
 
-        if (apnsClient.isConnected()) {
-
-            // we have managed to connect and will send tokens ;-)
-            senderCallback.onSuccess();
+        if (apnsClientPool.isConnected()) {
 
-            final String defaultApnsTopic = ApnsUtil.readDefaultTopic(iOSVariant.getCertificate(), iOSVariant.getPassphrase().toCharArray());
+            // we have managed to connect and will send tokens ;-), the callback is invoked once all responses are in
+            final String defaultApnsTopic = apnsClientPool.getDefaultTopic();
             logger.debug("sending payload for all tokens for {} to APNs ({})", iOSVariant.getVariantID(), defaultApnsTopic);
 
+            // invalid tokens of the batch are removed and transient failures retried once all responses are in
+            final AtomicInteger outstanding = new AtomicInteger(tokens.size());
+            final AtomicInteger invalid = new AtomicInteger();
+            final Queue<String> retriable = new ConcurrentLinkedQueue<>();
 
             tokens.forEach(token -> {
+                final ApnsClient apnsClient = apnsClientPool.next();
+                if (apnsClient == null) {
+                    logger.warn("All APNs connections for {} were lost, skipping token {}", iOSVariant.getVariantID(), token);
+                    retriable.add(token);
+                    completeToken(outstanding, invalid, retriable, senderCallback);
+                    return;
+                }
+
                 final SimpleApnsPushNotification pushNotification = new SimpleApnsPushNotification(token, defaultApnsTopic, payload);
                 final Future<PushNotificationResponse<SimpleApnsPushNotification>> notificationSendFuture = apnsClient.sendNotification(pushNotification);
 
                 notificationSendFuture.addListener(future -> {
 
-                    if (future.isSuccess()) {
-                        handlePushNotificationResponsePerToken(notificationSendFuture.get());
+                    if (!future.isSuccess()) {
+                        logger.debug("Sending to token {} failed", token, future.cause());
+                        retriable.add(token);
+                    } else if (handlePushNotificationResponsePerToken(iOSVariant.getVariantID(), notificationSendFuture.get(), retriable)) {
+                        invalid.incrementAndGet();
                     }
+                    completeToken(outstanding, invalid, retriable, senderCallback);
                 });
             });
 
@@ -131,7 +161,24 @@ public class PushyApnsSender implements PushNotificationSender {
         }
     }
 
-    private void handlePushNotificationResponsePerToken(final PushNotificationResponse<SimpleApnsPushNotification> pushNotificationResponse ) {
+    private void completeToken(final AtomicInteger outstanding, final AtomicInteger invalid, final Queue<String> retriable, final NotificationSenderCallback senderCallback) {
+        if (outstanding.decrementAndGet() > 0) {
+            return;
+        }
+        if (invalid.get() > 0) {
+            tokenCleanupQueue.requestFlush();
+        }
+        if (retriable.isEmpty()) {
+            senderCallback.onSuccess();
+        } else {
+            senderCallback.onRetriableError(String.format("APNs did not accept %d notifications", retriable.size()), new ArrayList<>(retriable), -1);
+        }
+    }
+
+    /**
+     * @return true if the token has been queued for removal
+     */
+    private boolean handlePushNotificationResponsePerToken(final String variantID, final PushNotificationResponse<SimpleApnsPushNotification> pushNotificationResponse, final Queue<String> retriable) {
 
         final String deviceToken = pushNotificationResponse.getPushNotification().getToken();
 
@@ -145,12 +192,18 @@ public class PushyApnsSender implements PushNotificationSender {
             if ((pushNotificationResponse.getTokenInvalidationTimestamp() != null) || ("BadDeviceToken".equals(rejectReason))) {
                 logger.info(rejectReason + ", removing token: " + deviceToken);
 
-                invalidTokens.add(deviceToken);
+                tokenCleanupQueue.remove(variantID, deviceToken);
+                return true;
+            }
+            if (RETRIABLE_REJECTION_REASONS.contains(rejectReason)) {
+                retriable.add(deviceToken);
             }
         }
+        return false;
     }
 
-    private String createPushPayload(final Message message, final String pushMessageInformationId) {
+    // package-private for the payload benchmark
+    static String createPushPayload(final Message message, final String pushMessageInformationId) {
         final ApnsPayloadBuilder payloadBuilder = new ApnsPayloadBuilder();
         final APNs apns = message.getApns();
 
@@ -179,51 +232,34 @@ public class PushyApnsSender implements PushNotificationSender {
         return payloadBuilder.buildWithDefaultMaximumLength();
     }
 
-    private ApnsClient receiveApnsConnection(final iOSVariant iOSVariant) {
-        return simpleApnsClientCache.getApnsClientForVariant(iOSVariant, () -> {
-            final ApnsClient apnsClient = buildApnsClient(iOSVariant);
+    private ApnsClientPool receiveApnsConnections(final iOSVariant iOSVariant) {
+        return simpleApnsClientCache.getApnsClientPoolForVariant(iOSVariant, () -> {
+            // the .p12 file is parsed just once for all the connections of the variant
+            final ApnsKeyMaterial keyMaterial = readKeyMaterial(iOSVariant);
+            final int connections = Math.max(1, config.getProperty(PROP_CONNECTIONS_PER_VARIANT, 2));
 
-            // connect and wait:
-            logger.debug("establishing the connection for {}", iOSVariant.getVariantID());
-            connectToDestinations(iOSVariant, apnsClient);
+            final List<ApnsClient> clients = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                final ApnsClient apnsClient = buildApnsClient(keyMaterial);
 
-            // APNS client has auto-reconnect, but let's log when that happens
-            apnsClient.getReconnectionFuture().addListener(future -> logger.trace("Reconnecting to APNs"));
-            return apnsClient;
+                // connect and wait:
+                logger.debug("establishing connection #{} for {}", i, iOSVariant.getVariantID());
+                connectToDestinations(iOSVariant, apnsClient);
+
+                // APNS client has auto-reconnect, but let's log when that happens
+                apnsClient.getReconnectionFuture().addListener(future -> logger.trace("Reconnecting to APNs"));
+                clients.add(apnsClient);
+            }
+            return new ApnsClientPool(clients, keyMaterial.getDefaultTopic());
         });
     }
 
-    private ApnsClient buildApnsClient(final iOSVariant iOSVariant) {
+    private ApnsKeyMaterial readKeyMaterial(final iOSVariant iOSVariant) {
 
         // this check should not be needed, but you never know:
         if (iOSVariant.getCertificate() != null && iOSVariant.getPassphrase() != null) {
-
-            // add the certificate:
             try {
-                final ByteArrayInputStream stream = new ByteArrayInputStream(iOSVariant.getCertificate());
-
-                final ApnsClientBuilder builder = new ApnsClientBuilder();
-                builder.setClientCredentials(stream, iOSVariant.getPassphrase());
-
-                if (ProxyConfiguration.hasHttpProxyConfig()) {
-                    if (ProxyConfiguration.hasBasicAuth()) {
-                        String user =  ProxyConfiguration.getProxyUser();
-                        String pass = ProxyConfiguration.getProxyPass();
-                        builder.setProxyHandlerFactory(new HttpProxyHandlerFactory(ProxyConfiguration.proxyAddress(), user, pass));
-                    } else {
-                        builder.setProxyHandlerFactory(new HttpProxyHandlerFactory(ProxyConfiguration.proxyAddress()));
-                    }
-
-                } else if (ProxyConfiguration.hasSocksProxyConfig()) {
-                    builder.setProxyHandlerFactory(new Socks5ProxyHandlerFactory(ProxyConfiguration.socks()));
-                }
-
-                final ApnsClient apnsClient = builder.build();
-
-                // release the stream
-                stream.close();
-
-                return apnsClient;
+                return ApnsUtil.readKeyMaterial(iOSVariant.getCertificate(), iOSVariant.getPassphrase().toCharArray());
             } catch (Exception e) {
                 logger.error("Error reading certificate", e);
                 // will be thrown below
@@ -233,9 +269,37 @@ public class PushyApnsSender implements PushNotificationSender {
         throw new IllegalArgumentException("Not able to construct APNS client");
     }
 
+    private ApnsClient buildApnsClient(final ApnsKeyMaterial keyMaterial) {
+
+        // add the certificate:
+        try {
+            final ApnsClientBuilder builder = new ApnsClientBuilder();
+            builder.setClientCredentials(keyMaterial.getCertificate(), keyMaterial.getPrivateKey(), null);
+
+            if (ProxyConfiguration.hasHttpProxyConfig()) {
+                if (ProxyConfiguration.hasBasicAuth()) {
+                    String user =  ProxyConfiguration.getProxyUser();
+                    String pass = ProxyConfiguration.getProxyPass();
+                    builder.setProxyHandlerFactory(new HttpProxyHandlerFactory(ProxyConfiguration.proxyAddress(), user, pass));
+                } else {
+                    builder.setProxyHandlerFactory(new HttpProxyHandlerFactory(ProxyConfiguration.proxyAddress()));
+                }
+
+            } else if (ProxyConfiguration.hasSocksProxyConfig()) {
+                builder.setProxyHandlerFactory(new Socks5ProxyHandlerFactory(ProxyConfiguration.socks()));
+            }
+
+            return builder.build();
+        } catch (Exception e) {
+            logger.error("Error building APNs client", e);
+        }
+        // indicating an incomplete service
+        throw new IllegalArgumentException("Not able to construct APNS client");
+    }
+
 
 
-    private synchronized void connectToDestinations(final iOSVariant iOSVariant, final ApnsClient apnsClient) {
+    private void connectToDestinations(final iOSVariant iOSVariant, final ApnsClient apnsClient) {
 
         String apnsHost;
         int apnsPort = ApnsClient.DEFAULT_APNS_PORT;
@@ -0,0 +1,164 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.fcm;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.jboss.aerogear.unifiedpush.message.sender.AbstractAsyncHttpClient;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.android.gcm.server.MulticastResult;
+import com.google.android.gcm.server.Result;
+
+/**
+ * Asynchronous client of the FCM HTTP API.
+ *
+ * One client is shared by all Android variants: connections to the FCM host are pooled and kept alive between batches,
+ * so a batch no longer pays the connection and TLS setup. Every request to FCM counts as one request in flight.
+ */
+public class FCMHttpClient extends AbstractAsyncHttpClient {
+
+	public static final String CUSTOM_AEROGEAR_FCM_PUSH_HOST = "custom.aerogear.fcm.push.host";
+
+	public static final String FCM_ENDPOINT_HOST = "https://fcm.googleapis.com/fcm/send";
+
+	private static final String JSON_REGISTRATION_IDS = "registration_ids";
+	private static final String JSON_TO = "to";
+
+	private final Logger logger = LoggerFactory.getLogger(FCMHttpClient.class);
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * @param maxConnections maximum number of pooled connections to the FCM host
+	 * @param maxInFlight maximum number of requests submitted to FCM and not yet completed
+	 * @param timeoutInMillis connect and socket timeout
+	 */
+	public FCMHttpClient(int maxConnections, int maxInFlight, int timeoutInMillis) {
+		super("FCM", maxConnections, maxConnections, maxInFlight, timeoutInMillis);
+	}
+
+	/**
+	 * Sends the payload to a batch of registration IDs.
+	 *
+	 * @param apiKey server key of the Android variant
+	 * @param payload message fields (<tt>data</tt>, <tt>priority</tt>, ...) without the recipients
+	 * @param registrationIds the recipients
+	 * @return future completed with the per-token results, in order of the given registration IDs
+	 */
+	public CompletableFuture<MulticastResult> send(String apiKey, Map<String, Object> payload, List<String> registrationIds) {
+		final Map<String, Object> body = new LinkedHashMap<>(payload);
+		body.put(JSON_REGISTRATION_IDS, registrationIds);
+
+		return post(apiKey, body).thenApply(FCMHttpClient::toMulticastResult);
+	}
+
+	/**
+	 * Sends the payload to a single topic.
+	 *
+	 * @param apiKey server key of the Android variant
+	 * @param payload message fields (<tt>data</tt>, <tt>priority</tt>, ...) without the recipients
+	 * @param topic the topic, including the <tt>/topics/</tt> prefix
+	 * @return future completed with the result of the topic request
+	 */
+	public CompletableFuture<Result> sendToTopic(String apiKey, Map<String, Object> payload, String topic) {
+		final Map<String, Object> body = new LinkedHashMap<>(payload);
+		body.put(JSON_TO, topic);
+
+		return post(apiKey, body).thenApply(FCMHttpClient::toResult);
+	}
+
+	private CompletableFuture<JsonNode> post(String apiKey, Map<String, Object> body) {
+		final HttpPost post = new HttpPost(endpoint());
+		post.setHeader(HttpHeaders.AUTHORIZATION, "key=" + apiKey);
+		try {
+			post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON));
+		} catch (JsonProcessingException e) {
+			return failed(e);
+		}
+
+		return limit(() -> execute(post, this::readResponse));
+	}
+
+	private JsonNode readResponse(HttpResponse response) throws IOException {
+		final int status = response.getStatusLine().getStatusCode();
+		final String content = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+
+		if (status != HttpStatus.SC_OK) {
+			logger.debug("FCM responded with HTTP status {}: {}", status, content);
+			throw new FCMResponseException(status, response.getStatusLine().getReasonPhrase(), retryAfter(response));
+		}
+
+		return mapper.readTree(content);
+	}
+
+	private static long retryAfter(HttpResponse response) {
+		final Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+		if (header != null) {
+			try {
+				return Long.parseLong(header.getValue().trim());
+			} catch (NumberFormatException e) {
+				// HTTP-date variant is not used by FCM
+			}
+		}
+		return -1;
+	}
+
+	private static MulticastResult toMulticastResult(JsonNode json) {
+		final MulticastResult.Builder builder = new MulticastResult.Builder(json.path("success").asInt(),
+				json.path("failure").asInt(), json.path("canonical_ids").asInt(), json.path("multicast_id").asLong());
+
+		for (JsonNode result : json.path("results")) {
+			builder.addResult(toResult(result));
+		}
+		return builder.build();
+	}
+
+	private static Result toResult(JsonNode json) {
+		return new Result.Builder()
+				.messageId(text(json, "message_id"))
+				.canonicalRegistrationId(text(json, "registration_id"))
+				.errorCode(text(json, "error"))
+				.build();
+	}
+
+	private static String text(JsonNode json, String field) {
+		return json.hasNonNull(field) ? json.get(field).asText() : null;
+	}
+
+	private static String endpoint() {
+		// let's see if there is a different URL we should post to (e.g. load/stress testing)
+		return ConfigurationUtils.tryGetProperty(CUSTOM_AEROGEAR_FCM_PUSH_HOST, FCM_ENDPOINT_HOST);
+	}
+}
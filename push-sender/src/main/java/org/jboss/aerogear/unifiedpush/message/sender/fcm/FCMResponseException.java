@@ -0,0 +1,50 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.fcm;
+
+import java.io.IOException;
+
+/**
+ * Thrown when FCM rejects the whole request with a non-successful HTTP status.
+ */
+public class FCMResponseException extends IOException {
+
+	private static final long serialVersionUID = 2650581867524393874L;
+
+	private final int status;
+	private final long retryAfterSeconds;
+
+	public FCMResponseException(int status, String description, long retryAfterSeconds) {
+		super(String.format("HTTP Status Code: %d (%s)", status, description));
+		this.status = status;
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * @return the HTTP status returned by FCM
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return value of the <tt>Retry-After</tt> header in seconds, or -1 if FCM did not send one
+	 */
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.simplepush;
+
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Produces the shared {@link SimplePushHttpClient}.
+ */
+@Configuration
+public class SimplePushClientConfig {
+
+	public static final String PROP_MAX_CONNECTIONS_PER_HOST = "aerogear.simplepush.maxConnectionsPerHost";
+	public static final String PROP_MAX_IN_FLIGHT = "aerogear.simplepush.maxInFlight";
+	public static final String PROP_TIMEOUT = "aerogear.simplepush.timeout";
+
+	@Autowired
+	private ConfigurationEnvironment config;
+
+	@Bean(destroyMethod = "close")
+	public SimplePushHttpClient getSimplePushHttpClient() {
+		return new SimplePushHttpClient(
+				config.getProperty(PROP_MAX_CONNECTIONS_PER_HOST, 20),
+				config.getProperty(PROP_MAX_IN_FLIGHT, 200),
+				config.getProperty(PROP_TIMEOUT, 10000));
+	}
+}
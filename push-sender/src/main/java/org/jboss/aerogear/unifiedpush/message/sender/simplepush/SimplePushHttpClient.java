@@ -0,0 +1,81 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.simplepush;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.jboss.aerogear.unifiedpush.message.sender.AbstractAsyncHttpClient;
+
+/**
+ * Asynchronous client for the update URLs of SimplePush servers.
+ *
+ * One client is shared by all SimplePush variants. Connections are pooled per host and kept alive between batches,
+ * every update counts as one request in flight.
+ */
+public class SimplePushHttpClient extends AbstractAsyncHttpClient {
+
+	private final int maxConnectionsPerHost;
+
+	/**
+	 * @param maxConnectionsPerHost maximum number of pooled connections to a single SimplePush server
+	 * @param maxInFlight maximum number of updates submitted and not yet completed
+	 * @param timeoutInMillis connect and socket timeout
+	 */
+	public SimplePushHttpClient(int maxConnectionsPerHost, int maxInFlight, int timeoutInMillis) {
+		super("SimplePush", maxInFlight, maxConnectionsPerHost, maxInFlight, timeoutInMillis);
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * @return maximum number of pooled connections to a single SimplePush server
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * PUTs the version payload to the update URL of a SimplePush channel.
+	 *
+	 * @param url update URL of the channel
+	 * @param body the payload, may be empty
+	 * @return future completed with the HTTP status of the SimplePush server
+	 */
+	public CompletableFuture<Integer> put(String url, String body) {
+		final HttpPut put;
+		try {
+			if (url == null) {
+				throw new IllegalArgumentException("SimplePush Update URL cannot be null");
+			}
+			put = new HttpPut(url);
+		} catch (IllegalArgumentException e) {
+			return failed(e);
+		}
+		put.setHeader(HttpHeaders.ACCEPT, "*/*");
+		put.setEntity(new StringEntity(body, ContentType.APPLICATION_FORM_URLENCODED));
+
+		return limit(() -> execute(put, response -> {
+			// consume the body, so the connection goes back to the pool
+			EntityUtils.consumeQuietly(response.getEntity());
+			return response.getStatusLine().getStatusCode();
+		}));
+	}
+}
@@ -0,0 +1,336 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.throttle;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.NotificationDispatcher;
+import org.jboss.aerogear.unifiedpush.message.configuration.SenderConfiguration;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+/**
+ * Schedules token batches for {@link NotificationDispatcher}, so that a large send of one variant does not delay the
+ * messages of all other variants.
+ *
+ * Every variant has its own queue. The queues are served by deficit round robin, every round a variant may send up to
+ * {@link SenderConfiguration#batchSize()} tokens, and a variant exceeding {@link SenderConfiguration#tokensPerSecond()}
+ * is skipped until its {@link TokenBucket} refilled. Every push network is dispatched by its own thread, as senders may
+ * block while their network is busy, e.g. waiting for a connection to a SimplePush server. A blocked sender then holds
+ * back the variants of its own network only.
+ *
+ * {@link #submit(MessageHolderWithTokens)} never blocks, so that a throttled variant does not hold up the batches of the
+ * other variants. Producers check {@link #hasCapacity()} and {@link #hasCapacity(Variant)} before they queue the next
+ * batch, at most <tt>aerogear.sender.dispatch.max_pending</tt> batches in total and
+ * <tt>aerogear.sender.dispatch.max_pending_per_variant</tt> batches per variant are meant to be waiting. The queue of a
+ * variant is dropped once it is empty and its rate limit refilled.
+ */
+@Service
+public class FairDispatchScheduler {
+
+	public static final String PROP_MAX_PENDING = "aerogear.sender.dispatch.max_pending";
+	public static final String PROP_MAX_PENDING_PER_VARIANT = "aerogear.sender.dispatch.max_pending_per_variant";
+
+	private final Logger logger = LoggerFactory.getLogger(FairDispatchScheduler.class);
+
+	@Inject
+	private ApplicationContext context;
+
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private final Map<VariantType, SenderConfiguration> configurations = new EnumMap<>(VariantType.class);
+	private final Map<VariantType, Lane> lanes = new EnumMap<>(VariantType.class);
+
+	private final AtomicInteger pending = new AtomicInteger();
+	private int maxPending;
+	private int maxPendingPerVariant;
+
+	public FairDispatchScheduler() {
+		for (VariantType type : VariantType.values()) {
+			lanes.put(type, new Lane(type));
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		for (VariantType type : VariantType.values()) {
+			configurations.put(type, BeanFactoryAnnotationUtils.qualifiedBeanOfType(
+					context.getAutowireCapableBeanFactory(), SenderConfiguration.class, type.name()));
+		}
+		maxPending = config.getProperty(PROP_MAX_PENDING, 1024);
+		maxPendingPerVariant = config.getProperty(PROP_MAX_PENDING_PER_VARIANT, 64);
+	}
+
+	/**
+	 * Starts dispatching the submitted batches, one thread per push network.
+	 *
+	 * @param dispatcher sends a batch to its push network
+	 */
+	public void start(Consumer<MessageHolderWithTokens> dispatcher) {
+		for (Lane lane : lanes.values()) {
+			lane.start(dispatcher);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		for (Lane lane : lanes.values()) {
+			lane.stop();
+		}
+		if (pending.get() > 0) {
+			logger.warn("Dropping {} pending token batches on shutdown", pending.get());
+		}
+	}
+
+	/**
+	 * Queues a batch for its variant, without waiting for capacity.
+	 *
+	 * @param msg the batch to dispatch
+	 */
+	public void submit(MessageHolderWithTokens msg) {
+		pending.incrementAndGet();
+		lanes.get(msg.getVariant().getType()).submit(msg);
+	}
+
+	/**
+	 * @return true if less than <tt>aerogear.sender.dispatch.max_pending</tt> batches are waiting
+	 */
+	public boolean hasCapacity() {
+		return pending.get() < maxPending;
+	}
+
+	/**
+	 * @param variant the variant to queue a batch for
+	 * @return true if less than <tt>aerogear.sender.dispatch.max_pending_per_variant</tt> batches of the variant are
+	 *         waiting
+	 */
+	public boolean hasCapacity(Variant variant) {
+		return lanes.get(variant.getType()).pendingCount(variant) < maxPendingPerVariant;
+	}
+
+	/**
+	 * @return number of batches waiting to be dispatched
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	/**
+	 * Queues of the variants of a single push network and the thread dispatching them.
+	 */
+	private class Lane {
+		private final VariantType type;
+
+		// all fields below are guarded by lock
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition changed = lock.newCondition();
+		private final Map<String, VariantQueue> queues = new HashMap<>();
+		private final Deque<VariantQueue> active = new ArrayDeque<>();
+		// empty queues whose rate limit has not refilled yet
+		private final Set<VariantQueue> idle = new LinkedHashSet<>();
+
+		private volatile Thread thread;
+
+		Lane(VariantType type) {
+			this.type = type;
+		}
+
+		void start(Consumer<MessageHolderWithTokens> dispatcher) {
+			thread = new Thread(() -> dispatch(dispatcher), "notification-dispatch-" + type.name().toLowerCase());
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() {
+			final Thread current = thread;
+			thread = null;
+			if (current != null) {
+				current.interrupt();
+			}
+		}
+
+		void submit(MessageHolderWithTokens msg) {
+			lock.lock();
+			try {
+				final VariantQueue queue = queues.computeIfAbsent(msg.getVariant().getVariantID(),
+						id -> new VariantQueue(id, configurations.get(type), System.nanoTime()));
+				queue.batches.addLast(msg);
+				if (!queue.active) {
+					queue.active = true;
+					idle.remove(queue);
+					active.addLast(queue);
+				}
+				changed.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int pendingCount(Variant variant) {
+			lock.lock();
+			try {
+				final VariantQueue queue = queues.get(variant.getVariantID());
+				return queue == null ? 0 : queue.batches.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void dispatch(Consumer<MessageHolderWithTokens> dispatcher) {
+			while (thread == Thread.currentThread()) {
+				final MessageHolderWithTokens next;
+				try {
+					next = take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				pending.decrementAndGet();
+				try {
+					dispatcher.accept(next);
+				} catch (RuntimeException e) {
+					logger.error("Unable to dispatch batch #{} for variant {}", next.getSerialId(),
+							next.getVariant().getVariantID(), e);
+				}
+			}
+		}
+
+		/**
+		 * Waits for the next batch that may be sent, visiting the active variants in round robin order.
+		 */
+		private MessageHolderWithTokens take() throws InterruptedException {
+			lock.lock();
+			try {
+				while (true) {
+					final long now = System.nanoTime();
+					long wait = removeIdle(now);
+
+					if (active.isEmpty()) {
+						if (wait == Long.MAX_VALUE) {
+							changed.await();
+						} else {
+							changed.awaitNanos(wait);
+						}
+						continue;
+					}
+
+					for (int i = active.size(); i > 0; i--) {
+						final VariantQueue queue = active.peekFirst();
+
+						final long delay = queue.bucket.delayNanos(now);
+						if (delay > 0) {
+							wait = Math.min(wait, delay);
+							active.addLast(active.pollFirst());
+							continue;
+						}
+
+						final int size = queue.batches.peekFirst().getDeviceTokens().size();
+						if (queue.deficit < size) {
+							queue.deficit += queue.quantum;
+						}
+						if (queue.deficit < size) {
+							// batch larger than the quantum, it is sent once enough rounds passed
+							wait = 0;
+							active.addLast(active.pollFirst());
+							continue;
+						}
+
+						final MessageHolderWithTokens msg = queue.batches.pollFirst();
+						queue.deficit -= size;
+						queue.bucket.consume(size);
+						if (queue.batches.isEmpty()) {
+							queue.active = false;
+							queue.deficit = 0;
+							active.pollFirst();
+							idle.add(queue);
+						} else if (queue.deficit < queue.batches.peekFirst().getDeviceTokens().size()) {
+							active.addLast(active.pollFirst());
+						}
+						return msg;
+					}
+
+					if (wait > 0) {
+						changed.awaitNanos(wait);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Drops the empty queues whose rate limit refilled, a new queue starts with the same full bucket.
+		 *
+		 * @return nanoseconds until the next empty queue may be dropped, {@link Long#MAX_VALUE} if there is none
+		 */
+		private long removeIdle(long now) {
+			long wait = Long.MAX_VALUE;
+			for (Iterator<VariantQueue> it = idle.iterator(); it.hasNext();) {
+				final VariantQueue queue = it.next();
+				final long delay = queue.bucket.refillDelayNanos(now);
+				if (delay == 0) {
+					it.remove();
+					queues.remove(queue.variantID);
+				} else {
+					wait = Math.min(wait, delay);
+				}
+			}
+			return wait;
+		}
+	}
+
+	/**
+	 * Pending batches and rate limit state of a variant.
+	 */
+	private static class VariantQueue {
+		private final String variantID;
+		private final Deque<MessageHolderWithTokens> batches = new ArrayDeque<>();
+		private final TokenBucket bucket;
+		private final int quantum;
+		private long deficit;
+		private boolean active;
+
+		VariantQueue(String variantID, SenderConfiguration configuration, long now) {
+			this.variantID = variantID;
+			this.bucket = new TokenBucket(configuration.tokensPerSecond(), now);
+			this.quantum = Math.max(configuration.batchSize(), 1);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.throttle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the number of device tokens sent per second, holding at most one second worth of tokens.
+ *
+ * A batch is admitted as soon as the bucket is not empty and may overdraw it, so that batches larger than the rate are
+ * delayed instead of blocked forever. Not thread-safe, callers synchronize.
+ */
+class TokenBucket {
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final int tokensPerSecond;
+	private double available;
+	private long lastRefill;
+
+	/**
+	 * @param tokensPerSecond refill rate, 0 means unlimited
+	 * @param now current {@link System#nanoTime()}
+	 */
+	TokenBucket(int tokensPerSecond, long now) {
+		this.tokensPerSecond = tokensPerSecond;
+		this.available = tokensPerSecond;
+		this.lastRefill = now;
+	}
+
+	/**
+	 * @param now current {@link System#nanoTime()}
+	 * @return nanoseconds until a batch is admitted, 0 if it is admitted now
+	 */
+	long delayNanos(long now) {
+		if (tokensPerSecond <= 0) {
+			return 0;
+		}
+		refill(now);
+		return available >= 1 ? 0 : (long) Math.ceil((1 - available) * NANOS_PER_SECOND / tokensPerSecond);
+	}
+
+	/**
+	 * @param now current {@link System#nanoTime()}
+	 * @return nanoseconds until the bucket is full again, 0 if it is full now
+	 */
+	long refillDelayNanos(long now) {
+		if (tokensPerSecond <= 0) {
+			return 0;
+		}
+		refill(now);
+		return available >= tokensPerSecond ? 0 : (long) Math.ceil((tokensPerSecond - available) * NANOS_PER_SECOND / tokensPerSecond);
+	}
+
+	/**
+	 * @param tokens number of tokens taken from the bucket
+	 */
+	void consume(int tokens) {
+		if (tokensPerSecond > 0) {
+			available -= tokens;
+		}
+	}
+
+	private void refill(long now) {
+		final long elapsed = now - lastRefill;
+		if (elapsed > 0) {
+			available = Math.min(tokensPerSecond, available + (double) elapsed * tokensPerSecond / NANOS_PER_SECOND);
+			lastRefill = now;
+		}
+	}
+}
@@ -20,6 +20,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -29,14 +33,19 @@ import org.jboss.aerogear.unifiedpush.api.VariantType;
 import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
 import org.jboss.aerogear.unifiedpush.message.Criteria;
 import org.jboss.aerogear.unifiedpush.message.InternalUnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.NotificationDispatcher;
 import org.jboss.aerogear.unifiedpush.message.NotificationRouter;
 import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
 import org.jboss.aerogear.unifiedpush.message.configuration.SenderConfiguration;
 import org.jboss.aerogear.unifiedpush.message.event.AllBatchesLoadedEvent;
 import org.jboss.aerogear.unifiedpush.message.event.BatchLoadedEvent;
+import org.jboss.aerogear.unifiedpush.message.exception.SenderResourceNotAvailableException;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
 import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.message.throttle.FairDispatchScheduler;
+import org.jboss.aerogear.unifiedpush.message.token.recovery.TokenBatchRecoveryService;
 import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +53,7 @@ import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import reactor.core.publisher.TopicProcessor;
@@ -58,13 +68,35 @@ import reactor.core.publisher.WorkQueueProcessor;
  *
  * {@link TokenLoader} uses result stream with configured fetch size so that it
  * can split database results into several batches.
+ *
+ * Queueing of batches is back-pressured: when the dispatch queue is full, token
+ * loading is paused until {@link NotificationDispatcher} consumers free up some
+ * capacity, at most for <tt>aerogear.sender.dispatch.max_wait_ms</tt>. The
+ * pause happens before the transaction is started, so that no database cursor
+ * is held while waiting. When the dispatch queue or a single variant runs out
+ * of capacity while tokens are loaded, or the pause times out, loading of that
+ * variant is stopped and continued <tt>aerogear.sender.dispatch.defer_ms</tt>
+ * later, so that the other variants keep loading. The position of a deferred
+ * variant is journaled by {@link TokenBatchRecoveryService} until loading is
+ * resumed.
  */
 @Service
 @Transactional
 public class TokenLoader {
 
+	public static final String PROP_DISPATCH_MAX_WAIT = "aerogear.sender.dispatch.max_wait_ms";
+	public static final String PROP_DISPATCH_DEFER = "aerogear.sender.dispatch.defer_ms";
+
+	private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
 	private final Logger logger = LoggerFactory.getLogger(TokenLoader.class);
 
+	private final AtomicInteger stalledProducers = new AtomicInteger();
+	private final AtomicLong stalls = new AtomicLong();
+	private long dispatchMaxWaitNanos;
+	private long deferMillis;
+
 	@Inject
 	private ClientInstallationService clientInstallationService;
 
@@ -78,9 +110,17 @@ public class TokenLoader {
 	private ApplicationContext context;
 	@Inject
 	private TokenLoaderWrapper wrapper;
+	@Inject
+	private TokenBatchRecoveryService recoveryService;
+	@Inject
+	private ConfigurationEnvironment config;
+	@Inject
+	private FairDispatchScheduler dispatchScheduler;
 
 	@PostConstruct
 	public void subscribe() {
+		dispatchMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.getProperty(PROP_DISPATCH_MAX_WAIT, 30000));
+		deferMillis = config.getProperty(PROP_DISPATCH_DEFER, 500);
 		nextBatchEvent.repeat().subscribe(s -> wrapper.loadAndQueueTokenBatch(s));
 	}
 
@@ -100,6 +140,10 @@ public class TokenLoader {
 	 * translated to JMS event). When all batches were loaded for the given
 	 * variant, it fires {@link AllBatchesLoadedEvent}.
 	 *
+	 * When loading or queueing of tokens fails, the position of the last
+	 * queued batch is handed over to {@link TokenBatchRecoveryService} which
+	 * replays the request for the failed variant later.
+	 *
 	 * @param msg
 	 *            holder object containing the payload and info about the
 	 */
@@ -129,9 +173,20 @@ public class TokenLoader {
 
 		for (Variant variant : variants) {
 
+			// position of the last batch queued for this variant, used for recovery
+			int lastQueuedSerialId = serialId;
+			String lastQueuedToken = lastTokenFromPreviousBatch;
+
+			ResultsStream<String> tokenStream = null;
 			try {
 
-				ResultsStream<String> tokenStream;
+				if (!hasDispatchCapacity(variant)) {
+					// nothing is loaded, so that no cursor is held while dispatching catches up; the deferred
+					// position replaces the journaled one this request was replayed from, if any
+					defer(msg, variant, lastQueuedSerialId, lastQueuedToken);
+					continue;
+				}
+
 				final Set<String> topics = new TreeSet<>();
 				final boolean isAndroid = variantType == VariantType.ANDROID;
 
@@ -174,8 +229,14 @@ public class TokenLoader {
 
 				String lastTokenInBatch = null;
 				int tokensLoaded = 0;
+				boolean deferred = false;
 				for (int batchNumber = 0; batchNumber < batchesToLoad; batchNumber++) {
 
+					if (!hasDispatchCapacity(variant)) {
+						deferred = true;
+						break;
+					}
+
 					// increasing the serial ID,
 					// to make sure it's properly read from all block
 					++serialId;
@@ -199,11 +260,12 @@ public class TokenLoader {
 								variant, tokens, serialId))) {
 							logger.info(String.format("Loaded batch #%s, containing %d tokens, for %s variant (%s)",
 									serialId, tokens.size(), variant.getType().getTypeName(), variant.getVariantID()));
+							lastQueuedSerialId = serialId;
+							lastQueuedToken = lastTokenInBatch;
 						} else {
-							logger.debug(String.format(
-									"Failing token loading transaction for batch token #%s for %s variant (%s), since previous batch failed",
+							throw new SenderResourceNotAvailableException(String.format(
+									"Unable to queue batch token #%s for %s variant (%s)",
 									serialId, variant.getType().getTypeName(), variant.getVariantID()));
-							return;
 						}
 					} else {
 						logger.debug("Ending batch processing: No more tokens for batch #{} available", serialId);
@@ -211,8 +273,14 @@ public class TokenLoader {
 					}
 				}
 
-				// should we trigger next transaction batch ?
+				if (deferred) {
+					// the dispatch queue or the variant has too many batches waiting, continue after the last queued batch
+					defer(msg, variant, lastQueuedSerialId, lastQueuedToken);
+					continue;
+				}
+
 				if (tokensLoaded >= configuration.tokensToLoad()) {
+					// should we trigger next transaction batch ?
 					logger.debug(String.format("Ending token loading transaction for %s variant (%s)",
 							variant.getType().getTypeName(), variant.getVariantID()));
 					nextBatchEvent.onNext(new MessageHolderWithVariants(msg.getPushMessageInformation(), message,
@@ -236,18 +304,50 @@ public class TokenLoader {
 						}
 					}
 				}
+
+				recoveryService.acknowledge(msg, variant);
 			} catch (Throwable e) {
 				logger.info("Failed to load batch of tokens for message! {}", msg);
 				logger.error("Failed to load batch of tokens", e);
-				// TODO - Implement a recovery mechanism, message request is
-				// lost.
+				recoveryService.recover(msg, variant, lastQueuedSerialId, lastQueuedToken);
+			} finally {
+				if (tokenStream != null) {
+					tokenStream.close();
+				}
 			}
 		}
 	}
 
+	/**
+	 * Defers all variants of the given request without loading any tokens;
+	 * called by {@link TokenLoaderWrapper} when the dispatch queue stayed full
+	 * for the maximum wait time.
+	 *
+	 * @param msg
+	 *            the request whose loading is deferred
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void deferTokenBatch(MessageHolderWithVariants msg) {
+		for (Variant variant : msg.getVariants()) {
+			defer(msg, variant, msg.getLastSerialId(), msg.getLastTokenFromPreviousBatch());
+		}
+	}
+
+	/**
+	 * Continues loading tokens of the given variant later, starting after the
+	 * given position. The position stays journaled until the deferred request
+	 * is resumed and acknowledged.
+	 */
+	private void defer(MessageHolderWithVariants msg, Variant variant, int lastSerialId, String lastToken) {
+		logger.debug("Too many batches pending for {} variant ({}), continuing token loading in {} ms",
+				variant.getType().getTypeName(), variant.getVariantID(), deferMillis);
+		recoveryService.defer(msg, variant, lastSerialId, lastToken, deferMillis);
+	}
+
 	/**
 	 * Tries to dispatch tokens; returns true if tokens were successfully
-	 * queued.
+	 * queued. The capacity of the dispatch queue is checked before the tokens
+	 * are loaded.
 	 *
 	 * @return returns true if tokens were successfully queued; returns false if
 	 *         failed.
@@ -259,12 +359,6 @@ public class TokenLoader {
 				return false;
 			}
 
-			if (dispatchTokensEvent.getAvailableCapacity() <= 0){
-				logger.warn("Unable to send MessageHolderWithTokens, No available capacity to Flux");
-				// TODO - Sleep 1 second and retry.
-				return false;
-			}
-
 			dispatchTokensEvent.onNext(msg);
 			return true;
 		} catch (Exception e) {
@@ -273,6 +367,71 @@ public class TokenLoader {
 		}
 	}
 
+	/**
+	 * Pauses token loading until the dispatch queue has available capacity,
+	 * backing off exponentially while waiting. Called by
+	 * {@link TokenLoaderWrapper} before the loading transaction is started.
+	 *
+	 * @return true if capacity became available; false if the wait timed out
+	 *         or the thread was interrupted, the variants are deferred then.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public boolean awaitDispatchCapacity() {
+		if (hasDispatchCapacity()) {
+			return true;
+		}
+
+		stalls.incrementAndGet();
+		stalledProducers.incrementAndGet();
+		try {
+			final long deadline = System.nanoTime() + dispatchMaxWaitNanos;
+			long parkNanos = MIN_PARK_NANOS;
+
+			logger.debug("Dispatch queue is full, pausing token loading");
+			while (!hasDispatchCapacity()) {
+				if (System.nanoTime() - deadline >= 0) {
+					logger.warn("Dispatch queue is still full, deferring token loading");
+					return false;
+				}
+
+				LockSupport.parkNanos(parkNanos);
+				if (Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+				parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+			}
+			return true;
+		} finally {
+			stalledProducers.decrementAndGet();
+		}
+	}
+
+	private boolean hasDispatchCapacity() {
+		return dispatchTokensEvent.getAvailableCapacity() > 0 && dispatchScheduler.hasCapacity();
+	}
+
+	private boolean hasDispatchCapacity(Variant variant) {
+		return hasDispatchCapacity() && dispatchScheduler.hasCapacity(variant);
+	}
+
+	/**
+	 * @return number of token loaders currently paused because the dispatch
+	 *         queue is full.
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public int getStalledProducers() {
+		return stalledProducers.get();
+	}
+
+	/**
+	 * @return total number of times token loading had to pause because the
+	 *         dispatch queue was full.
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public long getStallCount() {
+		return stalls.get();
+	}
+
 	public static class TokenLoaderWrapperConfig {
 		@Bean
 		public TokenLoaderWrapper getTokenLoaderWrapper() {
@@ -293,7 +452,12 @@ public class TokenLoader {
 		}
 
 		public void loadAndQueueTokenBatch(MessageHolderWithVariants msg) throws IllegalStateException {
-			tokenLoader.loadAndQueueTokenBatch(msg);
+			// wait outside of the loading transaction, no cursor is open yet
+			if (tokenLoader.awaitDispatchCapacity()) {
+				tokenLoader.loadAndQueueTokenBatch(msg);
+			} else {
+				tokenLoader.deferTokenBatch(msg);
+			}
 		}
 	}
 
@@ -0,0 +1,110 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File backed {@link TokenBatchRecoveryStore} journal.
+ *
+ * Every cursor is serialized into its own file inside the journal directory. Files are first written under a temporary
+ * name and then atomically moved in place, so a crash while storing never leaves a half-written cursor behind.
+ */
+public class FileTokenBatchRecoveryStore implements TokenBatchRecoveryStore {
+
+	private static final String SUFFIX = ".cursor";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private final Logger logger = LoggerFactory.getLogger(FileTokenBatchRecoveryStore.class);
+
+	private final Path directory;
+
+	public FileTokenBatchRecoveryStore(Path directory) {
+		this.directory = directory;
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to create token batch recovery journal in " + directory, e);
+		}
+	}
+
+	@Override
+	public void store(TokenBatchCursor cursor) {
+		final Path target = pathFor(cursor.getKey());
+		final Path tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+
+		try (OutputStream out = Files.newOutputStream(tmp); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+			oos.writeObject(cursor);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to journal token batch cursor " + cursor.getKey(), e);
+		}
+
+		try {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to journal token batch cursor " + cursor.getKey(), e);
+		}
+	}
+
+	@Override
+	public void remove(String key) {
+		try {
+			Files.deleteIfExists(pathFor(key));
+		} catch (IOException e) {
+			logger.warn("Unable to remove token batch cursor {} from journal", key, e);
+		}
+	}
+
+	@Override
+	public Collection<TokenBatchCursor> loadAll() {
+		final List<TokenBatchCursor> cursors = new ArrayList<>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				try (InputStream in = Files.newInputStream(file); ObjectInputStream ois = new ObjectInputStream(in)) {
+					cursors.add((TokenBatchCursor) ois.readObject());
+				} catch (IOException | ClassNotFoundException | ClassCastException e) {
+					logger.error("Discarding unreadable token batch cursor {}", file, e);
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read token batch recovery journal in " + directory, e);
+		}
+
+		return cursors;
+	}
+
+	private Path pathFor(String key) {
+		return directory.resolve(key.replaceAll("[^a-zA-Z0-9_\\-]", "_") + SUFFIX);
+	}
+}
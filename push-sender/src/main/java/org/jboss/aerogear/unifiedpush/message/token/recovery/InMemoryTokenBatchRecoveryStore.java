@@ -0,0 +1,45 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Non-durable {@link TokenBatchRecoveryStore}, cursors are lost on restart. Intended for tests.
+ */
+public class InMemoryTokenBatchRecoveryStore implements TokenBatchRecoveryStore {
+
+	private final ConcurrentMap<String, TokenBatchCursor> cursors = new ConcurrentHashMap<>();
+
+	@Override
+	public void store(TokenBatchCursor cursor) {
+		cursors.put(cursor.getKey(), cursor);
+	}
+
+	@Override
+	public void remove(String key) {
+		cursors.remove(key);
+	}
+
+	@Override
+	public Collection<TokenBatchCursor> loadAll() {
+		return new ArrayList<>(cursors.values());
+	}
+}
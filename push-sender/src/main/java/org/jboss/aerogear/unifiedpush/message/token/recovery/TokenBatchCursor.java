@@ -0,0 +1,96 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import java.io.Serializable;
+
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+
+/**
+ * Position in the token stream of a single variant where token loading failed.
+ *
+ * The cursor wraps a {@link MessageHolderWithVariants} restricted to the failed variant, so that it can be replayed as-is
+ * through the token loading queue, continuing from the last token that was successfully queued.
+ */
+public class TokenBatchCursor implements Serializable {
+
+	private static final long serialVersionUID = -2493182734519127403L;
+
+	private final MessageHolderWithVariants message;
+	private final int attempt;
+
+	public TokenBatchCursor(MessageHolderWithVariants message, int attempt) {
+		if (message.getVariants().size() != 1) {
+			throw new IllegalArgumentException("cursor must point to exactly one variant");
+		}
+		this.message = message;
+		this.attempt = attempt;
+	}
+
+	/**
+	 * Key identifying the cursor, there is at most one pending cursor per push message and variant.
+	 *
+	 * @param pushMessageInformationId the push message id
+	 * @param variantID the variant
+	 * @return key of the cursor
+	 */
+	public static String key(String pushMessageInformationId, String variantID) {
+		return pushMessageInformationId + "_" + variantID;
+	}
+
+	public String getKey() {
+		return key(getPushMessageInformationId(), getVariantID());
+	}
+
+	public MessageHolderWithVariants getMessage() {
+		return message;
+	}
+
+	public String getPushMessageInformationId() {
+		return message.getPushMessageInformation().getId();
+	}
+
+	public String getVariantID() {
+		return getVariant().getVariantID();
+	}
+
+	public Variant getVariant() {
+		return message.getVariants().iterator().next();
+	}
+
+	public String getLastTokenFromPreviousBatch() {
+		return message.getLastTokenFromPreviousBatch();
+	}
+
+	public int getSerialId() {
+		return message.getLastSerialId();
+	}
+
+	/**
+	 * @return how many times loading from this cursor failed so far
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+
+	@Override
+	public String toString() {
+		return "TokenBatchCursor [key=" + getKey() + ", serialId=" + getSerialId() + ", lastTokenFromPreviousBatch="
+				+ getLastTokenFromPreviousBatch() + ", attempt=" + attempt + "]";
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import java.nio.file.Paths;
+
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Produces the {@link TokenBatchRecoveryStore}.
+ *
+ * File journal is used by default, <tt>aerogear.sender.recovery.store=memory</tt> switches to the in-memory store. The
+ * journal is kept in <tt>aerogear.sender.recovery.dir</tt>, or below the server data directory
+ * (<tt>jboss.server.data.dir</tt>) if not set. Without either of them, the in-memory store is used, a temporary
+ * directory would not survive the restart the journal is meant for.
+ */
+@Configuration
+public class TokenBatchRecoveryConfig {
+
+	public static final String PROP_STORE = "aerogear.sender.recovery.store";
+	public static final String PROP_DIRECTORY = "aerogear.sender.recovery.dir";
+	public static final String PROP_SERVER_DATA_DIRECTORY = "jboss.server.data.dir";
+
+	private final Logger logger = LoggerFactory.getLogger(TokenBatchRecoveryConfig.class);
+
+	@Autowired
+	private ConfigurationEnvironment config;
+
+	@Bean
+	public TokenBatchRecoveryStore getTokenBatchRecoveryStore() {
+		if ("memory".equalsIgnoreCase(config.getProperty(PROP_STORE, "file"))) {
+			return new InMemoryTokenBatchRecoveryStore();
+		}
+
+		String directory = config.getProperty(PROP_DIRECTORY, (String) null);
+		if (directory == null) {
+			final String dataDirectory = System.getProperty(PROP_SERVER_DATA_DIRECTORY);
+			if (dataDirectory == null) {
+				logger.warn("Neither {} nor {} is set, token batch recovery does not survive a restart", PROP_DIRECTORY,
+						PROP_SERVER_DATA_DIRECTORY);
+				return new InMemoryTokenBatchRecoveryStore();
+			}
+			directory = Paths.get(dataDirectory, "aerobase", "token-recovery").toString();
+		}
+
+		return new FileTokenBatchRecoveryStore(Paths.get(directory));
+	}
+}
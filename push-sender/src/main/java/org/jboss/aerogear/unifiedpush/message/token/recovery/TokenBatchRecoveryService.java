@@ -0,0 +1,221 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import reactor.core.publisher.TopicProcessor;
+
+/**
+ * Recovers token loading requests that failed in {@link TokenLoader}, e.g. because of a transient database failure.
+ *
+ * The position where loading of a variant stopped is journaled as a {@link TokenBatchCursor} and replayed through the
+ * token loading queue with capped exponential backoff, so that the variant continues from the last queued batch
+ * instead of being lost. Cursors which are still journaled on startup are replayed as well.
+ *
+ * Token loading requests which {@link TokenLoader} defers because of back-pressure are journaled the same way and
+ * resumed after a fixed delay, without counting as a failed attempt.
+ *
+ * Once a replayed request is loaded successfully, {@link TokenLoader} acknowledges it and the cursor is removed.
+ */
+@Service
+public class TokenBatchRecoveryService {
+
+	public static final String PROP_INITIAL_BACKOFF = "aerogear.sender.recovery.backoff.initial_ms";
+	public static final String PROP_MAX_BACKOFF = "aerogear.sender.recovery.backoff.max_ms";
+	public static final String PROP_MAX_ATTEMPTS = "aerogear.sender.recovery.max_attempts";
+
+	private final Logger logger = LoggerFactory.getLogger(TokenBatchRecoveryService.class);
+
+	@Inject
+	private TokenBatchRecoveryStore store;
+
+	@Inject
+	private TopicProcessor<MessageHolderWithVariants> nextBatchEvent;
+
+	@Inject
+	private ConfigurationEnvironment config;
+
+	private final ConcurrentMap<String, TokenBatchCursor> pending = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService scheduler;
+	private long initialBackoff;
+	private long maxBackoff;
+	private int maxAttempts;
+
+	@PostConstruct
+	public void start() {
+		initialBackoff = config.getProperty(PROP_INITIAL_BACKOFF, 1000);
+		maxBackoff = config.getProperty(PROP_MAX_BACKOFF, 60000);
+		maxAttempts = config.getProperty(PROP_MAX_ATTEMPTS, 10);
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "token-batch-recovery");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		for (TokenBatchCursor cursor : store.loadAll()) {
+			logger.info("Resuming journaled token loading request {}", cursor);
+			pending.put(cursor.getKey(), cursor);
+			schedule(cursor, backoff(cursor.getAttempt(), initialBackoff, maxBackoff));
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Records position of a failed token loading request for the given variant and schedules its replay.
+	 *
+	 * @param msg the request that failed
+	 * @param variant the variant whose tokens failed to load
+	 * @param lastSerialId serial ID of the last batch successfully queued for the variant
+	 * @param lastQueuedToken last token successfully queued for the variant
+	 */
+	public void recover(MessageHolderWithVariants msg, Variant variant, int lastSerialId, String lastQueuedToken) {
+		final String key = TokenBatchCursor.key(msg.getPushMessageInformation().getId(), variant.getVariantID());
+		final TokenBatchCursor previous = pending.get(key);
+
+		// consecutive failures on the same position count as further attempts
+		final int attempt = previous != null && previous.getSerialId() == lastSerialId ? previous.getAttempt() + 1 : 1;
+
+		if (attempt > maxAttempts) {
+			logger.error("Giving up recovery of token loading after {} attempts, message is lost: {}", maxAttempts,
+					previous);
+			pending.remove(key);
+			store.remove(key);
+			return;
+		}
+
+		final TokenBatchCursor cursor = new TokenBatchCursor(
+				new MessageHolderWithVariants(msg.getPushMessageInformation(), msg.getUnifiedPushMessage(),
+						msg.getVariantType(), Collections.singletonList(variant), lastSerialId, lastQueuedToken),
+				attempt);
+
+		journal(cursor);
+		schedule(cursor, backoff(attempt, initialBackoff, maxBackoff));
+	}
+
+	/**
+	 * Records position of a token loading request for the given variant that was stopped because the dispatch queue
+	 * or the variant ran out of capacity, and resumes it after the given delay. The cursor stays journaled until the
+	 * resumed request is acknowledged, so that the rest of the variant is not lost on restart.
+	 *
+	 * @param msg the request that was stopped
+	 * @param variant the variant whose tokens are deferred
+	 * @param lastSerialId serial ID of the last batch successfully queued for the variant
+	 * @param lastQueuedToken last token successfully queued for the variant
+	 * @param delayMillis delay after which the loading is resumed
+	 */
+	public void defer(MessageHolderWithVariants msg, Variant variant, int lastSerialId, String lastQueuedToken,
+			long delayMillis) {
+		// waiting for capacity is not a failure, so the cursor does not count as an attempt
+		final TokenBatchCursor cursor = new TokenBatchCursor(
+				new MessageHolderWithVariants(msg.getPushMessageInformation(), msg.getUnifiedPushMessage(),
+						msg.getVariantType(), Collections.singletonList(variant), lastSerialId, lastQueuedToken),
+				0);
+
+		journal(cursor);
+		schedule(cursor, delayMillis);
+	}
+
+	/**
+	 * Removes the recovery cursor of the given variant if there is any; called once a request was loaded successfully.
+	 *
+	 * @param msg the request that was successfully loaded
+	 * @param variant the variant whose tokens were loaded
+	 */
+	public void acknowledge(MessageHolderWithVariants msg, Variant variant) {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		final String key = TokenBatchCursor.key(msg.getPushMessageInformation().getId(), variant.getVariantID());
+		final TokenBatchCursor cursor = pending.get(key);
+		if (cursor != null && cursor.getSerialId() == msg.getLastSerialId()) {
+			logger.info("Recovered token loading request {}", cursor);
+			pending.remove(key, cursor);
+			store.remove(key);
+		}
+	}
+
+	/**
+	 * @return number of token loading requests waiting to be replayed
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	private void journal(TokenBatchCursor cursor) {
+		pending.put(cursor.getKey(), cursor);
+		try {
+			store.store(cursor);
+		} catch (RuntimeException e) {
+			// the request is still replayed, it is just not going to survive a restart
+			logger.warn("Unable to journal {}", cursor, e);
+		}
+	}
+
+	private void schedule(TokenBatchCursor cursor, long delay) {
+		logger.debug("Replaying {} in {} ms", cursor, delay);
+		scheduler.schedule(() -> replay(cursor), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void replay(TokenBatchCursor cursor) {
+		// a newer cursor for the same variant supersedes this one
+		if (pending.get(cursor.getKey()) != cursor) {
+			return;
+		}
+		try {
+			nextBatchEvent.onNext(cursor.getMessage());
+		} catch (RuntimeException e) {
+			logger.error("Unable to replay {}", cursor, e);
+			final TokenBatchCursor next = new TokenBatchCursor(cursor.getMessage(), cursor.getAttempt() + 1);
+			if (pending.replace(cursor.getKey(), cursor, next)) {
+				schedule(next, backoff(next.getAttempt(), initialBackoff, maxBackoff));
+			}
+		}
+	}
+
+	/**
+	 * Computes exponential backoff for given attempt (starting with 1), capped by the maximum.
+	 */
+	static long backoff(int attempt, long initialBackoff, long maxBackoff) {
+		final int shift = Math.min(Math.max(attempt - 1, 0), 30);
+		return Math.min(initialBackoff << shift, maxBackoff);
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import java.util.Collection;
+
+/**
+ * Stores {@link TokenBatchCursor}s of token loading requests that failed and has to be replayed.
+ *
+ * @see FileTokenBatchRecoveryStore
+ * @see InMemoryTokenBatchRecoveryStore
+ */
+public interface TokenBatchRecoveryStore {
+
+	/**
+	 * Stores the cursor, replacing any cursor previously stored under the same {@link TokenBatchCursor#getKey()}.
+	 *
+	 * @param cursor the cursor to store
+	 */
+	void store(TokenBatchCursor cursor);
+
+	/**
+	 * Removes the cursor stored under the given key, if any.
+	 *
+	 * @param key the cursor key
+	 */
+	void remove(String key);
+
+	/**
+	 * @return all the cursors that are currently stored
+	 */
+	Collection<TokenBatchCursor> loadAll();
+}
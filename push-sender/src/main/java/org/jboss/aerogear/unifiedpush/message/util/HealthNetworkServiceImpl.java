@@ -26,8 +26,12 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Future;
 
+import javax.inject.Inject;
+
 import org.jboss.aerogear.unifiedpush.message.HealthNetworkService;
-import org.jboss.aerogear.unifiedpush.message.sender.fcm.ConfigurableFCMSender;
+import org.jboss.aerogear.unifiedpush.message.sender.DeviceTokenCleanupQueue;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.FCMHttpClient;
+import org.jboss.aerogear.unifiedpush.message.token.TokenLoader;
 import org.jboss.aerogear.unifiedpush.service.impl.health.HealthDetails;
 import org.jboss.aerogear.unifiedpush.service.impl.health.Ping;
 import org.jboss.aerogear.unifiedpush.service.impl.health.PushNetwork;
@@ -46,7 +50,7 @@ public class HealthNetworkServiceImpl implements HealthNetworkService {
     private static final String customAerogearApnsPushHost = tryGetProperty(CUSTOM_AEROGEAR_APNS_PUSH_HOST);
     private static final Integer customAerogearApnsPushPort = tryGetIntegerProperty(CUSTOM_AEROGEAR_APNS_PUSH_PORT);
 
-    private static final String FCM_SEND_ENDPOINT = ConfigurableFCMSender.FCM_ENDPOINT_HOST.substring("https://".length(), ConfigurableFCMSender.FCM_ENDPOINT_HOST.indexOf('/', "https://".length()));
+    private static final String FCM_SEND_ENDPOINT = FCMHttpClient.FCM_ENDPOINT_HOST.substring("https://".length(), FCMHttpClient.FCM_ENDPOINT_HOST.indexOf('/', "https://".length()));
     public static final String WNS_SEND_ENDPOINT = "db3.notify.windows.com";
     private static final List<PushNetwork> PUSH_NETWORKS = new ArrayList<>(Arrays.asList(
             new PushNetwork[]{
@@ -57,6 +61,12 @@ public class HealthNetworkServiceImpl implements HealthNetworkService {
             }
     ));
 
+    @Inject
+    private DeviceTokenCleanupQueue tokenCleanupQueue;
+
+    @Inject
+    private TokenLoader tokenLoader;
+
     static {
         if (customAerogearApnsPushHost != null) {
             final int port = customAerogearApnsPushPort != null ? customAerogearApnsPushPort : ApnsClient.DEFAULT_APNS_PORT;
@@ -87,4 +97,27 @@ public class HealthNetworkServiceImpl implements HealthNetworkService {
 
         return new AsyncResult<>(results);
     }
+
+    @Override
+    public HealthDetails tokenCleanupStatus() {
+        HealthDetails details = new HealthDetails();
+        details.setDescription("Device token cleanup");
+        details.start();
+        details.setTestStatus(Status.OK);
+        details.setResult(String.format("%d token changes pending", tokenCleanupQueue.getPendingCount()));
+        details.stop();
+        return details;
+    }
+
+    @Override
+    public HealthDetails tokenLoadingStatus() {
+        HealthDetails details = new HealthDetails();
+        details.setDescription("Token loading");
+        details.start();
+        details.setTestStatus(Status.OK);
+        details.setResult(String.format("%d loaders paused by a full dispatch queue, %d pauses since startup",
+                tokenLoader.getStalledProducers(), tokenLoader.getStallCount()));
+        details.stop();
+        return details;
+    }
 }
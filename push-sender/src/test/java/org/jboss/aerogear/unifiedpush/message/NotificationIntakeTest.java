@@ -0,0 +1,148 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.PushApplication;
+import org.jboss.aerogear.unifiedpush.message.exception.IntakeFullException;
+import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class NotificationIntakeTest {
+
+    private NotificationIntake intake;
+    private NotificationRouter router;
+    private IPushMessageMetricsService metricsService;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        router = mock(NotificationRouter.class);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return CompletableFuture.completedFuture(null);
+        }).when(router).submit(any(PushApplication.class), any(InternalUnifiedPushMessage.class), any(String.class));
+
+        metricsService = mock(IPushMessageMetricsService.class);
+        when(metricsService.reserveNewRequest()).thenReturn(true);
+
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(NotificationIntake.PROP_WORKERS, 4)).thenReturn(1);
+        when(config.getProperty(NotificationIntake.PROP_CAPACITY, 1000)).thenReturn(1);
+
+        intake = new NotificationIntake();
+        ReflectionTestUtils.setField(intake, "notificationRouter", router);
+        ReflectionTestUtils.setField(intake, "metricsService", metricsService);
+        ReflectionTestUtils.setField(intake, "config", config);
+        intake.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        intake.stop();
+    }
+
+    @Test
+    public void shouldRouteWithReturnedId() {
+        final PushApplication app = new PushApplication();
+        final InternalUnifiedPushMessage message = new InternalUnifiedPushMessage();
+        release.countDown();
+
+        final String id = intake.accept(app, message);
+
+        assertThat(id).isNotEmpty();
+        verify(router, timeout(5000)).submit(app, message, id);
+    }
+
+    @Test
+    public void shouldRejectWhenFull() {
+        // one message is routed, one waits
+        intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+        verify(router, timeout(5000)).submit(any(PushApplication.class), any(InternalUnifiedPushMessage.class), any(String.class));
+        intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+        assertThat(intake.getPendingCount()).isEqualTo(1);
+
+        try {
+            intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+            fail("intake should be full");
+        } catch (IntakeFullException e) {
+            // expected
+        }
+
+        release.countDown();
+        verify(router, timeout(5000).times(2)).submit(any(PushApplication.class), any(InternalUnifiedPushMessage.class), any(String.class));
+    }
+
+    @Test
+    public void shouldRejectWhileRecordsAreNotCommitted() {
+        final CompletableFuture<FlatPushMessageInformation> recorded = new CompletableFuture<>();
+        doReturn(recorded).when(router).submit(any(PushApplication.class), any(InternalUnifiedPushMessage.class), any(String.class));
+
+        // both messages are routed, but their records wait for the commit
+        intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+        intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+        verify(router, timeout(5000).times(2)).submit(any(PushApplication.class), any(InternalUnifiedPushMessage.class), any(String.class));
+        assertThat(intake.getPendingCount()).isZero();
+
+        try {
+            intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+            fail("intake should be full");
+        } catch (IntakeFullException e) {
+            // expected
+        }
+
+        recorded.complete(null);
+        assertThat(intake.getInFlightCount()).isZero();
+        intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+    }
+
+    @Test
+    public void shouldRejectWhenWriterIsFull() {
+        // the writer is filled by other callers
+        when(metricsService.reserveNewRequest()).thenReturn(false);
+
+        try {
+            intake.accept(new PushApplication(), new InternalUnifiedPushMessage());
+            fail("intake should be full");
+        } catch (IntakeFullException e) {
+            // expected
+        }
+
+        assertThat(intake.getInFlightCount()).isZero();
+        verify(router, never()).submit(any(PushApplication.class), any(InternalUnifiedPushMessage.class), any(String.class));
+    }
+}
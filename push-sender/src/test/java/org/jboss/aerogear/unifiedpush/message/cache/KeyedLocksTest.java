@@ -0,0 +1,76 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class KeyedLocksTest {
+
+    private final KeyedLocks locks = new KeyedLocks();
+
+    @Test
+    public void shouldDropLockAfterUse() {
+        assertThat(locks.withLock("variant", () -> "service")).isEqualTo("service");
+        assertThat(locks.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldSerializeCallersOfSameKey() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        try {
+            final Future<Integer> first = executor.submit(() -> locks.withLock("variant", () -> {
+                final int current = running.incrementAndGet();
+                entered.countDown();
+                await(release);
+                running.decrementAndGet();
+                return current;
+            }));
+            assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+            final Future<Integer> second = executor.submit(() -> locks.withLock("variant", running::incrementAndGet));
+            // another key is not blocked by the held lock
+            assertThat(locks.withLock("other-variant", () -> "other")).isEqualTo("other");
+
+            release.countDown();
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(locks.isEmpty()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
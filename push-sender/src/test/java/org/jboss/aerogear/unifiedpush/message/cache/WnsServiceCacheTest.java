@@ -0,0 +1,75 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.aerogear.unifiedpush.api.WindowsWNSVariant;
+import org.junit.Before;
+import org.junit.Test;
+
+import ar.com.fernandospr.wns.WnsService;
+
+public class WnsServiceCacheTest {
+
+    private final WnsServiceCache cache = new WnsServiceCache();
+    private final AtomicInteger constructed = new AtomicInteger();
+    private final ServiceConstructor<WnsService> constructor = () -> {
+        constructed.incrementAndGet();
+        return mock(WnsService.class);
+    };
+
+    private WindowsWNSVariant variant;
+
+    @Before
+    public void setUp() {
+        variant = new WindowsWNSVariant();
+        variant.setVariantID("wns-variant");
+        variant.setSid("sid");
+        variant.setClientSecret("secret");
+    }
+
+    @Test
+    public void shouldReuseServiceOfVariant() {
+        final WnsService service = cache.getWnsServiceForVariant(variant, constructor);
+
+        assertThat(cache.getWnsServiceForVariant(variant, constructor)).isSameAs(service);
+        assertThat(constructed.get()).isEqualTo(1);
+        assertThat(cache.constructionLocks.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldCreateServiceForChangedCredentials() {
+        final WnsService service = cache.getWnsServiceForVariant(variant, constructor);
+        variant.setClientSecret("new-secret");
+
+        assertThat(cache.getWnsServiceForVariant(variant, constructor)).isNotSameAs(service);
+        assertThat(constructed.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldCreateServiceAfterInvalidation() {
+        final WnsService service = cache.getWnsServiceForVariant(variant, constructor);
+        cache.invalidate(variant);
+
+        assertThat(cache.getWnsServiceForVariant(variant, constructor)).isNotSameAs(service);
+        assertThat(constructed.get()).isEqualTo(2);
+    }
+}
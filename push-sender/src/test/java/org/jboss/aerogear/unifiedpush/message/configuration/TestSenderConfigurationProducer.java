@@ -41,6 +41,7 @@ public class TestSenderConfigurationProducer extends AbstractNoCassandraServiceT
 	static {
 		System.setProperty("aerogear.android.batchSize", "999");
 		System.setProperty("aerogear.ios.batchSize", "1");
+		System.setProperty("aerogear.ios.tokensPerSecond", "500");
 	}
 
 	@Test
@@ -51,6 +52,7 @@ public class TestSenderConfigurationProducer extends AbstractNoCassandraServiceT
 					VariantType.ANDROIDQ);
 			assertEquals(10, configuration.batchesToLoad());
 			assertEquals(999, configuration.batchSize());
+			assertEquals(0, configuration.tokensPerSecond());
 		} finally {
 			System.clearProperty("aerogear.android.batchSize");
 		}
@@ -64,8 +66,10 @@ public class TestSenderConfigurationProducer extends AbstractNoCassandraServiceT
 					applicationContext.getAutowireCapableBeanFactory(), SenderConfiguration.class, VariantType.IOSQ);
 			assertEquals(3, configuration.batchesToLoad());
 			assertEquals(1, configuration.batchSize());
+			assertEquals(500, configuration.tokensPerSecond());
 		} finally {
 			System.clearProperty("aerogear.ios.batchSize");
+			System.clearProperty("aerogear.ios.tokensPerSecond");
 		}
 	}
 }
@@ -0,0 +1,48 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ExponentialBackoffRetryPolicyTest {
+
+    private final ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy(5, 1000, 4000);
+
+    @Test
+    public void shouldDoubleBackoffPerAttempt() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.getDelay(1, -1)).isBetween(500L, 1000L);
+            assertThat(policy.getDelay(2, -1)).isBetween(1000L, 2000L);
+            assertThat(policy.getDelay(3, -1)).isBetween(2000L, 4000L);
+        }
+    }
+
+    @Test
+    public void shouldCapBackoff() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.getDelay(4, -1)).isBetween(2000L, 4000L);
+            assertThat(policy.getDelay(Integer.MAX_VALUE, -1)).isBetween(2000L, 4000L);
+        }
+    }
+
+    @Test
+    public void shouldHonourRetryAfter() {
+        assertThat(policy.getDelay(1, 30000)).isEqualTo(30000L);
+    }
+}
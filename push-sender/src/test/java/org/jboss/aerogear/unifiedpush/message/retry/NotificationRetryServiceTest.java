@@ -0,0 +1,128 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.message.sender.adm.AdmResponseException;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.FCMResponseException;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.WorkQueueProcessor;
+
+public class NotificationRetryServiceTest {
+
+    private NotificationRetryService retryService;
+    private WorkQueueProcessor<MessageHolderWithTokens> messages;
+    private DeadLetterSink deadLetterSink;
+    private final BlockingQueue<MessageHolderWithTokens> delivered = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        messages = WorkQueueProcessor.<MessageHolderWithTokens>builder().build();
+        messages.subscribe(delivered::add);
+        deadLetterSink = mock(DeadLetterSink.class);
+
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(NotificationRetryService.PROP_PREFIX + NotificationRetryService.PROP_INITIAL_BACKOFF, 1000)).thenReturn(10);
+
+        retryService = new NotificationRetryService();
+        ReflectionTestUtils.setField(retryService, "messages", messages);
+        ReflectionTestUtils.setField(retryService, "deadLetterSink", deadLetterSink);
+        ReflectionTestUtils.setField(retryService, "config", config);
+        retryService.start();
+    }
+
+    @After
+    public void tearDown() {
+        retryService.stop();
+        messages.shutdown();
+    }
+
+    @Test
+    public void shouldRedeliverFailedTokensOnly() throws InterruptedException {
+        retryService.retry(message(1), Collections.singletonList("token-2"), "Unavailable", -1);
+
+        final MessageHolderWithTokens retried = delivered.poll(5, TimeUnit.SECONDS);
+        assertThat(retried).isNotNull();
+        assertThat(retried.getDeviceTokens()).containsExactly("token-2");
+        assertThat(retried.getAttempt()).isEqualTo(2);
+        assertThat(retryService.getPendingCount()).isZero();
+        verify(deadLetterSink, never()).deadLetter(any(MessageHolderWithTokens.class), anyString());
+    }
+
+    @Test
+    public void shouldDeadLetterAfterLastAttempt() throws InterruptedException {
+        retryService.retry(message(3), Collections.singletonList("token-1"), "Unavailable", -1);
+
+        final ArgumentCaptor<MessageHolderWithTokens> captor = ArgumentCaptor.forClass(MessageHolderWithTokens.class);
+        verify(deadLetterSink).deadLetter(captor.capture(), eq("Unavailable"));
+        assertThat(captor.getValue().getDeviceTokens()).containsExactly("token-1");
+        assertThat(retryService.getPendingCount()).isZero();
+        assertThat(delivered.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void shouldOnlyTreatIOErrorsAsTransient() {
+        assertThat(NotificationRetryService.isTransient(new ConnectException("Connection refused"))).isTrue();
+        assertThat(NotificationRetryService.isTransient(new RuntimeException(new SocketTimeoutException()))).isTrue();
+        assertThat(NotificationRetryService.isTransient(new ClassCastException())).isFalse();
+        assertThat(NotificationRetryService.isTransient(new IllegalStateException("no sender"))).isFalse();
+    }
+
+    @Test
+    public void shouldOnlyTreatThrottlingAndUnavailablePushNetworkAsTransient() {
+        assertThat(NotificationRetryService.isTransient(new AdmResponseException(429, "TooManyRequests"))).isTrue();
+        assertThat(NotificationRetryService.isTransient(new AdmResponseException(503, "Unavailable"))).isTrue();
+        assertThat(NotificationRetryService.isTransient(new AdmResponseException(400, "InvalidRegistrationId"))).isFalse();
+        assertThat(NotificationRetryService.isTransient(new RuntimeException(new FCMResponseException(401, "Unauthorized", -1)))).isFalse();
+        assertThat(NotificationRetryService.isTransient(new FCMResponseException(503, "Unavailable", 10))).isTrue();
+    }
+
+    private static MessageHolderWithTokens message(int attempt) {
+        final AndroidVariant variant = new AndroidVariant();
+        variant.setVariantID("variant");
+        return new MessageHolderWithTokens(new FlatPushMessageInformation(), new UnifiedPushMessage(), variant,
+                Arrays.asList("token-1", "token-2"), 1, attempt);
+    }
+}
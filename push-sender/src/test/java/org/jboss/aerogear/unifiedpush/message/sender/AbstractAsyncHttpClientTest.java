@@ -0,0 +1,101 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.respond;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class AbstractAsyncHttpClientTest {
+
+    private HttpServer server;
+    private TestClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> respond(exchange, 200, "ok"));
+        server.start();
+
+        // a single request in flight, so that a leaked permit blocks the next request
+        client = new TestClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldFailOnRuntimeExceptionOfReader() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final CompletableFuture<String> future = client.get(response -> {
+                EntityUtils.consume(response.getEntity());
+                throw new IllegalStateException("unreadable");
+            });
+
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("reader failure was expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+        }
+
+        assertThat(client.get(response -> EntityUtils.toString(response.getEntity())).get(5, TimeUnit.SECONDS))
+                .isEqualTo("ok");
+    }
+
+    @Test
+    public void shouldFailRequestsAfterClose() throws Exception {
+        client.close();
+
+        try {
+            client.get(response -> EntityUtils.toString(response.getEntity())).get(5, TimeUnit.SECONDS);
+            fail("closed client was expected to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isNotNull();
+        }
+    }
+
+    private class TestClient extends AbstractAsyncHttpClient {
+
+        TestClient() {
+            super("Test", 1, 1, 1, 5000);
+        }
+
+        CompletableFuture<String> get(ResponseReader<String> reader) {
+            final HttpGet get = new HttpGet("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+            return limit(() -> execute(get, reader));
+        }
+    }
+}
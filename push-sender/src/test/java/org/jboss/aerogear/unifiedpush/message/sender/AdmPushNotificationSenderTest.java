@@ -0,0 +1,131 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jboss.aerogear.unifiedpush.api.AdmVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.sender.adm.AdmHttpClient;
+import org.jboss.aerogear.unifiedpush.message.sender.adm.AdmResponseException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AdmPushNotificationSenderTest {
+
+    private AdmHttpClient client;
+    private AdmPushNotificationSender sender;
+
+    // every callback invocation, in order
+    private final List<String> outcomes = new ArrayList<>();
+    private Collection<String> retriedTokens;
+    private long retryAfterMillis;
+
+    @Before
+    public void setUp() {
+        client = mock(AdmHttpClient.class);
+        when(client.send(anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        sender = new AdmPushNotificationSender();
+        ReflectionTestUtils.setField(sender, "admClient", client);
+    }
+
+    @Test
+    public void shouldReportSuccessOnce() {
+        send("token-1", "token-2");
+
+        assertThat(outcomes).containsExactly("success");
+    }
+
+    @Test
+    public void shouldReportRejectedTokens() {
+        reply("token-2", new AdmResponseException(400, "InvalidRegistrationId"));
+
+        send("token-1", "token-2");
+
+        assertThat(outcomes).containsExactly("error");
+    }
+
+    @Test
+    public void shouldReportOnlyRetriableErrorWhenBatchIsMixed() {
+        reply("token-2", new AdmResponseException(400, "InvalidRegistrationId"));
+        reply("token-3", new AdmResponseException(503, "Service Unavailable"));
+
+        send("token-1", "token-2", "token-3");
+
+        assertThat(outcomes).containsExactly("retriable");
+        assertThat(retriedTokens).containsExactly("token-3");
+        assertThat(retryAfterMillis).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldPassOnLongestRetryAfter() {
+        reply("token-1", new AdmResponseException(429, "TooManyRequests", 5));
+        reply("token-2", new AdmResponseException(429, "TooManyRequests", 30));
+        reply("token-3", new AdmResponseException(503, "Service Unavailable"));
+
+        send("token-1", "token-2", "token-3");
+
+        assertThat(outcomes).containsExactly("retriable");
+        assertThat(retriedTokens).containsOnly("token-1", "token-2", "token-3");
+        assertThat(retryAfterMillis).isEqualTo(30000);
+    }
+
+    private void reply(String token, Throwable e) {
+        final CompletableFuture<Void> failure = new CompletableFuture<>();
+        failure.completeExceptionally(e);
+        when(client.send(anyString(), anyString(), eq(token), anyString())).thenReturn(failure);
+    }
+
+    private void send(String... tokens) {
+        final AdmVariant variant = new AdmVariant();
+        variant.setClientId("client-id");
+        variant.setClientSecret("client-secret");
+
+        sender.sendPushMessage(variant, Arrays.asList(tokens), new UnifiedPushMessage(), "push-id",
+                new NotificationSenderCallback() {
+                    @Override
+                    public void onSuccess() {
+                        outcomes.add("success");
+                    }
+
+                    @Override
+                    public void onError(String reason) {
+                        outcomes.add("error");
+                    }
+
+                    @Override
+                    public void onRetriableError(String reason, Collection<String> failedTokens, long retryAfterMillis) {
+                        outcomes.add("retriable");
+                        retriedTokens = failedTokens;
+                        AdmPushNotificationSenderTest.this.retryAfterMillis = retryAfterMillis;
+                    }
+                });
+    }
+}
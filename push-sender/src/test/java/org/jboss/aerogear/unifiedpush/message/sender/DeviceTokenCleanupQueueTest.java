@@ -0,0 +1,135 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.jboss.aerogear.unifiedpush.message.util.HealthNetworkServiceImpl;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.service.impl.health.HealthDetails;
+import org.jboss.aerogear.unifiedpush.service.impl.health.Status;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DeviceTokenCleanupQueueTest {
+
+    private ClientInstallationService clientInstallationService;
+    private DeviceTokenCleanupQueue queue;
+
+    @Before
+    public void setUp() {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        // long interval, the tests flush explicitly
+        when(config.getProperty(DeviceTokenCleanupQueue.PROP_FLUSH_INTERVAL, 1000)).thenReturn(60000);
+        when(config.getProperty(DeviceTokenCleanupQueue.PROP_MAX_PENDING, 10000)).thenReturn(10000);
+        clientInstallationService = mock(ClientInstallationService.class);
+
+        queue = new DeviceTokenCleanupQueue();
+        ReflectionTestUtils.setField(queue, "config", config);
+        ReflectionTestUtils.setField(queue, "clientInstallationService", clientInstallationService);
+        queue.init();
+    }
+
+    @After
+    public void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    public void flushRemovesInBulkPerVariant() {
+        queue.remove("variant-1", "token-1");
+        queue.remove("variant-1", "token-2");
+        queue.remove("variant-2", "token-3");
+
+        assertThat(queue.getPendingCount()).isEqualTo(3);
+        assertThat(queue.getPendingCount("variant-1")).isEqualTo(2);
+        assertThat(queue.getPendingCount("variant-2")).isEqualTo(1);
+
+        assertThat(queue.flush()).isEqualTo(3);
+
+        verify(clientInstallationService).removeInstallationsForVariantByDeviceTokens("variant-1",
+                new HashSet<>(Arrays.asList("token-1", "token-2")));
+        verify(clientInstallationService).removeInstallationsForVariantByDeviceTokens("variant-2",
+                Collections.singleton("token-3"));
+        verifyNoMoreInteractions(clientInstallationService);
+
+        assertThat(queue.getPendingCount()).isEqualTo(0);
+        assertThat(queue.getPendingCount("variant-1")).isEqualTo(0);
+    }
+
+    @Test
+    public void flushRemovesDuplicatedCanonicalTokens() {
+        when(clientInstallationService.replaceDeviceTokensForVariant(eq("variant-1"), anyMapOf(String.class, String.class)))
+                .thenReturn(Collections.singleton("token-2"));
+
+        queue.replace("variant-1", "token-1", "canonical-1");
+        queue.replace("variant-1", "token-2", "canonical-1");
+        queue.flush();
+
+        verify(clientInstallationService).removeInstallationsForVariantByDeviceTokens("variant-1",
+                Collections.singleton("token-2"));
+    }
+
+    @Test
+    public void failedVariantIsRetriedOnNextFlush() {
+        doThrow(new IllegalStateException("database unavailable")).doNothing().when(clientInstallationService)
+                .removeInstallationsForVariantByDeviceTokens("variant-1", Collections.singleton("token-1"));
+
+        queue.remove("variant-1", "token-1");
+        queue.remove("variant-2", "token-2");
+
+        // the other variant is applied, the failed one stays pending
+        assertThat(queue.flush()).isEqualTo(1);
+        assertThat(queue.getPendingCount()).isEqualTo(1);
+        assertThat(queue.getPendingCount("variant-1")).isEqualTo(1);
+        assertThat(queue.getPendingCount("variant-2")).isEqualTo(0);
+
+        assertThat(queue.flush()).isEqualTo(1);
+        verify(clientInstallationService, times(2)).removeInstallationsForVariantByDeviceTokens("variant-1",
+                Collections.singleton("token-1"));
+        assertThat(queue.getPendingCount()).isEqualTo(0);
+        assertThat(queue.getPendingCount("variant-1")).isEqualTo(0);
+    }
+
+    @Test
+    public void reportsPendingChangesInHealthStatus() {
+        queue.remove("variant-1", "token-1");
+        queue.replace("variant-1", "token-2", "canonical-2");
+
+        final HealthNetworkServiceImpl healthService = new HealthNetworkServiceImpl();
+        ReflectionTestUtils.setField(healthService, "tokenCleanupQueue", queue);
+
+        final HealthDetails details = healthService.tokenCleanupStatus();
+        assertThat(details.getTestStatus()).isEqualTo(Status.OK);
+        assertThat(details.getResult()).isEqualTo("2 token changes pending");
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.read;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.respond;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.sender.fcm.FCMHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class FCMPushNotificationSenderTest {
+
+    private static final int TOPIC_CONCURRENCY = 3;
+
+    private HttpServer server;
+    private FCMHttpClient client;
+    private FCMPushNotificationSender sender;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final Queue<String> errors = new ConcurrentLinkedQueue<>();
+    private volatile boolean succeeded;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fcm/send", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        System.setProperty(FCMHttpClient.CUSTOM_AEROGEAR_FCM_PUSH_HOST,
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/fcm/send");
+        client = new FCMHttpClient(10, 10, 5000);
+
+        sender = new FCMPushNotificationSender();
+        ReflectionTestUtils.setField(sender, "fcmClient", client);
+        ReflectionTestUtils.setField(sender, "topicConcurrency", TOPIC_CONCURRENCY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+        System.clearProperty(FCMHttpClient.CUSTOM_AEROGEAR_FCM_PUSH_HOST);
+    }
+
+    @Test
+    public void shouldSendTopicsConcurrently() throws Exception {
+        final List<String> topics = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            topics.add("/topics/news-" + i);
+        }
+
+        send(topics, 1);
+
+        assertThat(succeeded).isTrue();
+        assertThat(errors).isEmpty();
+        assertThat(maxRunning.get()).isGreaterThan(1).isLessThanOrEqualTo(TOPIC_CONCURRENCY);
+    }
+
+    @Test
+    public void shouldReportEveryFailedTopic() throws Exception {
+        final List<String> topics = new ArrayList<>();
+        topics.add("/topics/news");
+        topics.add("/topics/broken-1");
+        topics.add("/topics/sports");
+        topics.add("/topics/broken-2");
+
+        send(topics, 2);
+        // the batch must not report success after the errors
+        Thread.sleep(200);
+
+        assertThat(succeeded).isFalse();
+        assertThat(errors).hasSize(2);
+        assertThat(errors).anyMatch(error -> error.contains("/topics/broken-1"));
+        assertThat(errors).anyMatch(error -> error.contains("/topics/broken-2"));
+    }
+
+    private void send(List<String> topics, int expectedCallbacks) throws InterruptedException {
+        final CountDownLatch completed = new CountDownLatch(expectedCallbacks);
+        final AndroidVariant variant = new AndroidVariant();
+        variant.setGoogleKey("secret");
+
+        sender.sendPushMessage(variant, topics, new UnifiedPushMessage(), "123", new NotificationSenderCallback() {
+            @Override
+            public void onSuccess() {
+                succeeded = true;
+                completed.countDown();
+            }
+
+            @Override
+            public void onError(String reason) {
+                errors.add(reason);
+                completed.countDown();
+            }
+        });
+        assertThat(completed.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final int current = running.incrementAndGet();
+        maxRunning.accumulateAndGet(current, Math::max);
+        try {
+            final String request = read(exchange.getRequestBody());
+            // keep the request open, so that concurrent topic requests overlap
+            Thread.sleep(50);
+
+            final String response = request.contains("broken")
+                    ? "{\"error\":\"TopicsMessageRateExceeded\"}"
+                    : "{\"message_id\":42}";
+            respond(exchange, 200, response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jboss.aerogear.unifiedpush.api.SimplePushVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.sender.simplepush.SimplePushHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class SimplePushNotificationSenderTest {
+
+    private HttpServer server;
+    private SimplePushHttpClient client;
+    private SimplePushNotificationSender sender;
+
+    private final AtomicInteger updates = new AtomicInteger();
+
+    private volatile boolean succeeded;
+    private volatile String error;
+    private volatile Collection<String> retried;
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/update/", this::handle);
+        server.start();
+
+        client = new SimplePushHttpClient(4, 10, 5000);
+        sender = new SimplePushNotificationSender();
+        ReflectionTestUtils.setField(sender, "simplePushClient", client);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldSendAllUpdates() throws Exception {
+        final List<String> channels = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            channels.add(liveUrl("channel-" + i));
+        }
+
+        send(channels);
+
+        assertThat(succeeded).isTrue();
+        assertThat(updates.get()).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldAggregateFailuresPerHost() throws Exception {
+        final int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+
+        final String dead2 = "http://localhost:" + deadPort + "/update/channel-2";
+        final String dead3 = "http://localhost:" + deadPort + "/update/channel-3";
+        send(Arrays.asList(
+                liveUrl("channel-1"),
+                liveUrl("unknown-channel"),
+                dead2,
+                dead3,
+                liveUrl("channel-4")));
+
+        assertThat(succeeded).isFalse();
+        // the unreachable server is retried, the rejected channel is reported
+        assertThat(error).contains("[localhost]").contains("127.0.0.1=1");
+        assertThat(retried).containsOnly(dead2, dead3);
+        assertThat(updates.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldSkipRequestsToFailedHost() throws Exception {
+        final SimplePushHttpClient failingClient = mock(SimplePushHttpClient.class);
+        when(failingClient.getMaxConnectionsPerHost()).thenReturn(2);
+        when(failingClient.put(anyString(), anyString())).thenAnswer(invocation -> CompletableFuture.supplyAsync(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            throw new CompletionException(new ConnectException("Connection refused"));
+        }));
+        ReflectionTestUtils.setField(sender, "simplePushClient", failingClient);
+
+        final List<String> channels = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            channels.add("http://dead.example.com/update/channel-" + i);
+        }
+        send(channels);
+
+        assertThat(succeeded).isFalse();
+        assertThat(error).contains("[dead.example.com]");
+        // skipped channels are retried as well
+        assertThat(retried).containsOnlyElementsOf(channels).hasSize(10);
+        // only the requests started before the first failure reach the host
+        verify(failingClient, times(2)).put(anyString(), anyString());
+    }
+
+    private void send(List<String> channels) throws InterruptedException {
+        final UnifiedPushMessage message = new UnifiedPushMessage();
+        message.getMessage().setSimplePush("version=1");
+
+        sender.sendPushMessage(new SimplePushVariant(), channels, message, "123", new NotificationSenderCallback() {
+            @Override
+            public void onSuccess() {
+                succeeded = true;
+                completed.countDown();
+            }
+
+            @Override
+            public void onError(String reason) {
+                error = reason;
+                completed.countDown();
+            }
+
+            @Override
+            public void onRetriableError(String reason, Collection<String> failedTokens, long retryAfterMillis) {
+                retried = failedTokens;
+                onError(reason);
+            }
+        });
+        assertThat(completed.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private String liveUrl(String channel) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/update/" + channel;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        // drain the version payload
+        HttpStubs.read(exchange.getRequestBody());
+        updates.incrementAndGet();
+        final boolean known = !exchange.getRequestURI().getPath().endsWith("unknown-channel");
+        exchange.sendResponseHeaders(known ? 200 : 404, -1);
+        exchange.close();
+    }
+}
@@ -1,5 +1,6 @@
 package org.jboss.aerogear.unifiedpush.message.sender;
 
+import ar.com.fernandospr.wns.exceptions.WnsException;
 import ar.com.fernandospr.wns.model.WnsTile;
 import ar.com.fernandospr.wns.model.WnsToast;
 import org.jboss.aerogear.unifiedpush.message.Message;
@@ -7,7 +8,6 @@ import org.jboss.aerogear.unifiedpush.message.windows.TileType;
 import org.jboss.aerogear.unifiedpush.message.windows.ToastType;
 import org.jboss.aerogear.unifiedpush.message.windows.Type;
 import org.jboss.aerogear.unifiedpush.message.windows.Windows;
-import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -23,13 +23,9 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class WNSPushNotificationSenderTest {
 
     private static final String QUERY = "?ke2=value2&key=value";
+    private static final String PUSH_MESSAGE_ID = "123";
     private WNSPushNotificationSender sender = new WNSPushNotificationSender();
 
-    @Before
-    public void setUp() {
-        sender.setPushMessageInformationId("123");
-    }
-
     @Test
     public void shouldWorkWithEmptyNullUserData() {
         //given
@@ -37,7 +33,7 @@ public class WNSPushNotificationSenderTest {
         message.setUserData(new HashMap<>());
 
         //when
-        WnsToast toastMessage = sender.createSimpleToastMessage(message);
+        WnsToast toastMessage = sender.createSimpleToastMessage(message, PUSH_MESSAGE_ID);
 
         //then
         assertThat(toastMessage.launch).isEqualTo("/Root.xaml?aerogear-push-id=123");
@@ -50,7 +46,7 @@ public class WNSPushNotificationSenderTest {
         message.setAlert("My message");
 
         //when
-        WnsToast toastMessage = sender.createSimpleToastMessage(message);
+        WnsToast toastMessage = sender.createSimpleToastMessage(message, PUSH_MESSAGE_ID);
 
         //then
         assertThat(toastMessage.launch).isEqualTo("/Root.xaml" + QUERY + "&message=My+message&aerogear-push-id=123");
@@ -62,7 +58,7 @@ public class WNSPushNotificationSenderTest {
         Message pushMessage = getUnifiedPushMessage();
 
         //when
-        final WnsToast toast = sender.createSimpleToastMessage(pushMessage);
+        final WnsToast toast = sender.createSimpleToastMessage(pushMessage, PUSH_MESSAGE_ID);
 
         //then
         assertThat(toast.launch).isEqualTo("/Root.xaml" + QUERY + "&aerogear-push-id=123");
@@ -75,7 +71,7 @@ public class WNSPushNotificationSenderTest {
         pushMessage.getWindows().setPage("cordova");
 
         //when
-        final WnsToast toast = sender.createSimpleToastMessage(pushMessage);
+        final WnsToast toast = sender.createSimpleToastMessage(pushMessage, PUSH_MESSAGE_ID);
 
         //then
         assertThat(toast.launch).isEqualTo(WNSPushNotificationSender.CORDOVA_PAGE + QUERY + "&aerogear-push-id=123");
@@ -93,7 +89,7 @@ public class WNSPushNotificationSenderTest {
         windows.setImages(Collections.singletonList("image1.jpg"));
 
         //when
-        WnsToast toastMessage = sender.createToastMessage(message);
+        WnsToast toastMessage = sender.createToastMessage(message, PUSH_MESSAGE_ID);
 
         //then
         assertThat(toastMessage).isNotNull();
@@ -119,6 +115,13 @@ public class WNSPushNotificationSenderTest {
         assertThat(tileMessage.visual.binding.texts.get(0).value).isEqualTo("title");
     }
 
+    @Test
+    public void shouldOnlyRetryTransientAuthenticationFailures() {
+        assertThat(WNSPushNotificationSender.isTransient(new WnsException("Authentication failed with status 503"))).isTrue();
+        assertThat(WNSPushNotificationSender.isTransient(new WnsException("Authentication failed with status 400"))).isFalse();
+        assertThat(WNSPushNotificationSender.isTransient(new WnsException("Authentication failed with status 401"))).isFalse();
+    }
+
     private Message getUnifiedPushMessage() {
         Message message = new Message();
         Map<String, Object> data = new HashMap<>();
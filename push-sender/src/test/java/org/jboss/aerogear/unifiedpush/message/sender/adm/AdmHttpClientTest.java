@@ -0,0 +1,124 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.adm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.read;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.respond;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class AdmHttpClientTest {
+
+    private static final String PAYLOAD = "{\"data\":{\"alert\":\"Hello\"}}";
+
+    private HttpServer server;
+    private AdmHttpClient client;
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final Queue<String> authorizations = new ConcurrentLinkedQueue<>();
+
+    private volatile int messageStatus = 200;
+    private volatile String messageResponse = "{\"registrationID\":\"token-1\"}";
+    private volatile String lastMessage;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/auth/O2/token", this::handleToken);
+        server.createContext("/messaging/registrations/", this::handleMessage);
+        server.start();
+
+        System.setProperty(AdmHttpClient.CUSTOM_AEROGEAR_ADM_PUSH_HOST, "http://127.0.0.1:" + server.getAddress().getPort());
+        client = new AdmHttpClient(2, 10, 5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+        System.clearProperty(AdmHttpClient.CUSTOM_AEROGEAR_ADM_PUSH_HOST);
+    }
+
+    @Test
+    public void shouldReuseAccessToken() throws Exception {
+        client.send("client", "secret", "token-1", PAYLOAD).get(5, TimeUnit.SECONDS);
+        client.send("client", "secret", "token-2", PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        assertThat(tokenRequests.get()).isEqualTo(1);
+        assertThat(authorizations).containsOnly("Bearer access-1");
+        assertThat(lastMessage).isEqualTo(PAYLOAD);
+    }
+
+    @Test
+    public void shouldRenewRejectedAccessToken() throws Exception {
+        client.send("client", "secret", "token-1", PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        messageStatus = 401;
+        messageResponse = "{\"reason\":\"AccessTokenExpired\"}";
+        try {
+            client.send("client", "secret", "token-1", PAYLOAD).get(5, TimeUnit.SECONDS);
+            fail("ADM error was expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AdmResponseException.class);
+        }
+
+        // the message was sent again with a new token
+        assertThat(tokenRequests.get()).isEqualTo(2);
+        assertThat(authorizations).containsExactly("Bearer access-1", "Bearer access-1", "Bearer access-2");
+    }
+
+    @Test
+    public void shouldReportRejectionReason() throws Exception {
+        messageStatus = 400;
+        messageResponse = "{\"reason\":\"InvalidRegistrationId\"}";
+
+        try {
+            client.send("client", "secret", "token-1", PAYLOAD).get(5, TimeUnit.SECONDS);
+            fail("ADM error was expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AdmResponseException.class);
+            assertThat(((AdmResponseException) e.getCause()).getStatus()).isEqualTo(400);
+            assertThat(((AdmResponseException) e.getCause()).getReason()).isEqualTo("InvalidRegistrationId");
+        }
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        assertThat(read(exchange.getRequestBody())).contains("grant_type=client_credentials");
+        respond(exchange, 200, "{\"access_token\":\"access-" + tokenRequests.incrementAndGet() + "\",\"expires_in\":3600}");
+    }
+
+    private void handleMessage(HttpExchange exchange) throws IOException {
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        lastMessage = read(exchange.getRequestBody());
+        respond(exchange, messageStatus, messageResponse);
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.apns;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import org.jboss.aerogear.unifiedpush.message.TestNotificationRouter;
+import org.junit.Test;
+
+public class ApnsUtilTest {
+
+    private static final char[] PASSPHRASE = "123456".toCharArray();
+
+    @Test
+    public void shouldReadKeyMaterialOnce() throws Exception {
+        final byte[] certificate = TestNotificationRouter.readCertificate("/cert/certificate.p12");
+
+        final ApnsKeyMaterial keyMaterial = ApnsUtil.readKeyMaterial(certificate, PASSPHRASE);
+
+        assertThat(keyMaterial.getCertificate()).isNotNull();
+        assertThat(keyMaterial.getPrivateKey()).isNotNull();
+        assertThat(keyMaterial.getDefaultTopic()).isEqualTo(ApnsUtil.readDefaultTopic(certificate, PASSPHRASE));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectWrongPassphrase() throws Exception {
+        final byte[] certificate = TestNotificationRouter.readCertificate("/cert/certificate.p12");
+
+        ApnsUtil.readKeyMaterial(certificate, "wrong".toCharArray());
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void shouldRejectStoreWithoutKey() throws Exception {
+        final KeyStore empty = KeyStore.getInstance("PKCS12");
+        empty.load(null, PASSPHRASE);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        empty.store(out, PASSPHRASE);
+
+        ApnsUtil.readKeyMaterial(out.toByteArray(), PASSPHRASE);
+    }
+}
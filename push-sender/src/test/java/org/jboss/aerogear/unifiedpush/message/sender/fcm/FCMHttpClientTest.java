@@ -0,0 +1,125 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.sender.fcm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.read;
+import static org.jboss.aerogear.unifiedpush.message.sender.HttpStubs.respond;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.android.gcm.server.MulticastResult;
+import com.google.android.gcm.server.Result;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class FCMHttpClientTest {
+
+    private HttpServer server;
+    private FCMHttpClient client;
+
+    private volatile int status = 200;
+    private volatile String response;
+    private volatile String lastRequest;
+    private volatile String lastAuthorization;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fcm/send", this::handle);
+        server.start();
+
+        System.setProperty(FCMHttpClient.CUSTOM_AEROGEAR_FCM_PUSH_HOST,
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/fcm/send");
+        client = new FCMHttpClient(2, 10, 5000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+        System.clearProperty(FCMHttpClient.CUSTOM_AEROGEAR_FCM_PUSH_HOST);
+    }
+
+    @Test
+    public void shouldParseMulticastResult() throws Exception {
+        response = "{\"multicast_id\":108,\"success\":1,\"failure\":1,\"canonical_ids\":1,\"results\":["
+                + "{\"message_id\":\"1:08\",\"registration_id\":\"new-token\"},"
+                + "{\"error\":\"NotRegistered\"}]}";
+
+        final MulticastResult result = client.send("secret", payload(), Arrays.asList("token-1", "token-2"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(lastAuthorization).isEqualTo("key=secret");
+        assertThat(lastRequest).contains("\"registration_ids\":[\"token-1\",\"token-2\"]");
+        assertThat(lastRequest).contains("\"data\":{\"alert\":\"Hello\"}");
+
+        assertThat(result.getMulticastId()).isEqualTo(108);
+        assertThat(result.getResults()).hasSize(2);
+        assertThat(result.getResults().get(0).getCanonicalRegistrationId()).isEqualTo("new-token");
+        assertThat(result.getResults().get(1).getErrorCodeName()).isEqualTo("NotRegistered");
+    }
+
+    @Test
+    public void shouldSendToTopic() throws Exception {
+        response = "{\"message_id\":42}";
+
+        final Result result = client.sendToTopic("secret", payload(), "/topics/news").get(5, TimeUnit.SECONDS);
+
+        assertThat(lastRequest).contains("\"to\":\"/topics/news\"");
+        assertThat(result.getMessageId()).isEqualTo("42");
+        assertThat(result.getErrorCodeName()).isNull();
+    }
+
+    @Test
+    public void shouldFailOnUnavailable() throws Exception {
+        status = 503;
+        response = "";
+
+        try {
+            client.send("secret", payload(), Collections.singletonList("token-1")).get(5, TimeUnit.SECONDS);
+            fail("FCM error was expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(FCMResponseException.class);
+            assertThat(((FCMResponseException) e.getCause()).getStatus()).isEqualTo(503);
+            assertThat(((FCMResponseException) e.getCause()).getRetryAfterSeconds()).isEqualTo(7);
+        }
+    }
+
+    private static Map<String, Object> payload() {
+        return Collections.singletonMap("data", Collections.singletonMap("alert", "Hello"));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        lastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+        lastRequest = read(exchange.getRequestBody());
+
+        exchange.getResponseHeaders().add("Retry-After", "7");
+        respond(exchange, status, response);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.throttle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.api.iOSVariant;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.configuration.SenderConfiguration;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class FairDispatchSchedulerTest {
+
+    private FairDispatchScheduler scheduler;
+    private final BlockingQueue<MessageHolderWithTokens> dispatched = new LinkedBlockingQueue<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        scheduler = new FairDispatchScheduler();
+        final Map<VariantType, SenderConfiguration> configurations =
+                (Map<VariantType, SenderConfiguration>) ReflectionTestUtils.getField(scheduler, "configurations");
+        configurations.put(VariantType.ANDROID, new SenderConfiguration(10, 2));
+        // at most 10 tokens per second and iOS variant
+        configurations.put(VariantType.IOS, new SenderConfiguration(10, 2, 10));
+        ReflectionTestUtils.setField(scheduler, "maxPending", 100);
+        ReflectionTestUtils.setField(scheduler, "maxPendingPerVariant", 5);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    public void shouldInterleaveVariants() throws InterruptedException {
+        final Variant large = variant(new AndroidVariant(), "large");
+        final Variant small = variant(new AndroidVariant(), "small");
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(batch(large, i));
+        }
+        scheduler.submit(batch(small, 0));
+        assertThat(scheduler.getPendingCount()).isEqualTo(6);
+
+        scheduler.start(dispatched::add);
+
+        final List<String> order = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            order.add(dispatched.poll(5, TimeUnit.SECONDS).getVariant().getVariantID());
+        }
+        // the small variant does not wait for the whole send of the large one
+        assertThat(order).containsExactly("large", "small", "large", "large", "large", "large");
+        assertThat(scheduler.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void shouldLimitRateOfVariant() throws InterruptedException {
+        final Variant limited = variant(new iOSVariant(), "limited");
+        final Variant other = variant(new AndroidVariant(), "other");
+        // 20 tokens, twice the rate of the variant
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(batch(limited, i));
+        }
+        scheduler.start(dispatched::add);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertThat(dispatched.poll(5, TimeUnit.SECONDS)).isNotNull();
+            if (i == 5) {
+                // the throttled variant does not hold back others
+                scheduler.submit(batch(other, 0));
+                assertThat(dispatched.poll(100, TimeUnit.MILLISECONDS).getVariant().getVariantID()).isEqualTo("other");
+            }
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(800);
+    }
+
+    @Test
+    public void shouldLimitPendingBatchesPerVariant() throws InterruptedException {
+        final Variant large = variant(new AndroidVariant(), "large");
+        final Variant small = variant(new AndroidVariant(), "small");
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit(batch(large, i));
+        }
+
+        // a full variant does not take the capacity of the others
+        assertThat(scheduler.hasCapacity(large)).isFalse();
+        assertThat(scheduler.hasCapacity(small)).isTrue();
+        assertThat(scheduler.hasCapacity()).isTrue();
+
+        scheduler.start(dispatched::add);
+        for (int i = 0; i < 5; i++) {
+            assertThat(dispatched.poll(5, TimeUnit.SECONDS)).isNotNull();
+        }
+        assertThat(scheduler.hasCapacity(large)).isTrue();
+    }
+
+    @Test
+    public void shouldDropQueueOfDrainedVariant() throws InterruptedException {
+        final Variant unlimited = variant(new AndroidVariant(), "unlimited");
+        final Variant limited = variant(new iOSVariant(), "limited");
+        scheduler.submit(batch(unlimited, 0));
+        scheduler.submit(batch(limited, 0));
+        scheduler.start(dispatched::add);
+
+        assertThat(dispatched.poll(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(dispatched.poll(5, TimeUnit.SECONDS)).isNotNull();
+
+        // the queue of the rate limited variant is kept until its bucket refilled
+        final Object lane = ((Map<?, ?>) ReflectionTestUtils.getField(scheduler, "lanes")).get(VariantType.IOS);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!isEmpty(lane) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(isEmpty(lane)).isTrue();
+    }
+
+    @Test
+    public void shouldNotHoldBackOtherNetworksWhileSenderBlocks() throws InterruptedException {
+        final Variant blocked = variant(new AndroidVariant(), "blocked");
+        final Variant other = variant(new iOSVariant(), "other");
+        final CountDownLatch release = new CountDownLatch(1);
+
+        scheduler.start(msg -> {
+            if (msg.getVariant() == blocked) {
+                // e.g. waiting for a connection permit of its push network
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            dispatched.add(msg);
+        });
+
+        scheduler.submit(batch(blocked, 0));
+        scheduler.submit(batch(other, 0));
+
+        assertThat(dispatched.poll(5, TimeUnit.SECONDS).getVariant().getVariantID()).isEqualTo("other");
+
+        release.countDown();
+        assertThat(dispatched.poll(5, TimeUnit.SECONDS).getVariant().getVariantID()).isEqualTo("blocked");
+    }
+
+    private static boolean isEmpty(Object lane) {
+        final ReentrantLock lock = (ReentrantLock) ReflectionTestUtils.getField(lane, "lock");
+        lock.lock();
+        try {
+            return ((Map<?, ?>) ReflectionTestUtils.getField(lane, "queues")).isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Variant variant(Variant variant, String variantID) {
+        variant.setVariantID(variantID);
+        return variant;
+    }
+
+    private static MessageHolderWithTokens batch(Variant variant, int serialId) {
+        return new MessageHolderWithTokens(new FlatPushMessageInformation(), new UnifiedPushMessage(), variant,
+                new ArrayList<>(Collections.nCopies(2, "token")), serialId);
+    }
+}
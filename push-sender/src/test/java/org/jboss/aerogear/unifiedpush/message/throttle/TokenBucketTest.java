@@ -0,0 +1,68 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.throttle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void shouldNotLimitWithoutRate() {
+        final TokenBucket bucket = new TokenBucket(0, 0);
+        bucket.consume(1000000);
+
+        assertThat(bucket.delayNanos(0)).isZero();
+    }
+
+    @Test
+    public void shouldDelayOverdrawnBucket() {
+        final TokenBucket bucket = new TokenBucket(100, 0);
+        assertThat(bucket.delayNanos(0)).isZero();
+
+        // a batch larger than the bucket is admitted, the next one waits until the debt is paid
+        bucket.consume(250);
+        assertThat(bucket.delayNanos(0)).isEqualTo(SECOND * 151 / 100);
+        assertThat(bucket.delayNanos(SECOND)).isEqualTo(SECOND * 51 / 100);
+        assertThat(bucket.delayNanos(SECOND * 151 / 100)).isZero();
+    }
+
+    @Test
+    public void shouldHoldAtMostOneSecond() {
+        final TokenBucket bucket = new TokenBucket(100, 0);
+        // idle for a minute
+        assertThat(bucket.delayNanos(60 * SECOND)).isZero();
+
+        bucket.consume(100);
+        assertThat(bucket.delayNanos(60 * SECOND)).isEqualTo(SECOND / 100);
+    }
+
+    @Test
+    public void shouldReportRefill() {
+        final TokenBucket bucket = new TokenBucket(100, 0);
+        assertThat(bucket.refillDelayNanos(0)).isZero();
+
+        bucket.consume(150);
+        assertThat(bucket.refillDelayNanos(0)).isEqualTo(SECOND * 150 / 100);
+        assertThat(bucket.refillDelayNanos(SECOND * 150 / 100)).isZero();
+    }
+}
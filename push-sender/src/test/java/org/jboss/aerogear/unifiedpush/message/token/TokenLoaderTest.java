@@ -0,0 +1,187 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.configuration.SenderConfiguration;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithTokens;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.message.throttle.FairDispatchScheduler;
+import org.jboss.aerogear.unifiedpush.message.token.TokenLoader.TokenLoaderWrapper;
+import org.jboss.aerogear.unifiedpush.message.token.recovery.TokenBatchRecoveryService;
+import org.jboss.aerogear.unifiedpush.message.util.HealthNetworkServiceImpl;
+import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
+import org.jboss.aerogear.unifiedpush.service.impl.health.HealthDetails;
+import org.jboss.aerogear.unifiedpush.service.impl.health.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.WorkQueueProcessor;
+
+public class TokenLoaderTest {
+
+    private final AtomicBoolean capacity = new AtomicBoolean();
+
+    private TokenLoader tokenLoader;
+    private WorkQueueProcessor<MessageHolderWithTokens> dispatchTokensEvent;
+    private TokenBatchRecoveryService recoveryService;
+    private FairDispatchScheduler dispatchScheduler;
+
+    @Before
+    public void setUp() {
+        dispatchTokensEvent = WorkQueueProcessor.<MessageHolderWithTokens>builder().build();
+
+        dispatchScheduler = mock(FairDispatchScheduler.class);
+        when(dispatchScheduler.hasCapacity()).thenAnswer(invocation -> capacity.get());
+
+        recoveryService = mock(TokenBatchRecoveryService.class);
+
+        tokenLoader = new TokenLoader();
+        ReflectionTestUtils.setField(tokenLoader, "recoveryService", recoveryService);
+        ReflectionTestUtils.setField(tokenLoader, "deferMillis", 500L);
+        ReflectionTestUtils.setField(tokenLoader, "dispatchTokensEvent", dispatchTokensEvent);
+        ReflectionTestUtils.setField(tokenLoader, "dispatchScheduler", dispatchScheduler);
+        ReflectionTestUtils.setField(tokenLoader, "dispatchMaxWaitNanos", TimeUnit.SECONDS.toNanos(10));
+    }
+
+    @After
+    public void tearDown() {
+        dispatchTokensEvent.shutdown();
+    }
+
+    @Test
+    public void doesNotStallWithCapacity() {
+        capacity.set(true);
+
+        assertThat(tokenLoader.awaitDispatchCapacity()).isTrue();
+        assertThat(tokenLoader.getStallCount()).isEqualTo(0);
+        assertThat(tokenLoader.getStalledProducers()).isEqualTo(0);
+    }
+
+    @Test
+    public void pausesUntilCapacityIsFreed() throws Exception {
+        final CompletableFuture<Boolean> result = CompletableFuture.supplyAsync(tokenLoader::awaitDispatchCapacity);
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (tokenLoader.getStalledProducers() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(tokenLoader.getStalledProducers()).isEqualTo(1);
+        assertThat(result.isDone()).isFalse();
+
+        capacity.set(true);
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(tokenLoader.getStallCount()).isEqualTo(1);
+        assertThat(tokenLoader.getStalledProducers()).isEqualTo(0);
+    }
+
+    @Test
+    public void givesUpAfterMaxWait() {
+        ReflectionTestUtils.setField(tokenLoader, "dispatchMaxWaitNanos", TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertThat(tokenLoader.awaitDispatchCapacity()).isFalse();
+        assertThat(tokenLoader.getStallCount()).isEqualTo(1);
+        assertThat(tokenLoader.getStalledProducers()).isEqualTo(0);
+    }
+
+    @Test
+    public void reportsStallsInHealthStatus() {
+        ReflectionTestUtils.setField(tokenLoader, "dispatchMaxWaitNanos", TimeUnit.MILLISECONDS.toNanos(20));
+        tokenLoader.awaitDispatchCapacity();
+
+        final HealthNetworkServiceImpl healthService = new HealthNetworkServiceImpl();
+        ReflectionTestUtils.setField(healthService, "tokenLoader", tokenLoader);
+
+        final HealthDetails details = healthService.tokenLoadingStatus();
+        assertThat(details.getTestStatus()).isEqualTo(Status.OK);
+        assertThat(details.getResult()).isEqualTo("0 loaders paused by a full dispatch queue, 1 pauses since startup");
+    }
+
+    @Test
+    public void defersAllVariantsWhenCapacityDoesNotFreeUp() {
+        ReflectionTestUtils.setField(tokenLoader, "dispatchMaxWaitNanos", TimeUnit.MILLISECONDS.toNanos(20));
+        final TokenLoader spy = spy(tokenLoader);
+        final TokenLoaderWrapper wrapper = new TokenLoaderWrapper();
+        wrapper.setTokenLoader(spy);
+
+        final Variant first = new AndroidVariant();
+        final Variant second = new AndroidVariant();
+        final MessageHolderWithVariants msg = new MessageHolderWithVariants(new FlatPushMessageInformation(),
+                new UnifiedPushMessage(), VariantType.ANDROID, Arrays.asList(first, second), 4, "token-4");
+
+        wrapper.loadAndQueueTokenBatch(msg);
+
+        verify(spy, never()).loadAndQueueTokenBatch(any(MessageHolderWithVariants.class));
+        verify(recoveryService).defer(msg, first, 4, "token-4", 500L);
+        verify(recoveryService).defer(msg, second, 4, "token-4", 500L);
+    }
+
+    @Test
+    public void recoversVariantWhenLoadingFails() {
+        capacity.set(true);
+        when(dispatchScheduler.hasCapacity(any(Variant.class))).thenReturn(true);
+
+        final AutowireCapableBeanFactory beanFactory = mock(AutowireCapableBeanFactory.class);
+        when(beanFactory.containsBean(VariantType.ANDROID.name())).thenReturn(true);
+        when(beanFactory.getBean(VariantType.ANDROID.name(), SenderConfiguration.class)).thenReturn(new SenderConfiguration(10, 2));
+        final ApplicationContext context = mock(ApplicationContext.class);
+        when(context.getAutowireCapableBeanFactory()).thenReturn(beanFactory);
+        ReflectionTestUtils.setField(tokenLoader, "context", context);
+
+        final ClientInstallationService clientInstallationService = mock(ClientInstallationService.class);
+        when(clientInstallationService.findAllDeviceTokenForVariantIDByCriteria(anyString(), anyListOf(String.class),
+                anyListOf(String.class), anyListOf(String.class), anyInt(), anyString()))
+                .thenThrow(new DataAccessResourceFailureException("connection lost"));
+        ReflectionTestUtils.setField(tokenLoader, "clientInstallationService", clientInstallationService);
+
+        final Variant variant = new AndroidVariant();
+        final MessageHolderWithVariants msg = new MessageHolderWithVariants(new FlatPushMessageInformation(),
+                new UnifiedPushMessage(), VariantType.ANDROID, Arrays.asList(variant), 4, "token-4");
+
+        tokenLoader.loadAndQueueTokenBatch(msg);
+
+        // nothing was queued, the variant continues from the position it was loaded from
+        verify(recoveryService).recover(msg, variant, 4, "token-4");
+        verify(recoveryService, never()).acknowledge(any(MessageHolderWithVariants.class), any(Variant.class));
+    }
+}
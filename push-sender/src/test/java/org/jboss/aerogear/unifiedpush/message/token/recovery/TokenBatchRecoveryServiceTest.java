@@ -0,0 +1,161 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.TopicProcessor;
+
+public class TokenBatchRecoveryServiceTest {
+
+    private final BlockingQueue<MessageHolderWithVariants> replayed = new LinkedBlockingQueue<>();
+
+    private InMemoryTokenBatchRecoveryStore store;
+    private TopicProcessor<MessageHolderWithVariants> nextBatchEvent;
+    private TokenBatchRecoveryService recoveryService;
+
+    private AndroidVariant variant;
+    private MessageHolderWithVariants request;
+
+    @Before
+    public void setUp() {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(TokenBatchRecoveryService.PROP_INITIAL_BACKOFF, 1000)).thenReturn(10);
+        when(config.getProperty(TokenBatchRecoveryService.PROP_MAX_BACKOFF, 60000)).thenReturn(10);
+        when(config.getProperty(TokenBatchRecoveryService.PROP_MAX_ATTEMPTS, 10)).thenReturn(2);
+
+        store = new InMemoryTokenBatchRecoveryStore();
+        nextBatchEvent = TopicProcessor.<MessageHolderWithVariants>builder().build();
+        nextBatchEvent.subscribe(replayed::add);
+
+        recoveryService = new TokenBatchRecoveryService();
+        ReflectionTestUtils.setField(recoveryService, "config", config);
+        ReflectionTestUtils.setField(recoveryService, "store", store);
+        ReflectionTestUtils.setField(recoveryService, "nextBatchEvent", nextBatchEvent);
+        recoveryService.start();
+
+        variant = new AndroidVariant();
+        variant.setGoogleKey("key");
+        request = new MessageHolderWithVariants(new FlatPushMessageInformation(), new UnifiedPushMessage(),
+                VariantType.ANDROID, Collections.<Variant>singletonList(variant));
+    }
+
+    @After
+    public void tearDown() {
+        recoveryService.stop();
+        nextBatchEvent.shutdown();
+    }
+
+    @Test
+    public void replaysFailedRequestThroughTokenLoadingQueue() throws Exception {
+        recoveryService.recover(request, variant, 5, "token-5");
+
+        assertThat(store.loadAll()).extracting("attempt").containsExactly(1);
+
+        final MessageHolderWithVariants replay = replayed.poll(5, TimeUnit.SECONDS);
+        assertThat(replay).isNotNull();
+        assertThat(replay.getVariants()).containsExactly(variant);
+        assertThat(replay.getLastSerialId()).isEqualTo(5);
+        assertThat(replay.getLastTokenFromPreviousBatch()).isEqualTo("token-5");
+    }
+
+    @Test
+    public void acknowledgesOnlyMatchingSerial() throws Exception {
+        recoveryService.recover(request, variant, 5, "token-5");
+        final MessageHolderWithVariants replay = replayed.poll(5, TimeUnit.SECONDS);
+
+        // the original request, or a replay of an older position, does not remove the cursor
+        recoveryService.acknowledge(request, variant);
+        assertThat(recoveryService.getPendingCount()).isEqualTo(1);
+        assertThat(store.loadAll()).hasSize(1);
+
+        recoveryService.acknowledge(replay, variant);
+        assertThat(recoveryService.getPendingCount()).isEqualTo(0);
+        assertThat(store.loadAll()).isEmpty();
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        recoveryService.recover(request, variant, 5, "token-5");
+        recoveryService.recover(request, variant, 5, "token-5");
+        assertThat(store.loadAll()).extracting("attempt").containsExactly(2);
+
+        // max_attempts is 2
+        recoveryService.recover(request, variant, 5, "token-5");
+        assertThat(recoveryService.getPendingCount()).isEqualTo(0);
+        assertThat(store.loadAll()).isEmpty();
+    }
+
+    @Test
+    public void progressResetsAttempts() {
+        recoveryService.recover(request, variant, 5, "token-5");
+        recoveryService.recover(request, variant, 5, "token-5");
+
+        // the replay queued further batches before it failed again
+        recoveryService.recover(request, variant, 7, "token-7");
+        assertThat(store.loadAll()).extracting("attempt").containsExactly(1);
+    }
+
+    @Test
+    public void deferredRequestStaysJournaledUntilResumed() throws Exception {
+        recoveryService.defer(request, variant, 3, "token-3", 10);
+
+        assertThat(store.loadAll()).extracting("serialId").containsExactly(3);
+
+        final MessageHolderWithVariants resumed = replayed.poll(5, TimeUnit.SECONDS);
+        assertThat(resumed).isNotNull();
+        assertThat(resumed.getLastSerialId()).isEqualTo(3);
+        assertThat(resumed.getLastTokenFromPreviousBatch()).isEqualTo("token-3");
+
+        // replaying alone does not remove the cursor, only loading the resumed request does
+        assertThat(store.loadAll()).hasSize(1);
+
+        recoveryService.acknowledge(resumed, variant);
+        assertThat(store.loadAll()).isEmpty();
+        assertThat(recoveryService.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void deferralDoesNotCountAsAttempt() throws Exception {
+        recoveryService.defer(request, variant, 3, "token-3", 10);
+        final MessageHolderWithVariants resumed = replayed.poll(5, TimeUnit.SECONDS);
+
+        // the resumed request fails on the same position
+        recoveryService.recover(resumed, variant, 3, "token-3");
+
+        assertThat(store.loadAll()).extracting("attempt").containsExactly(1);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.message.token.recovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.message.UnifiedPushMessage;
+import org.jboss.aerogear.unifiedpush.message.holder.MessageHolderWithVariants;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TokenBatchRecoveryStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFileStoreSurvivesReopen() throws Exception {
+        final TokenBatchCursor cursor = cursor("token-42", 7, 2);
+
+        new FileTokenBatchRecoveryStore(folder.getRoot().toPath()).store(cursor);
+
+        final Collection<TokenBatchCursor> loaded = new FileTokenBatchRecoveryStore(folder.getRoot().toPath()).loadAll();
+        assertThat(loaded).hasSize(1);
+
+        final TokenBatchCursor restored = loaded.iterator().next();
+        assertThat(restored.getKey()).isEqualTo(cursor.getKey());
+        assertThat(restored.getLastTokenFromPreviousBatch()).isEqualTo("token-42");
+        assertThat(restored.getSerialId()).isEqualTo(7);
+        assertThat(restored.getAttempt()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFileStoreReplacesAndRemoves() throws Exception {
+        final FileTokenBatchRecoveryStore store = new FileTokenBatchRecoveryStore(folder.getRoot().toPath());
+        final TokenBatchCursor first = cursor("token-1", 1, 1);
+
+        store.store(first);
+        store.store(new TokenBatchCursor(first.getMessage(), 2));
+        assertThat(store.loadAll()).extracting("attempt").containsExactly(2);
+
+        store.remove(first.getKey());
+        assertThat(store.loadAll()).isEmpty();
+    }
+
+    @Test
+    public void testInMemoryStore() {
+        final InMemoryTokenBatchRecoveryStore store = new InMemoryTokenBatchRecoveryStore();
+        final TokenBatchCursor cursor = cursor(null, 0, 1);
+
+        store.store(cursor);
+        assertThat(store.loadAll()).containsExactly(cursor);
+
+        store.remove(cursor.getKey());
+        assertThat(store.loadAll()).isEmpty();
+    }
+
+    @Test
+    public void testBackoffIsExponentialAndCapped() {
+        assertThat(TokenBatchRecoveryService.backoff(1, 1000, 60000)).isEqualTo(1000);
+        assertThat(TokenBatchRecoveryService.backoff(2, 1000, 60000)).isEqualTo(2000);
+        assertThat(TokenBatchRecoveryService.backoff(4, 1000, 60000)).isEqualTo(8000);
+        assertThat(TokenBatchRecoveryService.backoff(10, 1000, 60000)).isEqualTo(60000);
+        assertThat(TokenBatchRecoveryService.backoff(100, 1000, 60000)).isEqualTo(60000);
+    }
+
+    private static TokenBatchCursor cursor(String lastToken, int serialId, int attempt) {
+        final AndroidVariant variant = new AndroidVariant();
+        variant.setGoogleKey("key");
+
+        return new TokenBatchCursor(new MessageHolderWithVariants(new FlatPushMessageInformation(),
+                new UnifiedPushMessage(), VariantType.ANDROID, Collections.singletonList(variant), serialId, lastToken),
+                attempt);
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.jboss.aerogear.unifiedpush.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -65,6 +66,17 @@ public interface AliasService {
 
 	Alias find(UUID pushApplicationId, UUID userId);
 
+	/**
+	 * Filter user ids registered to the application.
+	 *
+	 * @param pushApplicationId
+	 *            selected push application
+	 * @param userIds
+	 *            user ids to look up, concurrently
+	 * @return existing user ids, in the order of the given ids
+	 */
+	List<UUID> findExisting(UUID pushApplicationId, Collection<UUID> userIds);
+
 	void remove(LoggedInUser loggedInUser, UUID pushApplicationId, String alias);
 
 	/**
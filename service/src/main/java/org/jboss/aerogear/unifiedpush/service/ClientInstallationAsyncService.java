@@ -18,6 +18,7 @@ package org.jboss.aerogear.unifiedpush.service;
 
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
@@ -32,6 +33,14 @@ public interface ClientInstallationAsyncService {
 
 	public void addInstallations(Variant variant, List<Installation> installations);
 
+	/**
+	 * Imports the installations in the background and closes the stream afterwards.
+	 *
+	 * @param variant the variant to store on
+	 * @param installations stream of installations, typically backed by an uploaded file
+	 */
+	public void addInstallations(Variant variant, Stream<Installation> installations);
+
 	public void removeInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
 
 	public void removeInstallationForVariantByDeviceToken(String variantID, String deviceToken);
@@ -17,7 +17,9 @@
 package org.jboss.aerogear.unifiedpush.service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
@@ -45,6 +47,16 @@ public interface ClientInstallationService {
      */
     void addInstallations(Variant variant, List<Installation> installations);
 
+    /**
+     * Add new Installations objects read from a stream, for importing devices on the database.
+     * The installations are consumed and stored in chunks, so the stream may be arbitrarily large.
+     * Installations without a device token, or with a token already registered for the variant, are ignored.
+     *
+     * @param variant the variant to store on
+     * @param installations stream of installations
+     */
+    void addInstallations(Variant variant, Stream<Installation> installations);
+
     /**
      * Performs an update/merge on the given entity.
      *
@@ -99,6 +111,17 @@ public interface ClientInstallationService {
      */
     void removeInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens);
 
+    /**
+     * Used for "feedback service": Replaces the tokens of Installations of a Variant with the canonical tokens
+     * reported by the push network. Tokens whose canonical token is already registered are not replaced, the caller
+     * is expected to remove them.
+     *
+     * @param variantID id of the variant
+     * @param canonicalTokens canonical token by current token
+     * @return current tokens that were not replaced, because their canonical token is already registered
+     */
+    Set<String> replaceDeviceTokensForVariant(String variantID, Map<String, String> canonicalTokens);
+
     /**
      * Used to remove single device token from UPS. Used for error handling of specific tokens
      *
@@ -1,5 +1,6 @@
 package org.jboss.aerogear.unifiedpush.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -24,5 +25,10 @@ public interface DocumentService {
 
 	Stream<DocumentContent> find(DocumentMetadata metadata, QueryOptions options);
 
+	/**
+	 * Query documents of many users, users are queried concurrently.
+	 */
+	List<DocumentContent> find(UUID pushApplicationId, String database, Collection<UUID> userIds, QueryOptions options);
+
 	List<DocumentContent> findLatest(PushApplication pushApp, String database, String id, List<Alias> aliases);
 }
@@ -16,6 +16,9 @@
  */
 package org.jboss.aerogear.unifiedpush.service;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
 import org.springframework.cache.annotation.Cacheable;
@@ -56,6 +59,17 @@ public interface GenericVariantService {
 	@Cacheable(value = GenericVariantService.CACHE_NAME, unless = "#result == null")
 	Variant findByVariantID(String variantID);
 
+	/**
+	 * Returns the Variant entities matching the given variantIDs, looking up
+	 * all variants missing in the cache with one query.
+	 *
+	 * @param variantIDs
+	 *            the ids
+	 *
+	 * @return the existing variants, in the order of the given ids
+	 */
+	List<Variant> findByVariantIDs(Collection<String> variantIDs);
+
 	/**
 	 * Returns the Variant from the matching client in keycloak
 	 *
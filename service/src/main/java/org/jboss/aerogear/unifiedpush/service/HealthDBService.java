@@ -31,4 +31,11 @@ public interface HealthDBService {
      * @return the HealthDetails with the current database health
      */
     Future<HealthDetails> dbStatus();
+
+    /**
+     * Get the progress of the push message retention, whether a run is in progress, the rows and chunks deleted by the
+     * current or last run and the rows deleted since startup.
+     * @return the HealthDetails with the current retention progress, always Status.OK
+     */
+    HealthDetails retentionStatus();
 }
@@ -17,6 +17,7 @@
 package org.jboss.aerogear.unifiedpush.service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.jboss.aerogear.unifiedpush.api.Installation;
 import org.jboss.aerogear.unifiedpush.api.PushApplication;
@@ -97,5 +98,27 @@ public interface PushSearchService {
      */
     PageResult<Installation, Count> findAllInstallationsByVariantForDeveloper(String variantID, Integer page, Integer pageSize, String search);
 
+    /**
+     * Find a page of installations for the variant specified, starting after the given installation ID.
+     *
+     * @param variantID the id of the variant to find the installations for
+     * @param afterId ID of the last installation of the previous page, or <code>null</code> for the first page
+     * @param pageSize the size of the pages
+     * @param search Search criteria
+     * @param count whether the total number of rows should be counted
+     *
+     * @return page result containing the list plus a total number of rows, or a <code>null</code> aggregate if not counted
+     */
+    PageResult<Installation, Count> findInstallationsByVariantForDeveloperAfter(String variantID, String afterId, int pageSize, String search, boolean count);
+
+    /**
+     * Passes all installations for the variant specified to the consumer, one by one, without loading them all into
+     * memory. The installations are only valid within the call of the consumer.
+     *
+     * @param variantID the id of the variant to export the installations for
+     * @param consumer receives the installations, ordered by ID
+     */
+    void forEachInstallationByVariantForDeveloper(String variantID, Consumer<Installation> consumer);
+
     void setLoginName(LoggedInUser loginName);
 }
@@ -17,6 +17,7 @@
 package org.jboss.aerogear.unifiedpush.service.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
@@ -121,6 +122,11 @@ public class AliasServiceImpl implements AliasService {
 		return aliasDao.findOne(pushApplicationId, userId);
 	}
 
+	@Override
+	public List<UUID> findExisting(UUID pushApplicationId, Collection<UUID> userIds) {
+		return aliasDao.findExistingUserIds(pushApplicationId, userIds);
+	}
+
 	/**
 	 * Test if user exists / registered to KC.
 	 *
@@ -2,6 +2,7 @@ package org.jboss.aerogear.unifiedpush.service.impl;
 
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
@@ -33,6 +34,13 @@ public class ClientInstallationAsyncServiceImpl implements ClientInstallationAsy
 		clientInstallationService.addInstallations(variant, installations);
 	}
 
+	@Async
+	public void addInstallations(Variant variant, Stream<Installation> installations) {
+		try (Stream<Installation> stream = installations) {
+			clientInstallationService.addInstallations(variant, stream);
+		}
+	}
+
 	@Async
 	public void removeInstallationsForVariantByDeviceTokens(String variantID, Set<String> deviceTokens) {
 		clientInstallationService.removeInstallationsForVariantByDeviceTokens(variantID, deviceTokens);
@@ -16,9 +16,17 @@
  */
 package org.jboss.aerogear.unifiedpush.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
@@ -39,6 +47,7 @@ import org.jboss.aerogear.unifiedpush.service.ClientInstallationService;
 import org.jboss.aerogear.unifiedpush.service.VerificationService;
 import org.jboss.aerogear.unifiedpush.service.impl.spring.IConfigurationService;
 import org.jboss.aerogear.unifiedpush.service.util.FCMTopicManager;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -53,6 +62,9 @@ import org.springframework.transaction.annotation.Transactional;
 public class ClientInstallationServiceImpl implements ClientInstallationService {
 	private final Logger logger = LoggerFactory.getLogger(ClientInstallationServiceImpl.class);
 
+	// number of imported installations looked up and inserted together
+	public static final String IMPORT_CHUNK_SIZE = "aerogear.importer.chunk_size";
+
 	@Inject
 	private InstallationDao installationDao;
 
@@ -71,6 +83,9 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 	@Inject
 	private IConfigurationService configuration;
 
+	@Inject
+	private ConfigurationEnvironment environment;
+
 	@Override
 	public Variant associateInstallation(Installation installation, Variant currentVariant) {
 		if (installation.getAlias() == null) {
@@ -160,41 +175,105 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 			return;
 		}
 
-		// TODO - On a large scale database, we can't load entire device list.
-		Set<String> existingTokens = installationDao.findAllDeviceTokenForVariantID(variant.getVariantID());
+		addInstallations(variant, installations.stream());
+	}
+
+	@Override
+	public void addInstallations(Variant variant, Stream<Installation> installations) {
+		final int chunkSize = Math.max(1, environment.getProperty(IMPORT_CHUNK_SIZE, 1000));
+		final List<Installation> chunk = new ArrayList<>(chunkSize);
+		long imported = 0;
 
 		// clear out:
 		installationDao.flushAndClear();
 
-		for (int i = 0; i < installations.size(); i++) {
+		final Iterator<Installation> iterator = installations.iterator();
+		while (iterator.hasNext()) {
+			final Installation current = iterator.next();
 
-			Installation current = installations.get(i);
-
-			// let's avoid duplicated tokens/devices per variant
-			// For devices without a token, let's also not bother the DAO layer
+			// For devices without a token, let's not bother the DAO layer
 			// to throw BeanValidation exception
-			if (!existingTokens.contains(current.getDeviceToken()) && hasTokenValue(current)) {
+			if (!hasTokenValue(current)) {
+				continue;
+			}
+
+			chunk.add(current);
+			if (chunk.size() == chunkSize) {
+				imported += importChunk(variant, chunk);
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			imported += importChunk(variant, chunk);
+		}
 
-				logger.trace("Importing device with token: {}", current.getDeviceToken());
+		logger.info("Imported {} devices for variant {}", imported, variant.getVariantID());
+	}
 
-				storeInstallationAndSetReferences(variant, current);
+	/**
+	 * Stores the installations of the chunk whose tokens are neither registered for the variant, nor repeated
+	 * within the chunk. Installations of previous chunks are already flushed, so the lookup covers them as well.
+	 */
+	private int importChunk(Variant variant, List<Installation> chunk) {
+		final Map<String, Installation> installationsByToken = new LinkedHashMap<>();
+		for (Installation installation : chunk) {
+			// ensure lower case for iOS, before comparing with the stored tokens
+			if (variant.getType() == VariantType.IOS) {
+				installation.setDeviceToken(installation.getDeviceToken().toLowerCase());
+			}
+			installationsByToken.putIfAbsent(installation.getDeviceToken(), installation);
+		}
 
-				// and add a reference to the existing tokens set, to ensure the
-				// JSON file contains no duplicates:
-				existingTokens.add(current.getDeviceToken());
+		// let's avoid duplicated tokens/devices per variant, for now no update is applied!
+		installationDao.findExistingDeviceTokensForVariant(variant.getVariantID(), installationsByToken.keySet())
+				.forEach(installationsByToken::remove);
 
-				// some tunings, ever 10k devices releasing resources
-				if (i % 10000 == 0) {
-					logger.trace("releasing some resources during import");
-					installationDao.flushAndClear();
-				}
-			} else {
-				// for now, we ignore them.... no update applied!
-				logger.trace("Device with token '{}' already exists. Ignoring it ", current.getDeviceToken());
+		final Map<String, Category> categoriesByName = findCategoriesByName(installationsByToken.values());
+		for (Installation installation : installationsByToken.values()) {
+			installation.setVariant(variant);
+			resolveCategories(installation, categoriesByName);
+		}
+
+		installationDao.createInBatch(new ArrayList<>(installationsByToken.values()));
+		return installationsByToken.size();
+	}
+
+	/**
+	 * Looks up the stored categories of all installations of a chunk with a single query.
+	 */
+	private Map<String, Category> findCategoriesByName(Collection<Installation> installations) {
+		final Set<String> names = new HashSet<>();
+		for (Installation installation : installations) {
+			if (installation.getCategories() != null) {
+				names.addAll(convertToNames(installation.getCategories()));
 			}
 		}
-		// clear out:
-		installationDao.flushAndClear();
+
+		final Map<String, Category> categoriesByName = new HashMap<>();
+		if (!names.isEmpty()) {
+			categoryDao.findByNames(new ArrayList<>(names)).forEach(category -> categoriesByName.put(category.getName(), category));
+		}
+		return categoriesByName;
+	}
+
+	/**
+	 * Replaces the posted categories of the installation with the stored ones. Cascading the installations would
+	 * persist every posted copy of a new category, so categories unknown to the database are stored up-front, once per
+	 * chunk, and shared by the installations of the chunk.
+	 */
+	private void resolveCategories(Installation installation, Map<String, Category> categoriesByName) {
+		if (installation.getCategories() == null || installation.getCategories().isEmpty()) {
+			return;
+		}
+
+		final Set<Category> categories = new HashSet<>();
+		for (Category category : installation.getCategories()) {
+			categories.add(categoriesByName.computeIfAbsent(category.getName(), name -> {
+				categoryDao.create(category);
+				return category;
+			}));
+		}
+		installation.setCategories(categories);
 	}
 
 	@Override
@@ -250,6 +329,30 @@ public class ClientInstallationServiceImpl implements ClientInstallationService
 		this.removeInstallations(inactiveInstallations);
 	}
 
+	@Override
+	public Set<String> replaceDeviceTokensForVariant(String variantID, Map<String, String> canonicalTokens) {
+		// canonical tokens can be registered already, or shared by several current tokens
+		final Set<String> claimed = new HashSet<>(
+				installationDao.findExistingDeviceTokensForVariant(variantID, canonicalTokens.values()));
+		final Map<String, String> replacements = new LinkedHashMap<>();
+		final Set<String> duplicates = new HashSet<>();
+
+		canonicalTokens.forEach((current, canonical) -> {
+			if (claimed.add(canonical)) {
+				replacements.put(current, canonical);
+			} else {
+				duplicates.add(current);
+			}
+		});
+
+		if (!replacements.isEmpty()) {
+			logger.info("Based on canonical ids, updating {} installations of variant {} with new tokens",
+					replacements.size(), variantID);
+			installationDao.updateDeviceTokensForVariant(variantID, replacements);
+		}
+		return duplicates;
+	}
+
 	@Override
 	public void removeInstallationForVariantByDeviceToken(String variantID, String deviceToken) {
 		removeInstallation(findInstallationForVariantByDeviceToken(variantID, deviceToken));
@@ -3,6 +3,7 @@ package org.jboss.aerogear.unifiedpush.service.impl;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Stream;
@@ -42,13 +43,23 @@ public class DocumentServiceImpl implements DocumentService {
 
 	@Override
 	public Stream<DocumentContent> find(DocumentMetadata metadata, QueryOptions options) {
+		return (Stream<DocumentContent>) documentDao.find(new DocumentKey(metadata), withDefaultPeriod(options));
+	}
+
+	@Override
+	public List<DocumentContent> find(UUID pushApplicationId, String database, Collection<UUID> userIds,
+			QueryOptions options) {
+		return documentDao.findForUsers(new DocumentKey(pushApplicationId, database), userIds,
+				withDefaultPeriod(options));
+	}
+
+	private QueryOptions withDefaultPeriod(QueryOptions options) {
 		// Always query X days period in case from date or limit are missing
 		if (options != null && options.getFromDate() == null && options.getLimit() == null) {
 			options.setFromDate(LocalDateTime.now().minusDays(configuration.getQueryDefaultPeriodInDays())
 					.toInstant(ZoneOffset.UTC).toEpochMilli());
 		}
-
-		return (Stream<DocumentContent>) documentDao.find(new DocumentKey(metadata), options);
+		return options;
 	}
 
 	@Override
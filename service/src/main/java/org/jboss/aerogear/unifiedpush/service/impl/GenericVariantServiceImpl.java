@@ -16,6 +16,13 @@
  */
 package org.jboss.aerogear.unifiedpush.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 
 import org.jboss.aerogear.unifiedpush.api.Variant;
@@ -57,6 +64,39 @@ public class GenericVariantServiceImpl implements GenericVariantService {
 		return variantDao.findByVariantID(variantID);
 	}
 
+	@Override
+	public List<Variant> findByVariantIDs(Collection<String> variantIDs) {
+		final Cache cache = cacheManager.getCache(GenericVariantService.CACHE_NAME);
+		final Collection<String> uniqueIDs = new LinkedHashSet<>(variantIDs);
+		final Map<String, Variant> variants = new HashMap<>(uniqueIDs.size());
+
+		// Try to hit cache, load all missing variants at once
+		final List<String> missingIDs = new ArrayList<>();
+		for (String variantID : uniqueIDs) {
+			ValueWrapper cacheVar = cache.get(variantID);
+			if (cacheVar != null && cacheVar.get() != null) {
+				variants.put(variantID, (Variant) cacheVar.get());
+			} else {
+				missingIDs.add(variantID);
+			}
+		}
+
+		if (!missingIDs.isEmpty()) {
+			for (Variant var : variantDao.findAllVariantsByIDs(missingIDs)) {
+				cache.put(var.getVariantID(), var);
+				variants.put(var.getVariantID(), var);
+			}
+		}
+
+		final List<Variant> result = new ArrayList<>(variants.size());
+		for (String variantID : uniqueIDs) {
+			Variant var = variants.get(variantID);
+			if (var != null)
+				result.add(var);
+		}
+		return result;
+	}
+
 	/*
 	 * Cacheable service
 	 */
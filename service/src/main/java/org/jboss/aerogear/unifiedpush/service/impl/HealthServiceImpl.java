@@ -24,6 +24,7 @@ import org.jboss.aerogear.unifiedpush.jpa.dao.impl.JPAHealthDao;
 import org.jboss.aerogear.unifiedpush.service.HealthDBService;
 import org.jboss.aerogear.unifiedpush.service.impl.health.HealthDetails;
 import org.jboss.aerogear.unifiedpush.service.impl.health.Status;
+import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageInformationRetention;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Service;
@@ -33,6 +34,9 @@ public class HealthServiceImpl implements HealthDBService {
     @Inject
     private JPAHealthDao healthDao;
 
+    @Inject
+    private PushMessageInformationRetention retention;
+
     @Async
     @Override
     public Future<HealthDetails> dbStatus() {
@@ -50,4 +54,22 @@ public class HealthServiceImpl implements HealthDBService {
         details.stop();
         return new AsyncResult<>(details);
     }
+
+    @Override
+    public HealthDetails retentionStatus() {
+        HealthDetails details = new HealthDetails();
+        details.setDescription("Push message retention");
+        details.start();
+        details.setTestStatus(Status.OK);
+        if (retention.isRunning()) {
+            details.setResult(String.format("running, %d deleted in %d chunks so far", retention.getLastRunDeleted(),
+                    retention.getLastRunChunks()));
+        } else {
+            details.setResult(String.format("last run deleted %d in %d chunks within %d ms, %d deleted since startup",
+                    retention.getLastRunDeleted(), retention.getLastRunChunks(), retention.getLastRunMillis(),
+                    retention.getDeletedCount()));
+        }
+        details.stop();
+        return details;
+    }
 }
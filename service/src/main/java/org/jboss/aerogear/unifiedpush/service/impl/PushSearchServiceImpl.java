@@ -19,6 +19,7 @@ package org.jboss.aerogear.unifiedpush.service.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import javax.inject.Inject;
 
@@ -29,6 +30,8 @@ import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
 import org.jboss.aerogear.unifiedpush.dao.InstallationDao;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
 import org.jboss.aerogear.unifiedpush.dao.PushApplicationDao;
+import org.jboss.aerogear.unifiedpush.dao.ResultStreamException;
+import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
 import org.jboss.aerogear.unifiedpush.dao.VariantDao;
 import org.jboss.aerogear.unifiedpush.dto.Count;
 import org.jboss.aerogear.unifiedpush.service.PushSearchService;
@@ -83,6 +86,27 @@ public class PushSearchServiceImpl implements PushSearchService {
 		return installationDao.findInstallationsByVariant(variantID, page, pageSize, search);
 	}
 
+	@Override
+	public PageResult<Installation, Count> findInstallationsByVariantForDeveloperAfter(String variantID, String afterId,
+			int pageSize, String search, boolean count) {
+		return installationDao.findInstallationsByVariantForDeveloperAfter(variantID, null, afterId, pageSize, search,
+				count);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void forEachInstallationByVariantForDeveloper(String variantID, Consumer<Installation> consumer) {
+		// the cursor is released also if the consumer fails, e.g. when the client went away
+		try (ResultsStream<Installation> installations = installationDao
+				.streamInstallationsByVariantForDeveloper(variantID, null).executeQuery()) {
+			while (installations.next()) {
+				consumer.accept(installations.get());
+			}
+		} catch (ResultStreamException e) {
+			throw new IllegalStateException("Failed to stream installations of variant " + variantID, e);
+		}
+	}
+
 	/**
 	 * Receives the dashboard data for the given user
 	 */
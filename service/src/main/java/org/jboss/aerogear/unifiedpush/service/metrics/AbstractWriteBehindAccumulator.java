@@ -0,0 +1,338 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Write-behind buffer for metrics that are updated far more often than they need to be written.
+ *
+ * Updates are counted in memory, one counter per key, and written periodically in one transaction with one write per
+ * key. Updates that are recorded but not yet flushed are lost if the JVM dies. This loss is bounded by the flush
+ * interval and by the maximum number of buffered updates, which triggers an early flush when reached. Buffered updates
+ * are flushed on shutdown. A flush interval of 0 disables the write-behind.
+ *
+ * Counters are striped {@link LongAdder}s that are never reset, so that the updates of a hot key, e.g. the opens of a
+ * campaign, do not contend on a single lock or map bin. A flush writes the updates counted since the counter was
+ * written last. Counters without updates since the previous flush are removed from the map and retired. An update that
+ * still reaches a retired counter puts it on the late queue, which the next flush writes, so no update is lost.
+ *
+ * If the flush transaction fails, every key is written in a transaction of its own, so that one bad key does not hold
+ * back the others. A key that fails is written once more right away, which turns an insert that lost a race against
+ * another node into an update. Keys that still fail are kept for the next flush, and dropped after
+ * {@value #MAX_FAILED_FLUSHES} failed flushes in a row, e.g. when the row they refer to was deleted.
+ *
+ * @param <C> in-memory counter of a key
+ */
+public abstract class AbstractWriteBehindAccumulator<C extends AbstractWriteBehindAccumulator.Counter> {
+
+    static final int MAX_FAILED_FLUSHES = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, C> counters = new ConcurrentHashMap<>();
+    private final Queue<C> retired = new ConcurrentLinkedQueue<>();
+    private final LongAdder pending = new LongAdder();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final String name;
+    private final String flushIntervalProperty;
+    private final int defaultFlushInterval;
+    private final String maxPendingProperty;
+    private final int defaultMaxPending;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private TransactionTemplate transactionTemplate;
+    private ScheduledExecutorService scheduler;
+    private long maxPending;
+
+    /**
+     * @param name name of the buffered updates, used for the flush thread and log messages
+     * @param flushIntervalProperty property of the flush interval in milliseconds
+     * @param defaultFlushInterval flush interval if the property is not set
+     * @param maxPendingProperty property of the maximum number of buffered updates
+     * @param defaultMaxPending maximum number of buffered updates if the property is not set
+     */
+    protected AbstractWriteBehindAccumulator(String name, String flushIntervalProperty, int defaultFlushInterval,
+            String maxPendingProperty, int defaultMaxPending) {
+        this.name = name;
+        this.flushIntervalProperty = flushIntervalProperty;
+        this.defaultFlushInterval = defaultFlushInterval;
+        this.maxPendingProperty = maxPendingProperty;
+        this.defaultMaxPending = defaultMaxPending;
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        final long flushInterval = config.getProperty(flushIntervalProperty, defaultFlushInterval);
+        maxPending = config.getProperty(maxPendingProperty, defaultMaxPending);
+
+        if (flushInterval > 0) {
+            final String threadName = name.replace(' ', '-') + "-flush";
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::scheduledFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            logger.info("write-behind of {} is disabled", name);
+        }
+    }
+
+    /**
+     * @return true if updates are buffered and written periodically
+     */
+    public boolean isEnabled() {
+        return scheduler != null;
+    }
+
+    /**
+     * @return number of updates recorded and not yet written
+     */
+    public long getPendingCount() {
+        return pending.sum();
+    }
+
+    /**
+     * Counts one update of the given key.
+     *
+     * @param key key of the counter
+     * @param factory creates the counter if the key has none
+     * @param update applies the update to the fields of the counter, besides counting it
+     */
+    protected void record(String key, Supplier<C> factory, Consumer<C> update) {
+        // get first, computeIfAbsent locks the bin of an existing key on Java 8
+        C counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> factory.get());
+        }
+        update.accept(counter);
+        counter.updates.increment();
+        if (counter.retired) {
+            // a flush may have read the counter before this update
+            retired.add(counter);
+        }
+        pending.increment();
+
+        if (scheduler != null && pending.sum() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::scheduledFlush);
+        }
+    }
+
+    /**
+     * Writes all buffered updates in one transaction. If the transaction fails, the keys are written one by one.
+     *
+     * @return number of written rows
+     */
+    public synchronized int flush() {
+        flushRequested.set(false);
+
+        final Set<C> flushed = new LinkedHashSet<>();
+        for (C counter : counters.values()) {
+            if (counter.snapshot()) {
+                flushed.add(counter);
+            } else if (counters.remove(counter.key, counter)) {
+                counter.retired = true;
+                // updates recorded before the counter was marked retired are seen by this snapshot
+                if (counter.snapshot()) {
+                    flushed.add(counter);
+                }
+            }
+        }
+        for (C counter = retired.poll(); counter != null; counter = retired.poll()) {
+            if (counter.snapshot()) {
+                flushed.add(counter);
+            }
+        }
+
+        if (flushed.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            final Integer written = transactionTemplate.execute(status -> write(flushed));
+            final long drained = flushed.stream().mapToLong(this::written).sum();
+            logger.debug("flushed {} {} of {} keys", drained, name, flushed.size());
+            return written;
+        } catch (RuntimeException e) {
+            logger.warn("Unable to flush {} of {} keys at once, writing them key by key", name, flushed.size(), e);
+        }
+
+        int written = 0;
+        for (C counter : flushed) {
+            written += writeKey(counter);
+        }
+        return written;
+    }
+
+    /**
+     * Writes a single counter in its own transaction, retrying once.
+     *
+     * @return number of written rows
+     */
+    private int writeKey(C counter) {
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                final Integer written = transactionTemplate.execute(status -> write(Collections.singleton(counter)));
+                written(counter);
+                return written;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        if (++counter.failures < MAX_FAILED_FLUSHES) {
+            logger.warn("Unable to flush {} of key {}, keeping {} updates for the next attempt", name, counter.key,
+                    counter.getUnwrittenCount(), failure);
+            keep(counter);
+        } else {
+            logger.error("Unable to flush {} of key {} {} times, dropping {} updates", name, counter.key,
+                    MAX_FAILED_FLUSHES, written(counter), failure);
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the updates of the flushed counters, within the flush transaction. The number of updates of a counter
+     * since it was written last is {@link Counter#getUnwrittenCount()}.
+     *
+     * @param flushed the counters with unwritten updates
+     * @return number of written rows
+     */
+    protected abstract int write(Collection<C> flushed);
+
+    /**
+     * Marks the updates of the snapshot as written.
+     *
+     * @return number of written updates
+     */
+    private long written(C counter) {
+        final long unwritten = counter.getUnwrittenCount();
+        counter.written = counter.snapshot;
+        counter.failures = 0;
+        pending.add(-unwritten);
+        return unwritten;
+    }
+
+    /**
+     * Keeps the updates of a counter that failed to flush for the next flush.
+     */
+    private void keep(C counter) {
+        if (counter.retired) {
+            retired.add(counter);
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Unable to flush {}, {} updates are kept for the next attempt", name, getPendingCount(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (getPendingCount() > 0) {
+            scheduledFlush();
+        }
+    }
+
+    /**
+     * In-memory counter of the updates of a key. Besides the count, subclasses keep the fields the written row needs.
+     * All fields updated by {@link #record(String, Supplier, Consumer)} must be safe for concurrent updates.
+     */
+    protected abstract static class Counter {
+
+        // package-private rather than private, members of the type variable C do not include private fields
+        final String key;
+        final LongAdder updates = new LongAdder();
+        volatile boolean retired;
+
+        // only accessed by the synchronized flush
+        long written;
+        long snapshot;
+        int failures;
+
+        protected Counter(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return key of the counter
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return number of updates since the counter was written last, as of the current flush
+         */
+        public long getUnwrittenCount() {
+            return snapshot - written;
+        }
+
+        /**
+         * @return true if updates were recorded since the counter was written last
+         */
+        boolean snapshot() {
+            snapshot = updates.sum();
+            return snapshot > written;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.springframework.stereotype.Service;
+
+/**
+ * Write-behind buffer for app open analytics.
+ *
+ * Every device open of a push message used to be a read-modify-write of the same {@code FlatPushMessageInformation}
+ * row, so the opens of a campaign queued up on one row lock. Opens are now counted in memory, in a striped counter per
+ * push message, and written periodically as a single relative update of the open counter.
+ *
+ * The flush interval is <tt>aerogear.metrics.analytics.flush_interval_ms</tt>, the maximum number of buffered opens
+ * <tt>aerogear.metrics.analytics.max_pending</tt>. If the write-behind is disabled, {@link PushMessageMetricsService}
+ * updates the row on every open.
+ */
+@Service
+public class AppOpenAnalyticsAccumulator extends AbstractWriteBehindAccumulator<AppOpenAnalyticsAccumulator.OpenCounter> {
+
+    public static final String PROP_FLUSH_INTERVAL = "aerogear.metrics.analytics.flush_interval_ms";
+    public static final String PROP_MAX_PENDING = "aerogear.metrics.analytics.max_pending";
+
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+
+    public AppOpenAnalyticsAccumulator() {
+        super("app opens", PROP_FLUSH_INTERVAL, 5000, PROP_MAX_PENDING, 10000);
+    }
+
+    /**
+     * Counts one app open of the given push message.
+     *
+     * @param pushMessageInformationId ID of the push message information
+     */
+    public void record(String pushMessageInformationId) {
+        final long now = System.currentTimeMillis();
+        record(pushMessageInformationId, () -> new OpenCounter(pushMessageInformationId), counter -> counter.record(now));
+    }
+
+    @Override
+    protected int write(Collection<OpenCounter> flushed) {
+        int rows = 0;
+        for (OpenCounter counter : flushed) {
+            rows += flatPushMessageInformationDao.incrementAppOpenCounter(counter.getKey(), counter.getUnwrittenCount(),
+                    new Date(counter.firstOpen.get()), new Date(counter.lastOpen.get()));
+        }
+        return rows;
+    }
+
+    /**
+     * Opens of a single push message. The open dates cover all opens of the counter, the first open date is only
+     * written if the row has none yet.
+     */
+    static final class OpenCounter extends AbstractWriteBehindAccumulator.Counter {
+
+        private final LongAccumulator firstOpen = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private final LongAccumulator lastOpen = new LongAccumulator(Math::max, 0);
+
+        OpenCounter(String pushMessageInformationId) {
+            super(pushMessageInformationId);
+        }
+
+        void record(long now) {
+            firstOpen.accumulate(now);
+            lastOpen.accumulate(now);
+        }
+    }
+}
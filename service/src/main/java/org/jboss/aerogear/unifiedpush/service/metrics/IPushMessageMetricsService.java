@@ -1,5 +1,7 @@
 package org.jboss.aerogear.unifiedpush.service.metrics;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
 import org.jboss.aerogear.unifiedpush.api.Variant;
 import org.jboss.aerogear.unifiedpush.dao.PageResult;
@@ -10,6 +12,63 @@ public interface IPushMessageMetricsService {
 	FlatPushMessageInformation storeNewRequestFrom(String pushAppId, String json, String ipAddress,
 			String clientIdentifier);
 
+	/**
+	 * Stores a new push message request under an ID generated before, e.g. one already returned to the sender.
+	 *
+	 * @param pushMessageInformationId the ID of the new push message information
+	 * @param pushAppId the push application ID
+	 * @param json the message payload
+	 * @param ipAddress the IP address of the sender
+	 * @param clientIdentifier the client identifier of the sender
+	 *
+	 * @return the stored push message information
+	 */
+	FlatPushMessageInformation storeNewRequestFrom(String pushMessageInformationId, String pushAppId, String json,
+			String ipAddress, String clientIdentifier);
+
+	/**
+	 * Stores a new push message request in its own transaction, committed together with other new requests.
+	 *
+	 * @param pushMessageInformationId the ID of the new push message information
+	 * @param pushAppId the push application ID
+	 * @param json the message payload
+	 * @param ipAddress the IP address of the sender
+	 * @param clientIdentifier the client identifier of the sender
+	 *
+	 * @return future completed with the push message information once it is committed
+	 * @throws java.util.concurrent.RejectedExecutionException if too many new requests are waiting to be stored
+	 */
+	CompletableFuture<FlatPushMessageInformation> storeNewRequestAsync(String pushMessageInformationId,
+			String pushAppId, String json, String ipAddress, String clientIdentifier);
+
+	/**
+	 * Reserves room for one new request, so that storing it later with
+	 * {@link #storeReservedRequestAsync(String, String, String, String, String)} is not rejected.
+	 *
+	 * @return true if the room is reserved; false if too many new requests are waiting to be stored
+	 */
+	boolean reserveNewRequest();
+
+	/**
+	 * Gives back room reserved with {@link #reserveNewRequest()} for a request that is not going to be stored.
+	 */
+	void releaseNewRequest();
+
+	/**
+	 * Same as {@link #storeNewRequestAsync(String, String, String, String, String)}, storing the request into room
+	 * reserved with {@link #reserveNewRequest()}.
+	 *
+	 * @param pushMessageInformationId the ID of the new push message information
+	 * @param pushAppId the push application ID
+	 * @param json the message payload
+	 * @param ipAddress the IP address of the sender
+	 * @param clientIdentifier the client identifier of the sender
+	 *
+	 * @return future completed with the push message information once it is committed
+	 */
+	CompletableFuture<FlatPushMessageInformation> storeReservedRequestAsync(String pushMessageInformationId,
+			String pushAppId, String json, String ipAddress, String clientIdentifier);
+
 	void updatePushMessageInformation(FlatPushMessageInformation pushMessageInformation);
 
 	void appendError(FlatPushMessageInformation pushMessageInformation, Variant variant, String errorMessage);
@@ -0,0 +1,178 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Deletes outdated push message information in chunks.
+ *
+ * A single bulk delete of all outdated rows holds its locks and grows the undo log until the whole delete committed.
+ * Instead, the IDs of the oldest outdated rows are selected and deleted together with their variant errors, one
+ * transaction per chunk of <tt>aerogear.metrics.retention.chunk_size</tt> rows, pausing
+ * <tt>aerogear.metrics.retention.pause_ms</tt> between the chunks so that concurrent writers get their turn.
+ */
+@Service
+public class PushMessageInformationRetention {
+
+    public static final String PROP_CHUNK_SIZE = "aerogear.metrics.retention.chunk_size";
+    public static final String PROP_PAUSE = "aerogear.metrics.retention.pause_ms";
+
+    private static final Logger logger = LoggerFactory.getLogger(PushMessageInformationRetention.class);
+
+    private final AtomicLong deletedCount = new AtomicLong();
+    private final AtomicLong lastRunDeleted = new AtomicLong();
+    private final AtomicLong lastRunChunks = new AtomicLong();
+    private final AtomicLong lastRunMillis = new AtomicLong();
+    private volatile boolean running;
+
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private TransactionTemplate transactionTemplate;
+    private int chunkSize;
+    private long pause;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        chunkSize = Math.max(1, config.getProperty(PROP_CHUNK_SIZE, 1000));
+        pause = Math.max(0, config.getProperty(PROP_PAUSE, 100));
+    }
+
+    /**
+     * Deletes all push message information older than the given date, oldest first. Every chunk is committed on its
+     * own, a failing run keeps the chunks deleted so far and the next run continues with the remaining rows.
+     *
+     * @param oldest the point in time to go back to
+     *
+     * @return number of deleted push message information objects
+     */
+    public long deleteOlderThan(Date oldest) {
+        final long start = System.currentTimeMillis();
+        long deleted = 0;
+        long chunks = 0;
+
+        running = true;
+        lastRunDeleted.set(0);
+        lastRunChunks.set(0);
+        try {
+            while (true) {
+                final Chunk chunk = transactionTemplate.execute(status -> {
+                    final List<String> ids = flatPushMessageInformationDao.findPushInformationIDsOlderThan(oldest, chunkSize);
+                    return new Chunk(ids.size(), flatPushMessageInformationDao.deletePushInformation(ids));
+                });
+
+                if (chunk == null || chunk.found == 0) {
+                    break;
+                }
+
+                // only the found rows tell whether more remain, rows deleted concurrently are missing from the delete count
+                deleted += chunk.deleted;
+                chunks++;
+                deletedCount.addAndGet(chunk.deleted);
+                lastRunDeleted.set(deleted);
+                lastRunChunks.set(chunks);
+                logger.info("Deleted chunk {} with {} outdated FlatPushMessageInformation objects, {} so far", chunks, chunk.deleted, deleted);
+
+                if (chunk.found < chunkSize) {
+                    break;
+                }
+                if (pause > 0) {
+                    TimeUnit.MILLISECONDS.sleep(pause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted deleting outdated FlatPushMessageInformation objects, remaining objects are deleted by the next run");
+        } finally {
+            final long duration = System.currentTimeMillis() - start;
+            lastRunMillis.set(duration);
+            running = false;
+            logger.info("Deleted ['{}'] outdated FlatPushMessageInformation objects in {} chunks within {} ms", deleted, chunks, duration);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * @return true while outdated push message information objects are deleted
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return number of push message information objects deleted since startup
+     */
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * @return number of push message information objects deleted by the current or last run
+     */
+    public long getLastRunDeleted() {
+        return lastRunDeleted.get();
+    }
+
+    /**
+     * @return number of chunks committed by the current or last run
+     */
+    public long getLastRunChunks() {
+        return lastRunChunks.get();
+    }
+
+    /**
+     * @return duration of the last completed run in milliseconds
+     */
+    public long getLastRunMillis() {
+        return lastRunMillis.get();
+    }
+
+    private static final class Chunk {
+
+        private final int found;
+        private final int deleted;
+
+        Chunk(int found, int deleted) {
+            this.found = found;
+            this.deleted = deleted;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Group commit of new push message information rows.
+ *
+ * Every push request used to insert and commit its own row. New rows are now buffered for up to
+ * <tt>aerogear.metrics.insert.linger_ms</tt> milliseconds, or until <tt>aerogear.metrics.insert.max_batch</tt> rows are
+ * waiting, and inserted in one transaction, using JDBC batching when <tt>hibernate.jdbc.batch_size</tt> is configured.
+ * The future returned by {@link #write(FlatPushMessageInformation)} completes once the row is committed.
+ *
+ * If the batch transaction fails, its rows are inserted one by one, so that one bad row does not fail the others. A
+ * linger time of 0 disables the buffering, rows are then inserted by the calling thread.
+ *
+ * The rows are always inserted in a new transaction, also by the calling thread, so that a read-only transaction of
+ * the caller is not joined.
+ *
+ * The futures are completed on a separate thread, so that slow callbacks do not hold up the group commits. At most
+ * <tt>aerogear.metrics.insert.max_pending</tt> rows may be waiting for insertion or for their callbacks, further writes
+ * are rejected. Callers that must not fail once they accepted a row, reserve its room up front with
+ * {@link #reserve()}.
+ */
+@Service
+public class PushMessageInformationWriter {
+
+    public static final String PROP_LINGER = "aerogear.metrics.insert.linger_ms";
+    public static final String PROP_MAX_BATCH = "aerogear.metrics.insert.max_batch";
+    public static final String PROP_MAX_PENDING = "aerogear.metrics.insert.max_pending";
+
+    private static final Logger logger = LoggerFactory.getLogger(PushMessageInformationWriter.class);
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private ConfigurationEnvironment config;
+
+    private TransactionTemplate transactionTemplate;
+    private BlockingQueue<PendingInsert> queue;
+    private ExecutorService completion;
+    private long lingerNanos;
+    private int maxBatch;
+    private int maxPending;
+    private volatile Thread writer;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        lingerNanos = TimeUnit.MILLISECONDS.toNanos(config.getProperty(PROP_LINGER, 5));
+        maxBatch = Math.max(config.getProperty(PROP_MAX_BATCH, 50), 1);
+        maxPending = Math.max(config.getProperty(PROP_MAX_PENDING, 1000), 1);
+        queue = new LinkedBlockingQueue<>(maxPending);
+
+        if (lingerNanos > 0) {
+            completion = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "push-message-information-completion");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer = new Thread(this::run, "push-message-information-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            logger.info("group commit of push message information is disabled");
+        }
+    }
+
+    /**
+     * Queues a new push message information for insertion.
+     *
+     * @param information the new push message information
+     * @return future completed with the given information once it is committed
+     * @throws RejectedExecutionException if too many rows are pending
+     */
+    public CompletableFuture<FlatPushMessageInformation> write(FlatPushMessageInformation information) {
+        if (!reserve()) {
+            throw new RejectedExecutionException("Too many push message information rows are waiting for insertion");
+        }
+        return writeReserved(information);
+    }
+
+    /**
+     * Reserves room for one row, which is then written with {@link #writeReserved(FlatPushMessageInformation)} or
+     * given back with {@link #release()}.
+     *
+     * @return true if the room is reserved; false if too many rows are pending
+     */
+    public boolean reserve() {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back room reserved with {@link #reserve()} that is not going to be written.
+     */
+    public void release() {
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Queues a new push message information for insertion into room reserved with {@link #reserve()}.
+     *
+     * @param information the new push message information
+     * @return future completed with the given information once it is committed
+     */
+    public CompletableFuture<FlatPushMessageInformation> writeReserved(FlatPushMessageInformation information) {
+        final PendingInsert insert = new PendingInsert(information);
+        if (writer == null) {
+            insert(Collections.singletonList(insert));
+        } else {
+            queue.add(insert);
+            if (writer == null) {
+                // raced with shutdown, the writer may not see the insert anymore
+                drain();
+            }
+        }
+        return insert.future;
+    }
+
+    /**
+     * @return number of rows waiting for insertion or for their callbacks
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        final Thread current = writer;
+        writer = null;
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+
+        if (completion != null) {
+            completion.shutdown();
+            try {
+                completion.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        final List<PendingInsert> batch = new ArrayList<>(maxBatch);
+        while (writer == Thread.currentThread()) {
+            try {
+                batch.add(queue.take());
+
+                final long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    final PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, maxBatch - batch.size());
+            } catch (InterruptedException e) {
+                // the collected rows are still written, the rest is drained on shutdown
+            }
+
+            if (!batch.isEmpty()) {
+                insert(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private synchronized void drain() {
+        final List<PendingInsert> batch = new ArrayList<>();
+        while (queue.drainTo(batch, maxBatch) > 0) {
+            insert(batch);
+            batch.clear();
+        }
+    }
+
+    private void insert(List<PendingInsert> batch) {
+        try {
+            insertInTransaction(batch);
+            batch.forEach(insert -> complete(insert, null));
+            logger.debug("inserted {} push message information rows", batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                complete(batch.get(0), e);
+                return;
+            }
+            logger.warn("Unable to insert {} push message information rows at once, inserting them one by one", batch.size(), e);
+            for (PendingInsert insert : batch) {
+                insert(Collections.singletonList(insert));
+            }
+        }
+    }
+
+    private void complete(PendingInsert insert, Throwable failure) {
+        final Runnable callback = () -> {
+            try {
+                if (failure == null) {
+                    insert.future.complete(insert.information);
+                } else {
+                    insert.future.completeExceptionally(failure);
+                }
+            } finally {
+                pending.decrementAndGet();
+            }
+        };
+
+        if (completion == null) {
+            callback.run();
+            return;
+        }
+        try {
+            completion.execute(callback);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            callback.run();
+        }
+    }
+
+    private void insertInTransaction(List<PendingInsert> batch) {
+        transactionTemplate.execute(status -> {
+            batch.forEach(insert -> flatPushMessageInformationDao.create(insert.information));
+            flatPushMessageInformationDao.flushAndClear();
+            return null;
+        });
+    }
+
+    private static final class PendingInsert {
+
+        private final FlatPushMessageInformation information;
+        private final CompletableFuture<FlatPushMessageInformation> future = new CompletableFuture<>();
+
+        PendingInsert(FlatPushMessageInformation information) {
+            this.information = information;
+        }
+    }
+}
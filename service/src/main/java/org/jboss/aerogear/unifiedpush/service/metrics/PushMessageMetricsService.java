@@ -17,6 +17,7 @@
 package org.jboss.aerogear.unifiedpush.service.metrics;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
 import javax.inject.Inject;
 
@@ -29,6 +30,7 @@ import org.jboss.aerogear.unifiedpush.dto.MessageMetrics;
 import org.jboss.aerogear.unifiedpush.system.ConfigurationUtils;
 import org.jboss.aerogear.unifiedpush.utils.DateUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -45,21 +47,85 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
     @Inject
     private FlatPushMessageInformationDao flatPushMessageInformationDao;
 
+    @Inject
+    private AppOpenAnalyticsAccumulator appOpenAnalyticsAccumulator;
+
+    @Inject
+    private PushMessageInformationWriter pushMessageInformationWriter;
+
+    @Inject
+    private VariantErrorAccumulator variantErrorAccumulator;
+
+    @Inject
+    private PushMessageInformationRetention pushMessageInformationRetention;
+
     /* (non-Javadoc)
 	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#storeNewRequestFrom(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
 	 */
     @Override
 	public FlatPushMessageInformation storeNewRequestFrom(String pushAppId, String json, String ipAddress, String clientIdentifier) {
+        return storeNewRequestFrom(null, pushAppId, json, ipAddress, clientIdentifier);
+    }
+
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#storeNewRequestFrom(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+    @Override
+	public FlatPushMessageInformation storeNewRequestFrom(String pushMessageInformationId, String pushAppId, String json, String ipAddress, String clientIdentifier) {
+        final FlatPushMessageInformation information = newRequest(pushMessageInformationId, pushAppId, json, ipAddress, clientIdentifier);
+
+        flatPushMessageInformationDao.create(information);
+        flatPushMessageInformationDao.flushAndClear();
+
+        return information;
+    }
+
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#storeNewRequestAsync(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+	public CompletableFuture<FlatPushMessageInformation> storeNewRequestAsync(String pushMessageInformationId, String pushAppId, String json, String ipAddress, String clientIdentifier) {
+        return pushMessageInformationWriter.write(newRequest(pushMessageInformationId, pushAppId, json, ipAddress, clientIdentifier));
+    }
+
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#reserveNewRequest()
+	 */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+	public boolean reserveNewRequest() {
+        return pushMessageInformationWriter.reserve();
+    }
+
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#releaseNewRequest()
+	 */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+	public void releaseNewRequest() {
+        pushMessageInformationWriter.release();
+    }
+
+    /* (non-Javadoc)
+	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#storeReservedRequestAsync(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+	public CompletableFuture<FlatPushMessageInformation> storeReservedRequestAsync(String pushMessageInformationId, String pushAppId, String json, String ipAddress, String clientIdentifier) {
+        return pushMessageInformationWriter.writeReserved(newRequest(pushMessageInformationId, pushAppId, json, ipAddress, clientIdentifier));
+    }
+
+    private static FlatPushMessageInformation newRequest(String pushMessageInformationId, String pushAppId, String json, String ipAddress, String clientIdentifier) {
         final FlatPushMessageInformation information = new FlatPushMessageInformation();
 
+        if (pushMessageInformationId != null) {
+            information.setId(pushMessageInformationId);
+        }
         information.setRawJsonMessage(json);
         information.setIpAddress(ipAddress);
         information.setPushApplicationId(pushAppId);
         information.setClientIdentifier(clientIdentifier);
-
-        flatPushMessageInformationDao.create(information);
-        flatPushMessageInformationDao.flushAndClear();
-
         return information;
     }
 
@@ -76,6 +142,12 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 */
     @Override
 	public void appendError(final FlatPushMessageInformation pushMessageInformation, final Variant variant, final String errorMessage) {
+        // coalesce the error in memory, the accumulator writes it with the next flush
+        if (variantErrorAccumulator.isEnabled()) {
+            variantErrorAccumulator.record(pushMessageInformation.getId(), variant, errorMessage);
+            return;
+        }
+
         final VariantErrorStatus ves = new VariantErrorStatus(pushMessageInformation, variant, errorMessage);
         pushMessageInformation.getErrors().add(ves);
         flatPushMessageInformationDao.update(pushMessageInformation);
@@ -101,9 +173,11 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 * @see org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService#deleteOutdatedFlatPushInformationData()
 	 */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void deleteOutdatedFlatPushInformationData() {
         final Date historyDate = DateUtils.calculatePastDate(ConfigurationUtils.tryGetIntegerProperty(AEROGEAR_METRICS_STORAGE_MAX_DAYS, 30));
-        flatPushMessageInformationDao.deletePushInformationOlderThan(historyDate);
+        // every chunk commits on its own, instead of one long transaction over all outdated rows
+        pushMessageInformationRetention.deleteOlderThan(historyDate);
     }
 
     public FlatPushMessageInformation getPushMessageInformation(String id) {
@@ -115,6 +189,12 @@ public class PushMessageMetricsService implements IPushMessageMetricsService {
 	 */
     @Override
 	public void updateAnalytics(String aerogearPushId) {
+        // count the open in memory, the accumulator adds it to the counter with the next flush
+        if (appOpenAnalyticsAccumulator.isEnabled()) {
+            appOpenAnalyticsAccumulator.record(aerogearPushId);
+            return;
+        }
+
         FlatPushMessageInformation pushMessageInformation = this.getPushMessageInformation(aerogearPushId);
 
         if (pushMessageInformation != null) { //if we are here, app has been opened due to a push message
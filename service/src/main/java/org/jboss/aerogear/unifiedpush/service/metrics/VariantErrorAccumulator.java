@@ -0,0 +1,93 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service.metrics;
+
+import java.util.Collection;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.springframework.stereotype.Service;
+
+/**
+ * Write-behind buffer for delivery errors of push messages.
+ *
+ * Every failing batch used to merge its push message, so during a push network outage the callbacks of all batches
+ * contended on the same row. Errors are now coalesced in memory per push message and variant, keeping the first error
+ * reason and counting the occurrences, and written periodically as one upsert of the {@code VariantErrorStatus} per
+ * push message and variant.
+ *
+ * The flush interval is <tt>aerogear.metrics.errors.flush_interval_ms</tt>, the maximum number of buffered errors
+ * <tt>aerogear.metrics.errors.max_pending</tt>. If the write-behind is disabled, {@link PushMessageMetricsService}
+ * writes every error.
+ */
+@Service
+public class VariantErrorAccumulator extends AbstractWriteBehindAccumulator<VariantErrorAccumulator.ErrorCounter> {
+
+    public static final String PROP_FLUSH_INTERVAL = "aerogear.metrics.errors.flush_interval_ms";
+    public static final String PROP_MAX_PENDING = "aerogear.metrics.errors.max_pending";
+
+    @Inject
+    private FlatPushMessageInformationDao flatPushMessageInformationDao;
+
+    public VariantErrorAccumulator() {
+        super("push message errors", PROP_FLUSH_INTERVAL, 1000, PROP_MAX_PENDING, 1000);
+    }
+
+    /**
+     * Counts one error of a variant for the given push message.
+     *
+     * @param pushMessageInformationId ID of the push message information
+     * @param variant the variant the error occurred for
+     * @param errorReason the error reason, kept if it is the first one of the counter
+     */
+    public void record(String pushMessageInformationId, Variant variant, String errorReason) {
+        record(pushMessageInformationId + ':' + variant.getVariantID(),
+                () -> new ErrorCounter(pushMessageInformationId, variant, errorReason),
+                counter -> { });
+    }
+
+    /**
+     * @return number of written push message and variant pairs
+     */
+    @Override
+    protected int write(Collection<ErrorCounter> flushed) {
+        for (ErrorCounter counter : flushed) {
+            flatPushMessageInformationDao.upsertVariantError(counter.pushMessageInformationId, counter.variant,
+                    counter.errorReason, counter.getUnwrittenCount());
+        }
+        return flushed.size();
+    }
+
+    /**
+     * Errors of a variant for a single push message.
+     */
+    static final class ErrorCounter extends AbstractWriteBehindAccumulator.Counter {
+
+        private final String pushMessageInformationId;
+        private final Variant variant;
+        private final String errorReason;
+
+        ErrorCounter(String pushMessageInformationId, Variant variant, String errorReason) {
+            super(pushMessageInformationId + ':' + variant.getVariantID());
+            this.pushMessageInformationId = pushMessageInformationId;
+            this.variant = variant;
+            this.errorReason = errorReason;
+        }
+    }
+}
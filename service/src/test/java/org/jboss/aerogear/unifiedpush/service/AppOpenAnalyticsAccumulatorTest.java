@@ -0,0 +1,120 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.service.metrics.AppOpenAnalyticsAccumulator;
+import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
+import org.junit.Test;
+
+public class AppOpenAnalyticsAccumulatorTest extends AbstractCassandraServiceTest {
+
+    @Inject
+    private IPushMessageMetricsService pushMessageMetricsService;
+
+    @Inject
+    private AppOpenAnalyticsAccumulator accumulator;
+
+    private FlatPushMessageInformation pushMessageInformation;
+
+    @Override
+    protected void specificSetup() {
+        pushMessageInformation = pushMessageMetricsService.storeNewRequestFrom("123", "hello", "127.0.01", "testcase");
+    }
+
+    @Test
+    public void flushAddsBufferedOpens() {
+        accumulator.record(pushMessageInformation.getId());
+        accumulator.record(pushMessageInformation.getId());
+        accumulator.record(pushMessageInformation.getId());
+        assertThat(accumulator.getPendingCount()).isEqualTo(3);
+
+        assertThat(accumulator.flush()).isEqualTo(1);
+        assertThat(accumulator.getPendingCount()).isEqualTo(0);
+
+        FlatPushMessageInformation updated = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated.getAppOpenCounter()).isEqualTo(3);
+        assertThat(updated.getFirstOpenDate()).isNotNull();
+        assertThat(updated.getLastOpenDate()).isNotNull();
+
+        accumulator.record(pushMessageInformation.getId());
+        accumulator.flush();
+
+        FlatPushMessageInformation updated1 = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated1.getAppOpenCounter()).isEqualTo(4);
+        assertThat(updated1.getFirstOpenDate()).isEqualTo(updated.getFirstOpenDate());
+    }
+
+    @Test
+    public void flushIgnoresUnknownMessages() {
+        accumulator.record("unknown-push-message");
+
+        assertThat(accumulator.flush()).isEqualTo(0);
+        assertThat(accumulator.flush()).isEqualTo(0);
+        assertThat(accumulator.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void opensAfterIdleFlushAreWritten() {
+        accumulator.record(pushMessageInformation.getId());
+        assertThat(accumulator.flush()).isEqualTo(1);
+        // no opens since the last flush, the counter is retired
+        assertThat(accumulator.flush()).isEqualTo(0);
+
+        accumulator.record(pushMessageInformation.getId());
+        assertThat(accumulator.flush()).isEqualTo(1);
+
+        assertThat(accumulator.getPendingCount()).isEqualTo(0);
+        FlatPushMessageInformation updated = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated.getAppOpenCounter()).isEqualTo(2);
+    }
+
+    @Test
+    public void flushDoesNotLoseConcurrentOpens() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<?>> recorders = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            recorders.add(executor.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    accumulator.record(pushMessageInformation.getId());
+                }
+            }));
+        }
+        for (Future<?> recorder : recorders) {
+            while (!recorder.isDone()) {
+                accumulator.flush();
+            }
+            recorder.get();
+        }
+        executor.shutdown();
+        accumulator.flush();
+
+        assertThat(accumulator.getPendingCount()).isEqualTo(0);
+        FlatPushMessageInformation updated = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated.getAppOpenCounter()).isEqualTo(2000);
+    }
+}
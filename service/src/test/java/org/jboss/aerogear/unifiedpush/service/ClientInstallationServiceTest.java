@@ -26,7 +26,9 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -44,6 +46,7 @@ import org.jboss.aerogear.unifiedpush.dao.ResultsStream;
 import org.jboss.aerogear.unifiedpush.service.annotations.LoggedInUser;
 import org.junit.Test;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.datastax.driver.core.utils.UUIDs;
 
@@ -310,6 +313,36 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 		assertThat(findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, null, null)).isEmpty();
 	}
 
+	@Test
+	@Transactional
+	public void replaceDeviceTokensByCanonicalTokens() {
+		final String variantID = androidVariant.getVariantID();
+		final Installation outdated = new Installation();
+		outdated.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		clientInstallationService.addInstallation(androidVariant, outdated);
+		final Installation registered = new Installation();
+		registered.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		clientInstallationService.addInstallation(androidVariant, registered);
+		final Installation duplicated = new Installation();
+		duplicated.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		clientInstallationService.addInstallation(androidVariant, duplicated);
+
+		final String canonicalToken = TestUtils.generateFakedDeviceTokenString();
+		final Map<String, String> canonicalTokens = new LinkedHashMap<>();
+		canonicalTokens.put(outdated.getDeviceToken(), canonicalToken);
+		canonicalTokens.put(duplicated.getDeviceToken(), registered.getDeviceToken());
+
+		assertThat(clientInstallationService.replaceDeviceTokensForVariant(variantID, canonicalTokens))
+				.containsOnly(duplicated.getDeviceToken());
+
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(variantID, canonicalToken))
+				.isNotNull();
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(variantID, outdated.getDeviceToken()))
+				.isNull();
+		assertThat(clientInstallationService.findInstallationForVariantByDeviceToken(variantID, duplicated.getDeviceToken()))
+				.isNotNull();
+	}
+
 	@Test
 	@Transactional
 	public void importDevicesWithoutDuplicates() {
@@ -337,6 +370,30 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 				.hasSize(NUMBER_OF_INSTALLATIONS + 1);
 	}
 
+	@Test
+	@Transactional
+	public void importDevicesFromStream() {
+		final String duplicatedToken = TestUtils.generateFakedDeviceTokenString();
+
+		Installation first = new Installation();
+		first.setDeviceToken(duplicatedToken);
+		first.setCategories(new HashSet<>(Arrays.asList(new Category("imported"), new Category("football"))));
+
+		Installation second = new Installation();
+		second.setDeviceToken(duplicatedToken);
+
+		Installation third = new Installation();
+		third.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		third.setCategories(new HashSet<>(Arrays.asList(new Category("imported"))));
+
+		clientInstallationService.addInstallations(androidVariant, Arrays.asList(first, second, third).stream());
+
+		assertThat(findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), null, null, null))
+				.hasSize(2);
+		assertThat(findAllDeviceTokenForVariantIDByCriteria(androidVariant.getVariantID(), Arrays.asList("imported"),
+				null, null)).hasSize(2);
+	}
+
 	@Test
 	@Transactional
 	public void importDevices() {
@@ -739,6 +796,20 @@ public class ClientInstallationServiceTest extends AbstractCassandraServiceTest
 		assertTrue(installations.size() == 0);
 	}
 
+	@Test
+	public void exportStreamsInstallationsInReadOnlyTransaction() {
+		Installation device = new Installation();
+		device.setDeviceToken(TestUtils.generateFakedDeviceTokenString());
+		clientInstallationService.addInstallation(androidVariant, device);
+
+		// not nested in a test transaction, the export opens its own
+		final List<Boolean> readOnly = new ArrayList<>();
+		searchApplicationService.forEachInstallationByVariantForDeveloper(androidVariant.getVariantID(),
+				installation -> readOnly.add(TransactionSynchronizationManager.isCurrentTransactionReadOnly()));
+
+		assertThat(readOnly).containsExactly(true);
+	}
+
 	private List<String> findAllDeviceTokenForVariantIDByCriteria(String variantID, List<String> categories,
 			List<String> aliases, List<String> deviceTypes) {
 		try {
@@ -0,0 +1,93 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.Variant;
+import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.service.impl.GenericVariantServiceImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class GenericVariantServiceTest {
+
+    private VariantDao variantDao;
+    private Cache cache;
+    private GenericVariantServiceImpl variantService;
+
+    @Before
+    public void setUp() {
+        variantDao = mock(VariantDao.class);
+        final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(GenericVariantService.CACHE_NAME);
+        cache = cacheManager.getCache(GenericVariantService.CACHE_NAME);
+
+        variantService = new GenericVariantServiceImpl();
+        ReflectionTestUtils.setField(variantService, "variantDao", variantDao);
+        ReflectionTestUtils.setField(variantService, "cacheManager", cacheManager);
+    }
+
+    @Test
+    public void findByVariantIDsMixesCachedAndLoadedVariants() {
+        final Variant cached = variant("cached");
+        final Variant first = variant("first");
+        final Variant second = variant("second");
+        cache.put("cached", cached);
+        // the database does not keep the requested order
+        when(variantDao.findAllVariantsByIDs(Arrays.asList("second", "unknown", "first")))
+                .thenReturn(Arrays.asList(first, second));
+
+        final List<Variant> variants = variantService.findByVariantIDs(
+                Arrays.asList("second", "cached", "unknown", "second", "first", "cached"));
+
+        assertThat(variants).containsExactly(second, cached, first);
+        verify(variantDao).findAllVariantsByIDs(Arrays.asList("second", "unknown", "first"));
+
+        assertThat(cache.get("first").get()).isSameAs(first);
+        assertThat(cache.get("second").get()).isSameAs(second);
+        assertThat(cache.get("unknown")).isNull();
+    }
+
+    @Test
+    public void findByVariantIDsServesCachedVariantsWithoutQuery() {
+        final Variant cached = variant("cached");
+        cache.put("cached", cached);
+
+        assertThat(variantService.findByVariantIDs(Arrays.asList("cached", "cached"))).containsExactly(cached);
+
+        verify(variantDao, never()).findAllVariantsByIDs(anyListOf(String.class));
+    }
+
+    private static Variant variant(String variantID) {
+        final AndroidVariant variant = new AndroidVariant();
+        variant.setVariantID(variantID);
+        variant.setName(variantID);
+        return variant;
+    }
+}
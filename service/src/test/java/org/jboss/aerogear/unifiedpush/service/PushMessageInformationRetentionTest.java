@@ -0,0 +1,136 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.service.impl.HealthServiceImpl;
+import org.jboss.aerogear.unifiedpush.service.impl.health.HealthDetails;
+import org.jboss.aerogear.unifiedpush.service.impl.health.Status;
+import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageInformationRetention;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class PushMessageInformationRetentionTest {
+
+    private FlatPushMessageInformationDao dao;
+    private PushMessageInformationRetention retention;
+
+    @Before
+    public void setup() {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(PushMessageInformationRetention.PROP_CHUNK_SIZE, 1000)).thenReturn(2);
+        when(config.getProperty(PushMessageInformationRetention.PROP_PAUSE, 100)).thenReturn(0);
+
+        dao = mock(FlatPushMessageInformationDao.class);
+        when(dao.deletePushInformation(anyCollectionOf(String.class)))
+                .thenAnswer(invocation -> ((Collection<?>) invocation.getArguments()[0]).size());
+
+        retention = new PushMessageInformationRetention();
+        ReflectionTestUtils.setField(retention, "flatPushMessageInformationDao", dao);
+        ReflectionTestUtils.setField(retention, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(retention, "config", config);
+        retention.init();
+    }
+
+    @Test
+    public void deletesChunksUntilShortChunk() {
+        when(dao.findPushInformationIDsOlderThan(any(Date.class), eq(2)))
+                .thenReturn(Arrays.asList("a", "b"), Arrays.asList("c", "d"), Collections.singletonList("e"));
+
+        assertThat(retention.deleteOlderThan(new Date())).isEqualTo(5);
+        assertThat(retention.isRunning()).isFalse();
+        assertThat(retention.getLastRunDeleted()).isEqualTo(5);
+        assertThat(retention.getLastRunChunks()).isEqualTo(3);
+        assertThat(retention.getDeletedCount()).isEqualTo(5);
+
+        verify(dao, times(3)).findPushInformationIDsOlderThan(any(Date.class), eq(2));
+        verify(dao, times(3)).deletePushInformation(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void stopsOnEmptyChunk() {
+        when(dao.findPushInformationIDsOlderThan(any(Date.class), eq(2)))
+                .thenReturn(Arrays.asList("a", "b"), Collections.<String>emptyList());
+
+        assertThat(retention.deleteOlderThan(new Date())).isEqualTo(2);
+        assertThat(retention.getLastRunChunks()).isEqualTo(1);
+
+        verify(dao, times(2)).findPushInformationIDsOlderThan(any(Date.class), eq(2));
+    }
+
+    @Test
+    public void continuesWhenFullChunkDeletesFewerRows() {
+        when(dao.findPushInformationIDsOlderThan(any(Date.class), eq(2)))
+                .thenReturn(Arrays.asList("a", "b"), Collections.singletonList("c"));
+        // "b" was deleted by another node in the meantime
+        when(dao.deletePushInformation(anyCollectionOf(String.class))).thenReturn(1);
+
+        assertThat(retention.deleteOlderThan(new Date())).isEqualTo(2);
+        assertThat(retention.getLastRunChunks()).isEqualTo(2);
+
+        verify(dao, times(2)).findPushInformationIDsOlderThan(any(Date.class), eq(2));
+    }
+
+    @Test
+    public void reportsProgressWhileRunning() {
+        when(dao.findPushInformationIDsOlderThan(any(Date.class), eq(2))).thenAnswer(invocation -> {
+            assertThat(retention.isRunning()).isTrue();
+            return retention.getLastRunChunks() < 2 ? Arrays.asList("a", "b") : Collections.<String>emptyList();
+        });
+
+        assertThat(retention.deleteOlderThan(new Date())).isEqualTo(4);
+        assertThat(retention.deleteOlderThan(new Date())).isEqualTo(4);
+
+        assertThat(retention.isRunning()).isFalse();
+        assertThat(retention.getLastRunDeleted()).isEqualTo(4);
+        assertThat(retention.getDeletedCount()).isEqualTo(8);
+    }
+
+    @Test
+    public void reportsProgressInHealthStatus() {
+        when(dao.findPushInformationIDsOlderThan(any(Date.class), eq(2)))
+                .thenReturn(Arrays.asList("a", "b"), Collections.singletonList("c"));
+        retention.deleteOlderThan(new Date());
+
+        final HealthServiceImpl healthService = new HealthServiceImpl();
+        ReflectionTestUtils.setField(healthService, "retention", retention);
+
+        final HealthDetails details = healthService.retentionStatus();
+        assertThat(details.getTestStatus()).isEqualTo(Status.OK);
+        assertThat(details.getResult()).startsWith("last run deleted 3 in 2 chunks").endsWith("3 deleted since startup");
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.dao.FlatPushMessageInformationDao;
+import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
+import org.jboss.aerogear.unifiedpush.service.metrics.PushMessageInformationWriter;
+import org.jboss.aerogear.unifiedpush.system.ConfigurationEnvironment;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+public class PushMessageInformationWriterTest extends AbstractCassandraServiceTest {
+
+    @Inject
+    private IPushMessageMetricsService pushMessageMetricsService;
+
+    @Inject
+    private PushMessageInformationWriter writer;
+
+    @Override
+    protected void specificSetup() {
+    }
+
+    @Test
+    public void storedRequestsAreCommitted() throws Exception {
+        final List<CompletableFuture<FlatPushMessageInformation>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(pushMessageMetricsService.storeNewRequestAsync("batched-" + i, "123", "hello", "127.0.0.1", "testcase"));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            final FlatPushMessageInformation stored = futures.get(i).get(5, TimeUnit.SECONDS);
+            assertThat(stored.getId()).isEqualTo("batched-" + i);
+            assertThat(pushMessageMetricsService.getPushMessageInformation(stored.getId())).isNotNull();
+        }
+        assertThat(writer.getPendingCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void failedRowDoesNotFailBatch() throws Exception {
+        pushMessageMetricsService.storeNewRequestAsync("duplicate", "123", "hello", "127.0.0.1", "testcase").get(5, TimeUnit.SECONDS);
+
+        final CompletableFuture<FlatPushMessageInformation> duplicate =
+                pushMessageMetricsService.storeNewRequestAsync("duplicate", "123", "hello", "127.0.0.1", "testcase");
+        final CompletableFuture<FlatPushMessageInformation> valid =
+                pushMessageMetricsService.storeNewRequestAsync("valid", "123", "hello", "127.0.0.1", "testcase");
+
+        assertThat(valid.get(5, TimeUnit.SECONDS).getId()).isEqualTo("valid");
+        assertThat(duplicate.handle((information, e) -> e).get(5, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    @Test
+    public void rejectsWritesAboveMaxPending() throws Exception {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        // nothing is written before shutdown
+        when(config.getProperty(PushMessageInformationWriter.PROP_LINGER, 5)).thenReturn(60000);
+        when(config.getProperty(PushMessageInformationWriter.PROP_MAX_PENDING, 1000)).thenReturn(2);
+
+        final PushMessageInformationWriter limited = new PushMessageInformationWriter();
+        ReflectionTestUtils.setField(limited, "flatPushMessageInformationDao", mock(FlatPushMessageInformationDao.class));
+        ReflectionTestUtils.setField(limited, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(limited, "config", config);
+        limited.init();
+
+        final CompletableFuture<String> first = limited.write(new FlatPushMessageInformation())
+                .thenApply(information -> Thread.currentThread().getName());
+        limited.write(new FlatPushMessageInformation());
+        try {
+            limited.write(new FlatPushMessageInformation());
+            fail("writer should be full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        limited.shutdown();
+        // callbacks do not run on the writer thread
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("push-message-information-completion");
+        assertThat(limited.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void reservedRoomIsNotTakenByOtherWrites() throws Exception {
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        when(config.getProperty(PushMessageInformationWriter.PROP_LINGER, 5)).thenReturn(60000);
+        when(config.getProperty(PushMessageInformationWriter.PROP_MAX_PENDING, 1000)).thenReturn(2);
+
+        final PushMessageInformationWriter limited = new PushMessageInformationWriter();
+        ReflectionTestUtils.setField(limited, "flatPushMessageInformationDao", mock(FlatPushMessageInformationDao.class));
+        ReflectionTestUtils.setField(limited, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(limited, "config", config);
+        limited.init();
+
+        assertThat(limited.reserve()).isTrue();
+        limited.write(new FlatPushMessageInformation());
+
+        // the writer is full, the reserved room is still available
+        assertThat(limited.reserve()).isFalse();
+        try {
+            limited.write(new FlatPushMessageInformation());
+            fail("writer should be full");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        final CompletableFuture<FlatPushMessageInformation> reserved = limited.writeReserved(new FlatPushMessageInformation());
+
+        limited.shutdown();
+        assertThat(reserved.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(limited.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void insertsInNewTransaction() {
+        final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        final ConfigurationEnvironment config = mock(ConfigurationEnvironment.class);
+        when(config.getProperty(anyString(), anyInt())).thenAnswer(invocation -> invocation.getArguments()[1]);
+        // inserted by the calling thread, e.g. within a read-only transaction of the router
+        when(config.getProperty(PushMessageInformationWriter.PROP_LINGER, 5)).thenReturn(0);
+
+        final PushMessageInformationWriter direct = new PushMessageInformationWriter();
+        ReflectionTestUtils.setField(direct, "flatPushMessageInformationDao", mock(FlatPushMessageInformationDao.class));
+        ReflectionTestUtils.setField(direct, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(direct, "config", config);
+        direct.init();
+
+        direct.write(new FlatPushMessageInformation());
+
+        final ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertThat(definition.getValue().getPropagationBehavior()).isEqualTo(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        assertThat(definition.getValue().isReadOnly()).isFalse();
+    }
+}
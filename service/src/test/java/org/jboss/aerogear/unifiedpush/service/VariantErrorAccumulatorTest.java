@@ -0,0 +1,102 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.unifiedpush.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import javax.inject.Inject;
+
+import org.jboss.aerogear.unifiedpush.api.AndroidVariant;
+import org.jboss.aerogear.unifiedpush.api.FlatPushMessageInformation;
+import org.jboss.aerogear.unifiedpush.api.VariantType;
+import org.jboss.aerogear.unifiedpush.dao.VariantDao;
+import org.jboss.aerogear.unifiedpush.service.metrics.IPushMessageMetricsService;
+import org.jboss.aerogear.unifiedpush.service.metrics.VariantErrorAccumulator;
+import org.junit.Test;
+
+public class VariantErrorAccumulatorTest extends AbstractCassandraServiceTest {
+
+    @Inject
+    private IPushMessageMetricsService pushMessageMetricsService;
+
+    @Inject
+    private VariantErrorAccumulator accumulator;
+
+    @Inject
+    private VariantDao variantDao;
+
+    private FlatPushMessageInformation pushMessageInformation;
+    private AndroidVariant variant;
+
+    @Override
+    protected void specificSetup() {
+        pushMessageInformation = pushMessageMetricsService.storeNewRequestFrom("123", "hello", "127.0.01", "testcase");
+
+        variant = new AndroidVariant();
+        variant.setVariantID("error-variant");
+        variant.setSecret("secret");
+        variant.setName("Android error variant");
+        variant.setType(VariantType.ANDROID);
+        variant.setGoogleKey("12345678");
+        variantDao.create(variant);
+    }
+
+    @Test
+    public void flushCoalescesErrors() {
+        accumulator.record(pushMessageInformation.getId(), variant, "Unavailable");
+        accumulator.record(pushMessageInformation.getId(), variant, "InternalServerError");
+        accumulator.record(pushMessageInformation.getId(), variant, "Unavailable");
+        assertThat(accumulator.getPendingCount()).isEqualTo(3);
+
+        assertThat(accumulator.flush()).isEqualTo(1);
+        assertThat(accumulator.getPendingCount()).isEqualTo(0);
+
+        FlatPushMessageInformation updated = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated.getErrors())
+                .extracting("variantID", "errorReason", "occurrences")
+                .containsExactly(tuple("error-variant", "Unavailable", 3L));
+
+        accumulator.record(pushMessageInformation.getId(), variant, "TooManyRequests");
+        accumulator.flush();
+
+        FlatPushMessageInformation updated1 = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated1.getErrors())
+                .extracting("variantID", "errorReason", "occurrences")
+                .containsExactly(tuple("error-variant", "Unavailable", 4L));
+    }
+
+    @Test
+    public void failingKeyDoesNotHoldBackOthers() {
+        // violates the foreign key to the push message information
+        accumulator.record("deleted-push-message", variant, "Unavailable");
+        accumulator.record(pushMessageInformation.getId(), variant, "Unavailable");
+
+        assertThat(accumulator.flush()).isEqualTo(1);
+        assertThat(accumulator.getPendingCount()).isEqualTo(1);
+
+        FlatPushMessageInformation updated = pushMessageMetricsService.getPushMessageInformation(pushMessageInformation.getId());
+        assertThat(updated.getErrors())
+                .extracting("variantID", "errorReason", "occurrences")
+                .containsExactly(tuple("error-variant", "Unavailable", 1L));
+
+        for (int i = 1; i < 3; i++) {
+            assertThat(accumulator.flush()).isEqualTo(0);
+        }
+        assertThat(accumulator.getPendingCount()).isEqualTo(0);
+    }
+}